@@ -4,30 +4,149 @@
 package sjdb;
 
 /**
+ * Besides its number of distinct values and width, an attribute may record
+ * the smallest and largest of its values if they are numeric, which are 
+ * used to estimate the selectivity of range predicates. Both are NaN if 
+ * they are not known. An attribute whose values are skewed may also have a
+ * Histogram of its values. Copies of an attribute keep its histogram, but 
+ * an attribute derived with a different number of distinct values does 
+ * not, as its values are no longer distributed in the same way, unless it 
+ * is given the histogram of its remaining values. An attribute may also 
+ * have a DistinctSketch of the values it may take, which is kept by every 
+ * attribute derived from it. The histogram and sketch of an attribute of 
+ * the catalogue are set by the Catalogue, and cannot be changed once the
+ * catalogue has published it.
+ * 
+ * The attributes of a catalogue are given the ids of their names among
+ * the AttributeIds of the catalogue, which are kept by every attribute 
+ * derived from them, so that two of them are compared by comparing ints
+ * rather than strings. Any other attribute, such as one named in a query,
+ * has no id, and is compared with others by its name.
+ * 
  * @author nmg
  *
  */
 public class Attribute {
 
+	/**
+	 * The width in bytes assumed for attributes whose width is not given in
+	 * the system catalogue.
+	 */
+	public static final int DEFAULT_WIDTH = 8;
+
 	private String name;
-	private int values;
+	private AttributeIds ids;
+	private int id = -1;
+	private long values;
+	private int width;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private Histogram histogram;
+	private DistinctSketch sketch;
+	private boolean frozen;
 
 	public Attribute(String name) {
 		this.name = name;
 		this.values = 0;
+		this.width = DEFAULT_WIDTH;
 	}
 	/**
 	 * @param name
 	 * @param values
 	 */
-	public Attribute(String name, int values) {
+	public Attribute(String name, long values) {
+		this(name, values, DEFAULT_WIDTH);
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param width the width of the attribute in bytes
+	 */
+	public Attribute(String name, long values, int width) {
 		this.name = name;
-		this.values = values;
+		this.values = Cardinality.clamp(values);
+		this.width = width;
+	}
+	
+	/**
+	 * @param name
+	 * @param values
+	 * @param width the width of the attribute in bytes
+	 * @param min the smallest value of the attribute
+	 * @param max the largest value of the attribute
+	 */
+	public Attribute(String name, long values, int width, double min, double max) {
+		this(name, values, width);
+		this.min = min;
+		this.max = max;
 	}
 	
 	public Attribute(Attribute attr) {
 		this.name = attr.name;
+		this.ids = attr.ids;
+		this.id = attr.id;
 		this.values = attr.values;
+		this.width = attr.width;
+		this.min = attr.min;
+		this.max = attr.max;
+		this.histogram = attr.histogram;
+		this.sketch = attr.sketch;
+	}
+	
+	/**
+	 * Create a copy of an attribute with a different number of distinct
+	 * values
+	 * @param attr
+	 * @param values
+	 */
+	public Attribute(Attribute attr, long values) {
+		this(attr, values, attr.min, attr.max);
+	}
+	
+	/**
+	 * Create a copy of an attribute with a different number of distinct
+	 * values and range of values
+	 * @param attr
+	 * @param values
+	 * @param min
+	 * @param max
+	 */
+	public Attribute(Attribute attr, long values, double min, double max) {
+		this.name = attr.name;
+		this.ids = attr.ids;
+		this.id = attr.id;
+		this.values = Cardinality.clamp(values);
+		this.width = attr.width;
+		this.min = min;
+		this.max = max;
+		this.sketch = attr.sketch;
+	}
+	
+	/**
+	 * Create a copy of an attribute with a different number of distinct
+	 * values, range of values and histogram
+	 * @param attr
+	 * @param values
+	 * @param min
+	 * @param max
+	 * @param histogram the histogram of the remaining values, or null
+	 */
+	public Attribute(Attribute attr, long values, double min, double max, Histogram histogram) {
+		this(attr, values, min, max);
+		this.histogram = histogram;
+	}
+	
+	/**
+	 * Create a copy of an attribute with a different number of distinct
+	 * values and sketch of its values
+	 * @param attr
+	 * @param values
+	 * @param sketch
+	 */
+	public Attribute(Attribute attr, long values, DistinctSketch sketch) {
+		this(attr, values);
+		this.sketch = sketch;
 	}
 	
 	/**
@@ -40,10 +159,103 @@ public class Attribute {
 	/**
 	 * @return the number of distinct values taken by this attribute
 	 */
-	public int getValueCount() {
+	public long getValueCount() {
 		return values;
 	}
 	
+	/**
+	 * @return the width of this attribute in bytes
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * @return the smallest value of this attribute, or NaN if not known
+	 */
+	public double getMin() {
+		return min;
+	}
+	
+	/**
+	 * @return the largest value of this attribute, or NaN if not known
+	 */
+	public double getMax() {
+		return max;
+	}
+	
+	/**
+	 * @return true if the smallest and largest values of this attribute 
+	 * are known
+	 */
+	public boolean hasRange() {
+		return !Double.isNaN(min) && !Double.isNaN(max);
+	}
+	
+	/**
+	 * @return the histogram of the values of this attribute, or null if 
+	 * there is none
+	 */
+	public Histogram getHistogram() {
+		return histogram;
+	}
+	
+	/**
+	 * @param histogram the histogram of the values of this attribute
+	 */
+	protected void setHistogram(Histogram histogram) {
+		checkUnfrozen();
+		this.histogram = histogram;
+	}
+	
+	/**
+	 * @return the sketch of the values this attribute may take, or null if
+	 * there is none
+	 */
+	public DistinctSketch getSketch() {
+		return sketch;
+	}
+	
+	/**
+	 * @param sketch the sketch of the values this attribute may take
+	 */
+	protected void setSketch(DistinctSketch sketch) {
+		checkUnfrozen();
+		this.sketch = sketch;
+	}
+	
+	
+	/**
+	 * Prevent any further change to the statistics of this attribute
+	 */
+	protected void freeze() {
+		this.frozen = true;
+	}
+	
+	private void checkUnfrozen() {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("Cannot change a frozen attribute");
+		}
+	}
+	
+	/**
+	 * Give this attribute the id of its name among the attributes of a
+	 * catalogue.
+	 * @param ids
+	 */
+	protected void setId(AttributeIds ids) {
+		checkUnfrozen();
+		this.ids = ids;
+		this.id = ids.getId(this.name);
+	}
+	
+	/**
+	 * @return the id of the name of the attribute, or -1 if it is not an
+	 * attribute of a catalogue
+	 */
+	public int getId() {
+		return id;
+	}
 	
 	@Override
 	public int hashCode() {
@@ -60,7 +272,10 @@ public class Attribute {
 		}
 		Attribute rhs = (Attribute) obj;
 		
-		return this.name.equals(rhs.getName());
+		if (this.ids != null && this.ids == rhs.ids) {
+			return this.id == rhs.id;
+		}
+		return this.name.equals(rhs.name);
 	}
 	
 	public String toString() {
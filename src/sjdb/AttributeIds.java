@@ -0,0 +1,68 @@
+package sjdb;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class gives the names of the attributes of a catalogue dense
+ * integer ids, so that its attributes, and every attribute derived from
+ * them, are compared by comparing ints rather than strings. Each catalogue
+ * has its own ids, which are only given to the names of the attributes it
+ * holds, and live as long as the catalogue does; names which only appear
+ * in queries are never given an id.
+ *
+ * The attributes of a binary catalogue take the positions of their names
+ * in its attribute index as their ids, which are therefore fixed when it is
+ * opened, however its relations are loaded, and attributes created later
+ * take the ids after them.
+ */
+public final class AttributeIds {
+	private final BinaryCatalogue source;
+	private final int reserved;
+	private final ConcurrentHashMap<String, Integer> ids;
+
+	/**
+	 * Create the ids of a catalogue which is not opened from a binary
+	 * catalogue.
+	 */
+	public AttributeIds() {
+		this(null);
+	}
+
+	/**
+	 * Create the ids of a catalogue opened from a binary catalogue.
+	 * @param source Binary catalogue whose attributes take the first ids,
+	 *               or null
+	 */
+	public AttributeIds(BinaryCatalogue source) {
+		this.source = source;
+		this.reserved = source == null ? 0 : source.getAttributeCount();
+		this.ids = new ConcurrentHashMap<String, Integer>();
+	}
+
+	/**
+	 * Return the id of the name of an attribute of the catalogue, giving
+	 * the name the next id if it has none.
+	 * @param name
+	 * @return the id
+	 */
+	public int getId(String name) {
+		Integer id = this.ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		if (this.source != null) {
+			int position = this.source.getAttributePosition(name);
+			if (position >= 0) {
+				return position;
+			}
+		}
+		synchronized (this.ids) {
+			id = this.ids.get(name);
+			if (id == null) {
+				id = this.reserved + this.ids.size();
+				this.ids.put(name, id);
+			}
+		}
+		return id;
+	}
+}
@@ -0,0 +1,30 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This interface is implemented by the iterators of the VectorExecutor,
+ * which produce the tuples of an operator a ColumnBatch at a time.
+ */
+public interface BatchIterator {
+	/**
+	 * Return the attributes of the columns of the batches produced by this
+	 * iterator, in order.
+	 * @return Attributes
+	 */
+	public List<Attribute> getAttributes();
+	/**
+	 * Prepare to produce the first batch.
+	 */
+	public void open() throws DatabaseException;
+	/**
+	 * Return the next batch, which has at least one selected row and is
+	 * only valid until the next call.
+	 * @return Batch, or null if there are no more
+	 */
+	public ColumnBatch next() throws DatabaseException;
+	/**
+	 * Release the resources held by this iterator and its inputs.
+	 */
+	public void close();
+}
@@ -0,0 +1,486 @@
+package sjdb;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class reads a system catalogue stored in a binary file, which is
+ * mapped into memory rather than parsed, so that opening the catalogue
+ * takes the same time however many relations it holds. Named relations
+ * and attributes are only read from the file when they are first asked
+ * for, so a query only pays for the relations it reads.
+ *
+ * The file holds the same information as the text catalogue read by
+ * CatalogueParser, and is created from it by convert(), which may be run
+ * from the command line as
+ *
+ * java sjdb.BinaryCatalogue [<text catalogue> [<binary catalogue>]]
+ *
+ * The file is made up of a header, a record for each named relation, and
+ * two indexes. The header holds the page size, the number of relations and
+ * attributes, and the positions of the indexes. The record of a relation
+ * holds its tuple count, its attributes with their statistics, and its
+ * column groups. The relation index holds the position of the record of
+ * each relation, and the attribute index the position of the name of each
+ * attribute and of the record of its relation; both are sorted by name so
+ * that they can be searched in place. Numbers are big-endian, and strings
+ * are UTF-8 preceded by their length in bytes as an unsigned short.
+ *
+ * @author nmg
+ */
+public class BinaryCatalogue {
+
+	private static final int MAGIC = 0x534A4442;
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_SIZE = 28;
+
+	private static final int INDEXED = 1;
+	private static final int SORTED = 2;
+	private static final int HISTOGRAM = 4;
+	private static final int SKETCH = 8;
+	private static final int RANGE = 16;
+
+	private ByteBuffer buffer;
+	private int pageSize;
+	private int relationCount;
+	private int attributeCount;
+	private int relationIndex;
+	private int attributeIndex;
+	private ConcurrentHashMap<String, NamedRelation> relations;
+	private ConcurrentHashMap<String, Attribute> attributes;
+	private AttributeIds ids;
+
+	/**
+	 * Open a binary catalogue.
+	 * @param filename
+	 * @throws IOException if the file cannot be read or is not a binary
+	 *                     catalogue
+	 */
+	public BinaryCatalogue(String filename) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (this.buffer.limit() < HEADER_SIZE || this.buffer.getInt(0) != MAGIC) {
+			throw new IOException(filename + " is not a binary catalogue");
+		}
+		if (this.buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException(filename + " has unsupported format version " + this.buffer.getInt(4));
+		}
+		this.pageSize = this.buffer.getInt(8);
+		this.relationCount = this.buffer.getInt(12);
+		this.attributeCount = this.buffer.getInt(16);
+		this.relationIndex = this.buffer.getInt(20);
+		this.attributeIndex = this.buffer.getInt(24);
+		this.relations = new ConcurrentHashMap<String, NamedRelation>();
+		this.attributes = new ConcurrentHashMap<String, Attribute>();
+		this.ids = new AttributeIds(this);
+	}
+
+	/**
+	 * Return the size in bytes of the pages in which relations are stored
+	 * @return the page size
+	 */
+	public int getPageSize() {
+		return this.pageSize;
+	}
+
+	/**
+	 * Return the number of named relations in the catalogue
+	 * @return the number of relations
+	 */
+	public int getRelationCount() {
+		return this.relationCount;
+	}
+
+	/**
+	 * Return the number of attributes in the catalogue
+	 * @return the number of attributes
+	 */
+	public int getAttributeCount() {
+		return this.attributeCount;
+	}
+
+	/**
+	 * Return the ids of the names of the attributes of the catalogue
+	 * @return the ids
+	 */
+	public AttributeIds getAttributeIds() {
+		return this.ids;
+	}
+
+	/**
+	 * Return the names of every named relation in the catalogue, in order
+	 * @return the names
+	 */
+	public List<String> getRelationNames() {
+		List<String> names = new ArrayList<String>(this.relationCount);
+		for (int i = 0; i < this.relationCount; i++) {
+			names.add(readString(this.buffer.getInt(this.relationIndex + 4 * i)));
+		}
+		return names;
+	}
+
+	/**
+	 * Return the named relation with the given name, reading it from the
+	 * file if it has not been read before.
+	 * @param name
+	 * @return the relation, or null if there is none
+	 */
+	public NamedRelation getRelation(String name) {
+		NamedRelation reln = this.relations.get(name);
+		if (reln == null) {
+			int i = search(this.relationIndex, 4, this.relationCount, name);
+			if (i < 0) {
+				return null;
+			}
+			reln = load(this.buffer.getInt(this.relationIndex + 4 * i));
+		}
+		return reln;
+	}
+
+	/**
+	 * Return the attribute with the given name, reading its relation from
+	 * the file if it has not been read before.
+	 * @param name
+	 * @return the attribute, or null if there is none
+	 */
+	public Attribute getAttribute(String name) {
+		Attribute attr = this.attributes.get(name);
+		if (attr == null) {
+			int i = search(this.attributeIndex, 8, this.attributeCount, name);
+			if (i < 0) {
+				return null;
+			}
+			load(this.buffer.getInt(this.attributeIndex + 8 * i + 4));
+			attr = this.attributes.get(name);
+		}
+		return attr;
+	}
+
+	/**
+	 * Return the name of the named relation an attribute belongs to.
+	 * @param name
+	 * @return the name of the relation, or null if there is no such attribute
+	 */
+	public String getRelationName(String name) {
+		int i = search(this.attributeIndex, 8, this.attributeCount, name);
+		return i < 0 ? null : readString(this.buffer.getInt(this.attributeIndex + 8 * i + 4));
+	}
+
+	/**
+	 * Return the position of the name of an attribute in the attribute
+	 * index, which is its id.
+	 * @param name
+	 * @return the position, or -1 if there is no such attribute
+	 */
+	public int getAttributePosition(String name) {
+		return search(this.attributeIndex, 8, this.attributeCount, name);
+	}
+
+	/**
+	 * Binary search an index whose entries each start with the position of
+	 * a name.
+	 * @return the number of the entry with the name, or -1 if there is none
+	 */
+	private int search(int index, int entrySize, int count, String name) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = readString(this.buffer.getInt(index + entrySize * mid)).compareTo(name);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Read the record of a named relation and its attributes, unless another
+	 * thread has read it first.
+	 */
+	private synchronized NamedRelation load(int position) {
+		ByteBuffer in = this.buffer.duplicate();
+		in.position(position);
+		String name = readString(in);
+		if (this.relations.containsKey(name)) {
+			return this.relations.get(name);
+		}
+		NamedRelation reln = new NamedRelation(name, in.getLong());
+		Map<String, Attribute> relAttrs = new LinkedHashMap<String, Attribute>();
+
+		int count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			String attName = readString(in);
+			long values = in.getLong();
+			int width = in.getInt();
+			int flags = in.get();
+			Attribute attr = (flags & RANGE) != 0 ? new Attribute(attName, values, width, in.getDouble(), in.getDouble())
+					: new Attribute(attName, values, width);
+			attr.setId(this.ids);
+			if ((flags & HISTOGRAM) != 0) {
+				double[] bounds = new double[in.getInt()];
+				for (int j = 0; j < bounds.length; j++) {
+					bounds[j] = in.getDouble();
+				}
+				Map<String, Double> mostCommon = new LinkedHashMap<String, Double>();
+				int mostCommonCount = in.getInt();
+				for (int j = 0; j < mostCommonCount; j++) {
+					mostCommon.put(readString(in), in.getDouble());
+				}
+				attr.setHistogram(new Histogram(bounds, mostCommon));
+			}
+			if ((flags & SKETCH) != 0) {
+				int size = in.getInt();
+				long[] hashes = new long[in.getInt()];
+				for (int j = 0; j < hashes.length; j++) {
+					hashes[j] = in.getLong();
+				}
+				attr.setSketch(DistinctSketch.fromHashes(hashes, size));
+			}
+			reln.addAttribute(attr);
+			if ((flags & INDEXED) != 0) {
+				reln.addIndex(attr);
+			}
+			if ((flags & SORTED) != 0) {
+				reln.setSortOrder(attr);
+			}
+			relAttrs.put(attr.getName(), attr);
+		}
+
+		count = in.getInt();
+		for (int i = 0; i < count; i++) {
+			List<String> names = new ArrayList<String>();
+			int size = in.getInt();
+			for (int j = 0; j < size; j++) {
+				names.add(readString(in));
+			}
+			long values = in.getLong();
+			Map<List<String>, Double> mostCommon = new LinkedHashMap<List<String>, Double>();
+			int combinations = in.getInt();
+			for (int j = 0; j < combinations; j++) {
+				List<String> combination = new ArrayList<String>(size);
+				for (int k = 0; k < size; k++) {
+					combination.add(readString(in));
+				}
+				mostCommon.put(combination, in.getDouble());
+			}
+			reln.addColumnGroup(new ColumnGroup(names, values, mostCommon));
+		}
+
+		// the catalogue only changes copies of the relations and attributes
+		// read from the file
+		reln.freeze();
+		for (Attribute attr : relAttrs.values()) {
+			attr.freeze();
+		}
+
+		// record the attributes first, so that any thread which finds the
+		// relation also finds its attributes
+		this.attributes.putAll(relAttrs);
+		this.relations.put(name, reln);
+		return reln;
+	}
+
+	private String readString(int position) {
+		ByteBuffer in = this.buffer.duplicate();
+		in.position(position);
+		return readString(in);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xffff];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Convert a text catalogue into a binary catalogue.
+	 * @param textFilename The text catalogue, as read by CatalogueParser
+	 * @param binaryFilename The binary catalogue to write
+	 * @throws IOException if the text catalogue cannot be read or has
+	 *                     malformed lines
+	 */
+	public static void convert(String textFilename, String binaryFilename) throws IOException {
+		Catalogue catalogue = new Catalogue();
+		try {
+			new ParallelCatalogueLoader(textFilename, catalogue).load();
+		} catch (DatabaseException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		write(catalogue.snapshot(), binaryFilename);
+	}
+
+	/**
+	 * Write a version of the catalogue to a binary catalogue.
+	 * @param snapshot
+	 * @param filename
+	 * @throws IOException
+	 */
+	public static void write(CatalogueSnapshot snapshot, String filename) throws IOException {
+		TreeMap<String, NamedRelation> sorted = new TreeMap<String, NamedRelation>();
+		for (String name : snapshot.getRelationNames()) {
+			try {
+				sorted.put(name, snapshot.getRelation(name));
+			} catch (DatabaseException e) {
+				throw new IOException(e);
+			}
+		}
+
+		// write the records of the relations, noting where each relation and
+		// the name of each attribute starts
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(records);
+		List<Integer> relationPositions = new ArrayList<Integer>();
+		final List<String> attributeNames = new ArrayList<String>();
+		List<int[]> attributePositions = new ArrayList<int[]>();
+
+		for (NamedRelation reln : sorted.values()) {
+			int position = HEADER_SIZE + out.size();
+			relationPositions.add(position);
+			writeString(out, reln.getName());
+			out.writeLong(reln.getTupleCount());
+			out.writeInt(reln.getAttributes().size());
+			for (Attribute relAttr : reln.getAttributes()) {
+				Attribute attr;
+				try {
+					attr = snapshot.getAttribute(relAttr.getName());
+				} catch (DatabaseException e) {
+					attr = relAttr;
+				}
+				attributeNames.add(attr.getName());
+				attributePositions.add(new int[] { HEADER_SIZE + out.size(), position });
+				writeAttribute(out, reln, attr);
+			}
+			out.writeInt(reln.getColumnGroups().size());
+			for (ColumnGroup group : reln.getColumnGroups()) {
+				out.writeInt(group.getAttributes().size());
+				for (String name : group.getAttributes()) {
+					writeString(out, name);
+				}
+				out.writeLong(group.getValueCount());
+				out.writeInt(group.getMostCommonValues().size());
+				for (Map.Entry<List<String>, Double> entry : group.getMostCommonValues().entrySet()) {
+					for (String value : entry.getKey()) {
+						writeString(out, value);
+					}
+					out.writeDouble(entry.getValue());
+				}
+			}
+		}
+		out.flush();
+
+		// sort the attribute index by name
+		Integer[] order = new Integer[attributeNames.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return attributeNames.get(a).compareTo(attributeNames.get(b));
+			}
+		});
+
+		int relationIndex = HEADER_SIZE + records.size();
+		int attributeIndex = relationIndex + 4 * relationPositions.size();
+		try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+			file.writeInt(MAGIC);
+			file.writeInt(FORMAT_VERSION);
+			file.writeInt(snapshot.getPageSize());
+			file.writeInt(relationPositions.size());
+			file.writeInt(attributeNames.size());
+			file.writeInt(relationIndex);
+			file.writeInt(attributeIndex);
+			records.writeTo(file);
+			for (int position : relationPositions) {
+				file.writeInt(position);
+			}
+			for (int i : order) {
+				file.writeInt(attributePositions.get(i)[0]);
+				file.writeInt(attributePositions.get(i)[1]);
+			}
+		}
+	}
+
+	private static void writeAttribute(DataOutputStream out, NamedRelation reln, Attribute attr) throws IOException {
+		Histogram histogram = attr.getHistogram();
+		DistinctSketch sketch = attr.getSketch();
+		boolean range = !Double.isNaN(attr.getMin()) || !Double.isNaN(attr.getMax());
+		int flags = (reln.hasIndex(attr) ? INDEXED : 0)
+				| (attr.equals(reln.getSortOrder()) ? SORTED : 0)
+				| (histogram != null ? HISTOGRAM : 0)
+				| (sketch != null ? SKETCH : 0)
+				| (range ? RANGE : 0);
+
+		writeString(out, attr.getName());
+		out.writeLong(attr.getValueCount());
+		out.writeInt(attr.getWidth());
+		out.writeByte(flags);
+		if (range) {
+			out.writeDouble(attr.getMin());
+			out.writeDouble(attr.getMax());
+		}
+		if (histogram != null) {
+			double[] bounds = histogram.getBounds();
+			out.writeInt(bounds.length);
+			for (double bound : bounds) {
+				out.writeDouble(bound);
+			}
+			out.writeInt(histogram.getMostCommonValues().size());
+			for (Map.Entry<String, Double> entry : histogram.getMostCommonValues().entrySet()) {
+				writeString(out, entry.getKey());
+				out.writeDouble(entry.getValue());
+			}
+		}
+		if (sketch != null) {
+			long[] hashes = sketch.getHashes();
+			out.writeInt(sketch.getSize());
+			out.writeInt(hashes.length);
+			for (long hash : hashes) {
+				out.writeLong(hash);
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xffff) {
+			throw new IOException("String too long for a binary catalogue: " + s.substring(0, 20) + "...");
+		}
+		out.writeShort(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Convert the text catalogue named by the first argument (data/cat.txt by
+	 * default) into the binary catalogue named by the second (data/cat.bin by
+	 * default).
+	 */
+	public static void main(String[] args) throws Exception {
+		String textFilename = args.length > 0 ? args[0] : "data/cat.txt";
+		String binaryFilename = args.length > 1 ? args[1] : "data/cat.bin";
+		long start = System.currentTimeMillis();
+		convert(textFilename, binaryFilename);
+		System.out.println("wrote " + binaryFilename + " in " + (System.currentTimeMillis() - start) + "ms");
+	}
+}
@@ -1,8 +1,5 @@
 package sjdb;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * This abstract class represents a binary operator, and is
  * subclassed by Product and Join
@@ -14,9 +11,7 @@ public abstract class BinaryOperator extends Operator {
 	 * Create a new binary operator
 	 */
 	public BinaryOperator(Operator left, Operator right) {
-		super();
-		this.inputs.add(left);
-		this.inputs.add(right);
+		super(left, right);
 	}
 
 	/**
@@ -24,7 +19,7 @@ public abstract class BinaryOperator extends Operator {
 	 * @return Left child
 	 */
 	public Operator getLeft() {
-		return this.inputs.get(0);
+		return getInputs().get(0);
 	}
 
 	/**
@@ -32,27 +27,9 @@ public abstract class BinaryOperator extends Operator {
 	 * @return Right child
 	 */
 	public Operator getRight() {
-		return this.inputs.get(1);
-	}
-
-	/* (non-Javadoc)
-	 * @see sjdb.Operator#getInputs()
-	 */
-	@Override
-	public List<Operator> getInputs() {
-		List<Operator> inputs = new ArrayList<Operator>();
-		inputs.addAll(this.inputs);
-		return inputs;
+		return getInputs().get(1);
 	}
 
-	/* (non-Javadoc)
-	 * @see sjdb.Operator#getOutput()
-	 */
-	@Override
-	public Relation getOutput() {
-		return this.output;
-	}
-	
 	/* (non-Javadoc)
 	 * @see sjdb.Operator#accept(sjdb.OperatorVisitor)
 	 */
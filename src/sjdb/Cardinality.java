@@ -0,0 +1,93 @@
+package sjdb;
+
+/**
+ * This class does arithmetic on cardinalities: the tuple counts of
+ * relations and the numbers of distinct values of attributes. Cardinalities
+ * are longs between 0 and MAX, and arithmetic on them saturates at MAX
+ * rather than overflowing, so that the estimates for joins of very large
+ * relations are still ordered correctly, if not meaningful, when they are
+ * larger than MAX.
+ */
+public final class Cardinality {
+
+	/**
+	 * The largest cardinality, about 4.6 * 10^18. The sum of two
+	 * cardinalities is always less than Long.MAX_VALUE.
+	 */
+	public static final long MAX = Long.MAX_VALUE >> 1;
+
+	private Cardinality() {
+	}
+
+	/**
+	 * Limit a count to the range of cardinalities.
+	 * @param count
+	 * @return the cardinality
+	 */
+	public static long clamp(long count) {
+		return count < 0 ? 0 : Math.min(count, MAX);
+	}
+
+	/**
+	 * Return the smallest cardinality which is at least an estimate.
+	 * @param estimate
+	 * @return the cardinality, which is 0 if the estimate is NaN
+	 */
+	public static long ceil(double estimate) {
+		if (!(estimate > 0)) {
+			return 0;
+		}
+		return estimate >= MAX ? MAX : (long) Math.ceil(estimate);
+	}
+
+	/**
+	 * Return the largest cardinality which is at most an estimate.
+	 * @param estimate
+	 * @return the cardinality, which is 0 if the estimate is NaN
+	 */
+	public static long floor(double estimate) {
+		if (!(estimate > 0)) {
+			return 0;
+		}
+		return estimate >= MAX ? MAX : (long) Math.floor(estimate);
+	}
+
+	/**
+	 * Add two cardinalities.
+	 * @param a
+	 * @param b
+	 * @return the sum, or MAX if it is larger
+	 */
+	public static long add(long a, long b) {
+		return clamp(a + b);
+	}
+
+	/**
+	 * Multiply two cardinalities.
+	 * @param a
+	 * @param b
+	 * @return the product, or MAX if it is larger
+	 */
+	public static long multiply(long a, long b) {
+		if (a == 0 || b == 0) {
+			return 0;
+		}
+		return a > MAX / b ? MAX : a * b;
+	}
+
+	/**
+	 * Multiply two cardinalities and divide by a third, rounding down. The
+	 * result is exact unless the product is larger than a long can hold.
+	 * @param a
+	 * @param b
+	 * @param divisor which is treated as 1 if it is less than 1
+	 * @return the result, or MAX if it is larger
+	 */
+	public static long multiplyDivide(long a, long b, long divisor) {
+		divisor = Math.max(1, divisor);
+		if (b == 0 || a <= MAX / b) {
+			return a * b / divisor;
+		}
+		return floor((double) a * b / divisor);
+	}
+}
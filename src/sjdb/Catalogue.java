@@ -1,6 +1,10 @@
 package sjdb;
 
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class contains the system catalogue for the database; it
@@ -14,20 +18,217 @@ import java.util.HashMap;
  * 
  * Note that any statistical information about named relations or
  * the attributes therein is stored on the relations or attributes,
- * and not in the catalogue.
+ * and not in the catalogue. The catalogue does keep a version number
+ * which changes whenever the catalogue is changed, so that
+ * anything derived from the statistics (such as cached plans) can tell
+ * when it is out of date.
+ * 
+ * The catalogue also records the size of the pages in which relations
+ * are stored, which together with the widths of the attributes is used 
+ * to estimate the I/O cost of a plan.
+ * 
+ * Each version of the catalogue is an immutable CatalogueSnapshot, and
+ * the current version is published atomically, so that statistics may be
+ * refreshed while queries are optimised. A thread which needs consistent
+ * statistics for the whole of a query should read them from snapshot()
+ * rather than from the catalogue, which always reads the latest version.
+ * Changes are made by one writer at a time to a draft of the next
+ * version: relations and attributes are copied into the draft when they
+ * are first changed and the rest are shared, so a change costs time
+ * logarithmic rather than linear in the size of the catalogue. Only the
+ * copies in the draft can be changed; they are frozen when the draft is
+ * published as a new version. Each change is published as a new version,
+ * or a number of changes may be published together using update().
+ * 
+ * The names of the attributes of the catalogue are given ids by its
+ * AttributeIds, which are shared by every version of the catalogue.
+ * 
+ * A catalogue may be opened from a BinaryCatalogue, in which case the
+ * relations and attributes are only read from the file when they are first
+ * asked for, and changes to them are kept in memory.
  * 
  * @author nmg
  *
  */
 public class Catalogue {
 	
-	private HashMap<String, NamedRelation> relations;
-	private HashMap<String, Attribute> attributes;
+	private AtomicReference<CatalogueSnapshot> current;
+	private BinaryCatalogue source;
+	private AttributeIds ids;
 
+	/**
+	 * The draft of the next version, while a writer is changing the
+	 * catalogue, and the names of the relations and attributes which have
+	 * been created or copied into it
+	 */
+	private PersistentMap<NamedRelation> relations;
+	private PersistentMap<Attribute> attributes;
+	private PersistentMap<String> owners;
+	private Set<String> copiedRelations;
+	private Set<String> copiedAttributes;
+	private int pageSize;
+	private int depth;
+
+	/**
+	 * The page size in bytes used unless the catalogue gives another.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 4096;
 
 	public Catalogue() {
-		this.relations = new HashMap<String, NamedRelation>();
-		this.attributes = new HashMap<String, Attribute>();
+		this.ids = new AttributeIds();
+		this.current = new AtomicReference<CatalogueSnapshot>(new CatalogueSnapshot(
+				PersistentMap.<NamedRelation>empty(), PersistentMap.<Attribute>empty(), PersistentMap.<String>empty(),
+				0, DEFAULT_PAGE_SIZE, null, this.ids));
+	}
+	
+	/**
+	 * Create a catalogue holding the relations and attributes in a binary
+	 * catalogue, which are read from it as they are needed.
+	 * 
+	 * @param source
+	 */
+	public Catalogue(BinaryCatalogue source) {
+		this.source = source;
+		this.ids = source.getAttributeIds();
+		this.current = new AtomicReference<CatalogueSnapshot>(new CatalogueSnapshot(
+				PersistentMap.<NamedRelation>empty(), PersistentMap.<Attribute>empty(), PersistentMap.<String>empty(),
+				0, source.getPageSize(), source, this.ids));
+	}
+	
+	/**
+	 * Return the current version of the catalogue.
+	 * 
+	 * @return
+	 */
+	public CatalogueSnapshot snapshot() {
+		return current.get();
+	}
+	
+	/**
+	 * Make a number of changes to the catalogue and publish them as a single
+	 * version, so that no reader sees some of the changes but not others.
+	 * Readers see the previous version until the changes are complete.
+	 * 
+	 * @param changes
+	 */
+	public synchronized void update(Runnable changes) {
+		begin();
+		try {
+			changes.run();
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Start a change, drafting the next version from the current one unless
+	 * a change is already in progress.
+	 */
+	private void begin() {
+		if (depth++ == 0) {
+			CatalogueSnapshot snapshot = current.get();
+			relations = snapshot.getRelationMap();
+			attributes = snapshot.getAttributeMap();
+			owners = snapshot.getOwnerMap();
+			copiedRelations = new HashSet<String>();
+			copiedAttributes = new HashSet<String>();
+			pageSize = snapshot.getPageSize();
+		}
+	}
+	
+	/**
+	 * Finish a change, freezing the relations and attributes changed in the
+	 * draft and publishing it as the next version, unless the change is part
+	 * of a larger one.
+	 */
+	private void end() {
+		if (--depth == 0) {
+			for (String relName : copiedRelations) {
+				relations.get(relName).freeze();
+			}
+			for (String attName : copiedAttributes) {
+				attributes.get(attName).freeze();
+			}
+			current.set(new CatalogueSnapshot(relations, attributes, owners, current.get().getVersion() + 1, 
+					pageSize, source, ids));
+			relations = null;
+			attributes = null;
+			owners = null;
+			copiedRelations = null;
+			copiedAttributes = null;
+		}
+	}
+	
+	/**
+	 * Return the copy of a relation in the draft which may be changed, 
+	 * copying the relation if it has not yet been.
+	 */
+	private NamedRelation edit(String relName) {
+		NamedRelation reln = relation(relName);
+		if (copiedRelations.add(relName)) {
+			reln = new NamedRelation(reln);
+			relations = relations.put(relName, reln);
+		}
+		return reln;
+	}
+	
+	/**
+	 * Return the copy of an attribute in the draft which may be changed,
+	 * copying the attribute if it has not yet been and replacing it with the
+	 * copy in its relation.
+	 */
+	private Attribute edit(Attribute attr) {
+		if (!copiedAttributes.add(attr.getName())) {
+			return attr;
+		}
+		Attribute copy = new Attribute(attr);
+		attributes = attributes.put(attr.getName(), copy);
+		String relName = owners.get(attr.getName());
+		if (relName == null && source != null) {
+			relName = source.getRelationName(attr.getName());
+		}
+		if (relName != null) {
+			NamedRelation reln = edit(relName);
+			int i = reln.indexOf(attr);
+			// a relation with fewer tuples than the attribute has values holds
+			// its own copy of the attribute, which is left as it is
+			if (reln.getAttributes().get(i) == attr) {
+				reln.setAttribute(i, copy);
+			}
+		}
+		return copy;
+	}
+	
+	/**
+	 * Return the relation with the specified name in the next version, or 
+	 * null if there is none.
+	 */
+	private NamedRelation relation(String relName) {
+		NamedRelation reln = relations.get(relName);
+		if (reln == null && source != null) {
+			reln = source.getRelation(relName);
+		}
+		return reln;
+	}
+	
+	/**
+	 * Return the attribute with the specified name in the next version, or
+	 * null if there is none.
+	 */
+	private Attribute attribute(String attName) {
+		Attribute attr = attributes.get(attName);
+		if (attr == null && source != null) {
+			attr = source.getAttribute(attName);
+		}
+		return attr;
+	}
+	
+	/**
+	 * Return true if the calling thread is changing the catalogue, and so
+	 * should read the version it is building.
+	 */
+	private boolean isWriting() {
+		return Thread.holdsLock(this) && depth > 0;
 	}
 	
 	/**
@@ -37,9 +238,15 @@ public class Catalogue {
 	 * @param relName
 	 * @param size
 	 */
-	public NamedRelation createRelation(String relName, int size) {
+	public synchronized NamedRelation createRelation(String relName, long size) {
 		NamedRelation reln = new NamedRelation(relName, size);
-		relations.put(relName, reln);
+		begin();
+		try {
+			relations = relations.put(relName, reln);
+			copiedRelations.add(relName);
+		} finally {
+			end();
+		}
 		return reln;
 	}
 	
@@ -53,13 +260,170 @@ public class Catalogue {
 	 * @param values
 	 * @return
 	 */
-	public Attribute createAttribute(String relName, String attName, int values) {
-		Attribute attr = new Attribute(attName, values);
-		attributes.put(attName, attr);
-		relations.get(relName).addAttribute(attr);
+	public Attribute createAttribute(String relName, String attName, long values) {
+		return createAttribute(relName, attName, values, Attribute.DEFAULT_WIDTH);
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values and width in bytes, add it to the directory and associate it 
+	 * with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param width
+	 * @return
+	 */
+	public Attribute createAttribute(String relName, String attName, long values, int width) {
+		return createAttribute(relName, attName, values, width, Double.NaN, Double.NaN);
+	}
+	
+	/**
+	 * Create a new Attribute with the specified name, number of distinct
+	 * values, width in bytes and smallest and largest values, add it to the
+	 * directory and associate it with the specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attName
+	 * @param values
+	 * @param width
+	 * @param min NaN if not known
+	 * @param max NaN if not known
+	 * @return
+	 */
+	public synchronized Attribute createAttribute(String relName, String attName, long values, int width, double min, double max) {
+		Attribute attr = new Attribute(attName, values, width, min, max);
+		attr.setId(ids);
+		begin();
+		try {
+			attributes = attributes.put(attName, attr);
+			owners = owners.put(attName, relName);
+			copiedAttributes.add(attName);
+			edit(relName).addAttribute(attr);
+		} finally {
+			end();
+		}
 		return attr;
 	}
 	
+	/**
+	 * Record that an attribute of the specified NamedRelation is indexed.
+	 * 
+	 * @param relName
+	 * @param attName
+	 */
+	public synchronized void createIndex(String relName, String attName) {
+		begin();
+		try {
+			edit(relName).addIndex(attribute(attName));
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Record that the specified NamedRelation is stored sorted on an 
+	 * attribute.
+	 * 
+	 * @param relName
+	 * @param attName
+	 */
+	public synchronized void setSortOrder(String relName, String attName) {
+		begin();
+		try {
+			edit(relName).setSortOrder(attribute(attName));
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Record the distribution of the values of an attribute.
+	 * 
+	 * @param attName
+	 * @param histogram
+	 */
+	public synchronized void setHistogram(String attName, Histogram histogram) {
+		begin();
+		try {
+			edit(attribute(attName)).setHistogram(histogram);
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Record the joint statistics of a group of correlated attributes of the
+	 * specified NamedRelation.
+	 * 
+	 * @param relName
+	 * @param attNames
+	 * @param values the number of distinct combinations of their values
+	 * @param mostCommon the most common combinations of values, each mapped
+	 *                   to the fraction of the tuples which take it
+	 * @return
+	 */
+	public synchronized ColumnGroup createColumnGroup(String relName, List<String> attNames, long values, 
+			Map<List<String>, Double> mostCommon) {
+		ColumnGroup group = new ColumnGroup(attNames, values, mostCommon);
+		begin();
+		try {
+			edit(relName).addColumnGroup(group);
+		} finally {
+			end();
+		}
+		return group;
+	}
+	
+	/**
+	 * Record a sketch of the distinct values of an attribute.
+	 * 
+	 * @param attName
+	 * @param sketch
+	 */
+	public synchronized void setSketch(String attName, DistinctSketch sketch) {
+		begin();
+		try {
+			edit(attribute(attName)).setSketch(sketch);
+		} finally {
+			end();
+		}
+	}
+	
+	/**
+	 * Return the version of the statistics in the catalogue, which changes
+	 * whenever the catalogue is changed.
+	 * 
+	 * @return
+	 */
+	public int getVersion() {
+		return current.get().getVersion();
+	}
+	
+	/**
+	 * Return the size in bytes of the pages in which relations are stored.
+	 * 
+	 * @return
+	 */
+	public int getPageSize() {
+		return isWriting() ? pageSize : current.get().getPageSize();
+	}
+	
+	/**
+	 * Set the size in bytes of the pages in which relations are stored.
+	 * 
+	 * @param pageSize
+	 */
+	public synchronized void setPageSize(int pageSize) {
+		begin();
+		try {
+			this.pageSize = pageSize;
+		} finally {
+			end();
+		}
+	}
+	
 	/**
 	 * Return the NamedRelation with the specified name.
 	 * 
@@ -67,7 +431,10 @@ public class Catalogue {
 	 * @return
 	 */
 	public NamedRelation getRelation(String name) throws DatabaseException {
-		NamedRelation reln = relations.get(name);
+		if (!isWriting()) {
+			return current.get().getRelation(name);
+		}
+		NamedRelation reln = relation(name);
 		
 		if (reln==null) {
 			throw new DatabaseException("Named relation " + name + " not found");
@@ -83,7 +450,10 @@ public class Catalogue {
 	 * @return
 	 */
 	public Attribute getAttribute(String name) throws DatabaseException {
-		Attribute attr = attributes.get(name);
+		if (!isWriting()) {
+			return current.get().getAttribute(name);
+		}
+		Attribute attr = attribute(name);
 		
 		if (attr==null) {
 			throw new DatabaseException("Attribute " + name + " not found");
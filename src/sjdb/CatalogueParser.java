@@ -1,5 +1,9 @@
 package sjdb;
 import java.io.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * This class parses a serialised system catalogue, and uses the
@@ -10,6 +14,43 @@ import java.io.*;
  * 
  * <relation name>:<tuple count>:<attr name>,<value count>:<attr name>,<value count>
  * 
+ * The value count of an attribute may be followed by its width in bytes, 
+ * as in <attr name>,<value count>,<width>; attributes without a width are
+ * given the default width. An attribute which is indexed is followed by
+ * the word index, as in <attr name>,<value count>,<width>,index or
+ * <attr name>,<value count>,index. Similarly, the attribute which the 
+ * relation is stored sorted on is followed by the word sorted. The range
+ * of a numeric attribute may be given by min=<value> and max=<value>, as in
+ * <attr name>,<value count>,min=1,max=100. A line of the form
+ * 
+ * PAGESIZE:<bytes>
+ * 
+ * sets the size of the pages in which the relations are stored, and lines
+ * of the forms
+ * 
+ * HISTOGRAM:<attr name>:<bound>,<bound>,...,<bound>
+ * MCV:<attr name>:<value>=<fraction>,...,<value>=<fraction>
+ * 
+ * give the bounds of the buckets of an equi-depth histogram of the values
+ * of an attribute, in ascending order, and its most common values with 
+ * the fraction of the tuples of the relation which take each of them. 
+ * A line of the form
+ * 
+ * SKETCH:<attr name>:<size>:<hash>,<hash>,...,<hash>
+ * 
+ * gives a K-minimum-values sketch of the distinct values of an attribute:
+ * the smallest <size> of the hashes of its values, computed with 
+ * DistinctSketch.hash(), or all of them if there are fewer. A line of the
+ * form
+ * 
+ * GROUP:<relation name>:<attr name>,...,<attr name>:<value count>
+ * 
+ * declares a group of correlated attributes of a relation with the number
+ * of distinct combinations of their values. It may be followed by the most
+ * common combinations, as in :<value>/<value>=<fraction>,... with the
+ * values in the order of the attributes. These lines must follow the line
+ * of the relation with the attribute.
+ * 
  * @author nmg
  */
 public class CatalogueParser {
@@ -30,21 +71,69 @@ public class CatalogueParser {
 		}
 	}
 	
+	/**
+	 * Create a parser that parses single lines of a serialised catalogue
+	 * given to parseLine()
+	 * @param catalogue
+	 */
+	protected CatalogueParser(Catalogue catalogue) {
+		this.catalogue = catalogue;
+	}
+	
+	/**
+	 * Parse the catalogue, publishing everything it describes as a single
+	 * new version of the catalogue. A line which cannot be parsed is 
+	 * reported with its line number and skipped.
+	 */
 	public void parse() {
-		String line;
+		catalogue.update(new Runnable() {
+			public void run() {
+				String line;
+				int lineNumber = 0;
 
-		try {
-			while ((line = this.read.readLine()) != null) {
-				parseRelation(line.split(":", 0));
+				try {
+					while ((line = read.readLine()) != null) {
+						lineNumber++;
+						try {
+							parseLine(line);
+						} catch (Exception e) {
+							System.err.println("line " + lineNumber + ": " + e);
+						}
+					}
+				} catch (IOException e) {
+					System.err.println(e.toString());
+				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		});
+	}
+	
+	/**
+	 * Parse a single line of a serialised catalogue
+	 * @param line
+	 * @throws DatabaseException if the line refers to a relation or 
+	 *                           attribute which does not exist
+	 */
+	protected void parseLine(String line) throws DatabaseException {
+		parseRelation(line.split(":", 0));
 	}
 	
-	private void parseRelation(String[] parts) {
+	private void parseRelation(String[] parts) throws DatabaseException {
+		if (parts[0].equals("PAGESIZE")) {
+			catalogue.setPageSize(Integer.decode(parts[1]).intValue());
+			return;
+		} else if (parts[0].equals("HISTOGRAM") || parts[0].equals("MCV")) {
+			parseHistogram(parts[0], parts[1], parts[2].split(",", 0));
+			return;
+		} else if (parts[0].equals("GROUP")) {
+			parseColumnGroup(parts);
+			return;
+		} else if (parts[0].equals("SKETCH")) {
+			parseSketch(parts[1], Integer.decode(parts[2]).intValue(), parts.length > 3 ? parts[3].split(",", 0) : new String[0]);
+			return;
+		}
+		
 		String reln = parts[0];
-		int size = Integer.decode(parts[1]).intValue();
+		long size = Long.decode(parts[1]).longValue();
 		
 		catalogue.createRelation(reln, size);
 		
@@ -53,10 +142,82 @@ public class CatalogueParser {
 		}
 	}
 
+	private void parseHistogram(String kind, String attr, String[] parts) throws DatabaseException {
+		Histogram histogram = catalogue.getAttribute(attr).getHistogram();
+		double[] bounds = histogram == null ? new double[0] : histogram.getBounds();
+		Map<String, Double> mostCommon = new LinkedHashMap<String, Double>();
+		if (histogram != null) {
+			mostCommon.putAll(histogram.getMostCommonValues());
+		}
+		
+		if (kind.equals("HISTOGRAM")) {
+			bounds = new double[parts.length];
+			for (int i = 0; i < parts.length; i++) {
+				bounds[i] = Double.parseDouble(parts[i]);
+			}
+		} else {
+			for (int i = 0; i < parts.length; i++) {
+				int split = parts[i].lastIndexOf('=');
+				mostCommon.put(parts[i].substring(0, split), Double.parseDouble(parts[i].substring(split + 1)));
+			}
+		}
+		
+		catalogue.setHistogram(attr, new Histogram(bounds, mostCommon));
+	}
+
+	private void parseColumnGroup(String[] parts) {
+		List<String> attrs = Arrays.asList(parts[2].split(",", 0));
+		long values = Long.decode(parts[3]).longValue();
+		Map<List<String>, Double> mostCommon = new LinkedHashMap<List<String>, Double>();
+		
+		if (parts.length > 4) {
+			for (String entry : parts[4].split(",", 0)) {
+				int split = entry.lastIndexOf('=');
+				mostCommon.put(Arrays.asList(entry.substring(0, split).split("/", 0)), 
+						Double.parseDouble(entry.substring(split + 1)));
+			}
+		}
+		
+		catalogue.createColumnGroup(parts[1], attrs, values, mostCommon);
+	}
+
+	private void parseSketch(String attr, int size, String[] parts) {
+		long[] hashes = new long[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			hashes[i] = Long.parseLong(parts[i]);
+		}
+		catalogue.setSketch(attr, DistinctSketch.fromHashes(hashes, size));
+	}
+
 	private void parseAttribute(String reln, String[] parts) {
 		String attr = parts[0];
-		int values = Integer.decode(parts[1]).intValue();
+		long values = Long.decode(parts[1]).longValue();
+		int width = Attribute.DEFAULT_WIDTH;
+		boolean indexed = false;
+		boolean sorted = false;
+		double min = Double.NaN;
+		double max = Double.NaN;
 		
-		catalogue.createAttribute(reln, attr, values);
+		for (int i = 2; i < parts.length; i++) {
+			if (parts[i].equals("index")) {
+				indexed = true;
+			} else if (parts[i].equals("sorted")) {
+				sorted = true;
+			} else if (parts[i].startsWith("min=")) {
+				min = Double.parseDouble(parts[i].substring(4));
+			} else if (parts[i].startsWith("max=")) {
+				max = Double.parseDouble(parts[i].substring(4));
+			} else {
+				width = Integer.decode(parts[i]).intValue();
+			}
+		}
+		
+		catalogue.createAttribute(reln, attr, values, width, min, max);
+		if (indexed) {
+			catalogue.createIndex(reln, attr);
+		}
+		if (sorted) {
+			catalogue.setSortOrder(reln, attr);
+		}
 	}
 }
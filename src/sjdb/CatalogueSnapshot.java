@@ -0,0 +1,235 @@
+package sjdb;
+
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * This class is an immutable version of the system catalogue: the named
+ * relations and attributes in the catalogue, with their statistics, as
+ * they were when the version was published.
+ *
+ * The Catalogue publishes a new snapshot whenever it is changed, and a
+ * relation or attribute cannot be changed once it has been published; a
+ * change to the statistics of a relation or attribute replaces it with a
+ * changed copy in the next snapshot. A thread which reads its relations and
+ * attributes from one snapshot therefore sees consistent statistics without
+ * locking, however the catalogue is changed while it does so. Snapshots
+ * keep their relations and attributes in PersistentMaps, so that each new
+ * snapshot shares every relation and attribute which was not changed with
+ * the one before it rather than copying them.
+ *
+ * The relations and attributes of a catalogue opened from a binary file are
+ * only read from the file when they are first asked for. A snapshot holds
+ * the relations and attributes which have been changed since the file was
+ * opened, and reads the rest from the file.
+ *
+ * @author nmg
+ */
+public final class CatalogueSnapshot {
+
+	private final PersistentMap<NamedRelation> relations;
+	private final PersistentMap<Attribute> attributes;
+	private final PersistentMap<String> owners;
+	private final int version;
+	private final int pageSize;
+	private final BinaryCatalogue source;
+	private final AttributeIds ids;
+
+	/**
+	 * Create a new snapshot. The relations and attributes in the maps must
+	 * have been frozen.
+	 *
+	 * @param relations Named relations, indexed by name
+	 * @param attributes Attributes, indexed by name
+	 * @param owners The name of the relation of each attribute, indexed by
+	 *               the name of the attribute
+	 * @param version
+	 * @param pageSize
+	 * @param source Binary catalogue holding the relations and attributes
+	 *               which are not in the maps, or null
+	 * @param ids The ids of the names of the attributes of the catalogue
+	 */
+	protected CatalogueSnapshot(PersistentMap<NamedRelation> relations, PersistentMap<Attribute> attributes,
+			PersistentMap<String> owners, int version, int pageSize, BinaryCatalogue source, AttributeIds ids) {
+		this.relations = relations;
+		this.attributes = attributes;
+		this.owners = owners;
+		this.version = version;
+		this.pageSize = pageSize;
+		this.source = source;
+		this.ids = ids;
+	}
+
+	/**
+	 * Return the version of the catalogue captured by this snapshot.
+	 *
+	 * @return
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Return the size in bytes of the pages in which relations are stored.
+	 *
+	 * @return
+	 */
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	/**
+	 * Return the named relations of this snapshot, from which the next
+	 * version of the catalogue is made.
+	 */
+	protected PersistentMap<NamedRelation> getRelationMap() {
+		return relations;
+	}
+
+	/**
+	 * Return the attributes of this snapshot, from which the next version
+	 * of the catalogue is made.
+	 */
+	protected PersistentMap<Attribute> getAttributeMap() {
+		return attributes;
+	}
+
+	/**
+	 * Return the name of the relation of each attribute of this snapshot,
+	 * from which the next version of the catalogue is made.
+	 */
+	protected PersistentMap<String> getOwnerMap() {
+		return owners;
+	}
+
+	/**
+	 * Return the binary catalogue which the relations and attributes that
+	 * have not been changed are read from, or null if there is none.
+	 *
+	 * @return
+	 */
+	public BinaryCatalogue getSource() {
+		return source;
+	}
+
+	/**
+	 * Return the NamedRelations which have been created or changed since
+	 * the catalogue was opened, which are all of them unless it was opened
+	 * from a binary file.
+	 *
+	 * @return
+	 */
+	public Collection<NamedRelation> getRelations() {
+		return relations.values();
+	}
+
+	/**
+	 * Return the Attributes which have been created or changed since the
+	 * catalogue was opened, which are all of them unless it was opened from
+	 * a binary file.
+	 *
+	 * @return
+	 */
+	public Collection<Attribute> getAttributes() {
+		return attributes.values();
+	}
+
+	/**
+	 * Return the names of every NamedRelation in this snapshot, in order.
+	 *
+	 * @return
+	 */
+	public Collection<String> getRelationNames() {
+		TreeSet<String> names = new TreeSet<String>(relations.keys());
+		if (source != null) {
+			names.addAll(source.getRelationNames());
+		}
+		return names;
+	}
+
+	/**
+	 * Return true if this snapshot has a NamedRelation with the specified
+	 * name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public boolean hasRelation(String name) {
+		return findRelation(name) != null;
+	}
+
+	/**
+	 * Return the NamedRelation with the specified name, or null if there is
+	 * none.
+	 */
+	protected NamedRelation findRelation(String name) {
+		NamedRelation reln = relations.get(name);
+		if (reln == null && source != null) {
+			reln = source.getRelation(name);
+		}
+		return reln;
+	}
+
+	/**
+	 * Return the Attribute with the specified name, or null if there is
+	 * none.
+	 */
+	protected Attribute findAttribute(String name) {
+		Attribute attr = attributes.get(name);
+		if (attr == null && source != null) {
+			attr = source.getAttribute(name);
+		}
+		return attr;
+	}
+
+	/**
+	 * Return an attribute with the specified name as it is named in a
+	 * query, without statistics. If the snapshot has an attribute with that
+	 * name, the attribute returned has its id, so that it is compared with
+	 * the attributes of the catalogue by id; otherwise it has none, and is
+	 * compared by name. The attribute itself is not read from a binary
+	 * catalogue.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Attribute resolveAttribute(String name) {
+		Attribute attr = new Attribute(name);
+		if (attributes.get(name) != null || (source != null && source.getAttributePosition(name) >= 0)) {
+			attr.setId(ids);
+		}
+		return attr;
+	}
+
+	/**
+	 * Return the NamedRelation with the specified name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public NamedRelation getRelation(String name) throws DatabaseException {
+		NamedRelation reln = findRelation(name);
+
+		if (reln==null) {
+			throw new DatabaseException("Named relation " + name + " not found");
+		}
+
+		return reln;
+	}
+
+	/**
+	 * Return the Attribute with the specified name.
+	 *
+	 * @param name
+	 * @return
+	 */
+	public Attribute getAttribute(String name) throws DatabaseException {
+		Attribute attr = findAttribute(name);
+
+		if (attr==null) {
+			throw new DatabaseException("Attribute " + name + " not found");
+		}
+
+		return attr;
+	}
+}
@@ -0,0 +1,128 @@
+package sjdb;
+
+/**
+ * This class holds a batch of the tuples of a relation as columns: an
+ * array of values for each attribute, in the order of the attributes. The
+ * values are codes given to strings by the VectorExecutor, so equal codes
+ * are equal values.
+ *
+ * A batch may have a selection vector, which lists the positions of the
+ * rows of the batch which are selected, in order; the other rows have been
+ * removed by a select. Without one, every row is selected. The arrays of a
+ * batch are reused for the next batch by the iterator which produced it.
+ */
+public final class ColumnBatch {
+
+	/**
+	 * The largest number of rows in a batch.
+	 */
+	public static final int CAPACITY = 1024;
+
+	private int[][] columns;
+	private int size;
+	private int[] selection;
+	private int count;
+	private boolean selected;
+
+	/**
+	 * Create an empty batch.
+	 * @param width Number of attributes
+	 */
+	public ColumnBatch(int width) {
+		this.columns = new int[width][CAPACITY];
+		this.selection = new int[CAPACITY];
+	}
+
+	/**
+	 * Return the number of attributes
+	 * @return the width
+	 */
+	public int getWidth() {
+		return this.columns.length;
+	}
+
+	/**
+	 * Return the values of an attribute
+	 * @param position Position of the attribute
+	 * @return the column
+	 */
+	public int[] getColumn(int position) {
+		return this.columns[position];
+	}
+
+	/**
+	 * Replace the values of an attribute with a column of another batch
+	 * @param position Position of the attribute
+	 * @param column
+	 */
+	public void setColumn(int position, int[] column) {
+		this.columns[position] = column;
+	}
+
+	/**
+	 * Return the number of rows in the batch, selected or not
+	 * @return the size
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Return the number of selected rows
+	 * @return the count
+	 */
+	public int getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Return the selection vector, whose first getCount() entries are the
+	 * positions of the selected rows, or null if every row is selected.
+	 * @return the selection vector
+	 */
+	public int[] getSelection() {
+		return this.selected ? this.selection : null;
+	}
+
+	/**
+	 * Return an array into which the positions of the selected rows may be
+	 * written before calling select(). It may be the current selection
+	 * vector, which is safe to overwrite in order.
+	 * @return the array
+	 */
+	public int[] getSelectionBuffer() {
+		return this.selection;
+	}
+
+	/**
+	 * Set the number of rows in the batch, all of which are selected.
+	 * @param size
+	 */
+	public void setSize(int size) {
+		this.size = size;
+		this.count = size;
+		this.selected = false;
+	}
+
+	/**
+	 * Select the rows whose positions have been written to the first
+	 * entries of the selection buffer.
+	 * @param count Number of rows selected
+	 */
+	public void select(int count) {
+		this.count = count;
+		this.selected = true;
+	}
+
+	/**
+	 * Make this batch hold the rows of another, selected in the same way,
+	 * without copying them. The columns are set separately.
+	 * @param batch
+	 */
+	public void share(ColumnBatch batch) {
+		this.size = batch.size;
+		this.count = batch.count;
+		this.selected = batch.selected;
+		this.selection = batch.selection;
+	}
+}
@@ -0,0 +1,93 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds statistics on a group of attributes of a named relation
+ * whose values are correlated, such as a city and its postcode, so that the
+ * selectivity of selects on several of them cannot be found by multiplying
+ * the selectivities of the selects on each. The group records the number of
+ * distinct combinations of values of its attributes, and optionally the most
+ * common combinations with the fraction of the tuples which take each.
+ */
+public class ColumnGroup {
+	private List<String> attributes;
+	private long valueCount;
+	private Map<List<String>, Double> mostCommon;
+
+	/**
+	 * Create a new column group.
+	 * @param attributes Names of the attributes in the group
+	 * @param valueCount Number of distinct combinations of their values
+	 * @param mostCommon The most common combinations, each a list of values
+	 *                   in the order of the attributes, mapped to the
+	 *                   fraction of the tuples which take it
+	 */
+	public ColumnGroup(List<String> attributes, long valueCount, Map<List<String>, Double> mostCommon) {
+		if (attributes.size() < 2) {
+			throw new IllegalArgumentException("A column group needs at least two attributes");
+		}
+		this.attributes = Collections.unmodifiableList(new ArrayList<String>(attributes));
+		this.valueCount = Cardinality.clamp(valueCount);
+		this.mostCommon = Collections.unmodifiableMap(new LinkedHashMap<List<String>, Double>(mostCommon));
+	}
+
+	/**
+	 * Return the names of the attributes in the group
+	 * @return the attribute names
+	 */
+	public List<String> getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * Return true if an attribute is in the group
+	 * @param attr
+	 * @return true if the group contains the attribute
+	 */
+	public boolean contains(Attribute attr) {
+		return this.attributes.contains(attr.getName());
+	}
+
+	/**
+	 * Return the number of distinct combinations of the values of the
+	 * attributes in the group
+	 * @return the number of combinations
+	 */
+	public long getValueCount() {
+		return this.valueCount;
+	}
+
+	/**
+	 * Return the most common combinations of values, each mapped to the
+	 * fraction of the tuples which take it
+	 * @return the most common combinations
+	 */
+	public Map<List<String>, Double> getMostCommonValues() {
+		return this.mostCommon;
+	}
+
+	/**
+	 * Return the fraction of the tuples which take a combination of values,
+	 * if it is one of the most common combinations.
+	 * @param values One value for each attribute, in the order of the
+	 *               attributes
+	 * @return the fraction of the tuples, or NaN if the combination is not
+	 *         one of the most common
+	 */
+	public double getFrequency(List<String> values) {
+		Double fraction = this.mostCommon.get(values);
+		return fraction == null ? Double.NaN : fraction;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return this.attributes + "," + this.valueCount;
+	}
+}
@@ -0,0 +1,89 @@
+package sjdb;
+
+/**
+ * This is an interface for a model of the cost of executing a query plan.
+ * A cost model gives the cost of each operator on its own, excluding the
+ * cost of producing its inputs, and the cost of a plan is the sum of the
+ * costs of its operators. The operators must already have been visited by
+ * the Estimator, as their costs depend on the sizes of their inputs and
+ * outputs.
+ */
+public interface CostModel {
+	/**
+	 * Return the cost of an operator, excluding the cost of its inputs.
+	 * @param op Estimated operator
+	 * @return the cost of the operator
+	 */
+	public double getCost(Operator op);
+
+	/**
+	 * Return the memory an operator needs to run without spilling to disk.
+	 * @param op Estimated operator
+	 * @return the memory needed, in pages
+	 */
+	public long getMemory(Operator op);
+
+	/**
+	 * Return the total cost of a plan, which is the sum of the costs of all
+	 * of its operators.
+	 * @param plan Estimated plan
+	 * @return the total cost of the plan
+	 */
+	public default double getTotalCost(Operator plan) {
+		double cost = getCost(plan);
+		if (!(plan instanceof Scan)) {
+			for (Operator input : plan.getInputs()) {
+				cost += getTotalCost(input);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Return the total cost of a plan which was built on top of two
+	 * subplans whose total costs are already known, so that costs can be
+	 * accumulated up the plan without costing the subplans again.
+	 * @param plan Estimated plan
+	 * @param left Subplan of the plan
+	 * @param leftCost Total cost of the left subplan
+	 * @param right Subplan of the plan
+	 * @param rightCost Total cost of the right subplan
+	 * @return the total cost of the plan
+	 */
+	public default double getTotalCost(Operator plan, Operator left, double leftCost, Operator right,
+			double rightCost) {
+		if (plan == left) {
+			return leftCost;
+		} else if (plan == right) {
+			return rightCost;
+		}
+		double cost = getCost(plan);
+		if (!(plan instanceof Scan)) {
+			for (Operator input : plan.getInputs()) {
+				cost += getTotalCost(input, left, leftCost, right, rightCost);
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * Return the cheapest physical join which implements a logical join.
+	 * @param join Estimated logical join
+	 * @return the cheapest physical join, sharing the output of the join
+	 */
+	public default PhysicalJoin getCheapestJoin(Join join) {
+		PhysicalJoin best = null;
+		double bestCost = 0;
+
+		for (PhysicalJoin candidate : PhysicalJoin.getAlternatives(join.getLeft(), join.getRight(),
+				join.getPredicate())) {
+			candidate.setOutput(join.getOutput());
+			double cost = getCost(candidate);
+			if (best == null || cost < bestCost) {
+				best = candidate;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+}
@@ -0,0 +1,245 @@
+package sjdb;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A join enumerator which finds the cheapest left-deep join order using
+ * Selinger-style dynamic programming. The best plans are memoised for every
+ * subset of the relations, one for each set of interesting properties its
+ * output may have (see InterestingPlans), and the plans for a subset are
+ * built by joining each plan for a smaller subset with one more relation.
+ * The plan returned is the one for all of the relations which is cheapest
+ * once sorted in the order the join graph requires.
+ *
+ * The cost of a plan is the total cost under the cost model of its
+ * physical plan, accumulated from the costs of the plans for its subsets. Cartesian products are only
+ * considered when the predicates do not connect all of the relations, and
+ * then only for subsets which cannot be joined with a predicate.
+ *
+ * Subsets are represented as bitmasks over the list of relations, so the
+ * search is exponential in the number of relations and is intended for
+ * queries of up to around fifteen relations.
+ *
+ * The plan for a set only depends on the plans for its subsets with one
+ * fewer relation, so all of the sets of the same size can be planned
+ * independently. If the enumerator is given a ForkJoinPool, the sets of
+ * each size are split into tasks which are planned in parallel. Each set
+ * is still planned by a single task, which considers the ways of building
+ * it in a fixed order and only replaces a plan with a strictly cheaper
+ * one, so ties are always broken the same way and the parallel search
+ * returns the same plan as the sequential one.
+ *
+ * Each join of two plans is charged to the budget. If the budget runs out,
+ * no more plans are costed, the search is recorded as truncated, and the
+ * best plan found for the whole set of relations is returned, or null if
+ * there is none yet.
+ */
+public class DPJoinEnumerator implements JoinEnumerator {
+
+	/**
+	 * The largest number of relations for which the memo table is built.
+	 */
+	private static final int MAX_RELATIONS = 20;
+
+	/**
+	 * The number of sets planned by a task before it is split in two.
+	 */
+	private static final int TASK_SIZE = 64;
+
+	private Estimator estimator;
+	private CostModel costModel;
+	private ForkJoinPool pool;
+
+	/**
+	 * Create a new enumerator which plans the sets sequentially using the
+	 * default cost model.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 */
+	public DPJoinEnumerator(Estimator estimator) {
+		this(estimator, new DefaultCostModel(), null);
+	}
+
+	/**
+	 * Create a new enumerator which plans the sets of each size in parallel.
+	 * @param estimator Estimator used to estimate the candidate plans; it
+	 *                  must be safe to use from several threads
+	 * @param costModel Cost model used to cost the candidate plans; it must
+	 *                  be safe to use from several threads
+	 * @param pool Pool which the sets are planned on, or null to plan them
+	 *             sequentially
+	 */
+	public DPJoinEnumerator(Estimator estimator, CostModel costModel, ForkJoinPool pool) {
+		this.estimator = estimator;
+		this.costModel = costModel;
+		this.pool = pool;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.JoinEnumerator#enumerate(sjdb.JoinGraph, sjdb.OptimisationBudget)
+	 */
+	public Operator enumerate(JoinGraph graph, OptimisationBudget budget) {
+		int n = graph.size();
+		if (n > MAX_RELATIONS) {
+			throw new IllegalArgumentException("Cannot enumerate joins over " + n + " relations");
+		}
+
+		int subsets = 1 << n;
+		InterestingPlans[] best = new InterestingPlans[subsets];
+
+		for (int i = 0; i < n; i++) {
+			best[1 << i] = InterestingPlans.getRelation(graph, i, this.costModel);
+		}
+
+		/*
+		 * Every proper subset of a set is smaller than the set itself, so
+		 * visiting the sets in order of size guarantees that the best plans
+		 * for the smaller subsets are already known. If the predicates do not
+		 * connect all of the relations, a second pass fills in the sets which
+		 * can only be built with a product. Once the budget is exhausted, the
+		 * sets of each size are given up as soon as they are reached.
+		 */
+		int[][] sizes = getSetsBySize(n);
+		for (int size = 2; size <= n; size++) {
+			extend(graph, budget, sizes[size], best, false);
+		}
+
+		if (best[subsets - 1] == null) {
+			for (int size = 2; size <= n; size++) {
+				extend(graph, budget, sizes[size], best, true);
+			}
+		}
+
+		if (best[subsets - 1] == null) {
+			return null;
+		}
+		return best[subsets - 1].getBest(graph.getOrder(), this.estimator, this.costModel).getLogical();
+	}
+
+	/**
+	 * Return the subsets of n relations grouped by the number of relations
+	 * in them, each group in numeric order.
+	 */
+	private static int[][] getSetsBySize(int n) {
+		int[][] sizes = new int[n + 1][];
+		int[] counts = new int[n + 1];
+		for (int size = 0; size <= n; size++) {
+			sizes[size] = new int[binomial(n, size)];
+		}
+		for (int set = 1; set < 1 << n; set++) {
+			int size = Integer.bitCount(set);
+			sizes[size][counts[size]++] = set;
+		}
+		return sizes;
+	}
+
+	private static int binomial(int n, int k) {
+		long result = 1;
+		for (int i = 1; i <= k; i++) {
+			result = result * (n - k + i) / i;
+		}
+		return (int) result;
+	}
+
+	/**
+	 * Find the best plans for each of the given sets which does not have
+	 * any yet, in parallel if there is a pool.
+	 */
+	private void extend(JoinGraph graph, OptimisationBudget budget, int[] sets, InterestingPlans[] best,
+			boolean products) {
+		if (this.pool == null || sets.length <= TASK_SIZE) {
+			extend(graph, budget, sets, 0, sets.length, best, products);
+		} else {
+			this.pool.invoke(new ExtendTask(graph, budget, sets, 0, sets.length, best, products));
+		}
+	}
+
+	private void extend(JoinGraph graph, OptimisationBudget budget, int[] sets, int from, int to,
+			InterestingPlans[] best, boolean products) {
+		for (int i = from; i < to; i++) {
+			if (best[sets[i]] != null) {
+				continue;
+			}
+			if (budget.isExhausted()) {
+				budget.truncate();
+				return;
+			}
+			extend(graph, budget, sets[i], best, products);
+		}
+	}
+
+	/**
+	 * A task which plans a range of sets of the same size, splitting the
+	 * range between two subtasks if it is large.
+	 */
+	private class ExtendTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private JoinGraph graph;
+		private OptimisationBudget budget;
+		private int[] sets;
+		private int from, to;
+		private InterestingPlans[] best;
+		private boolean products;
+
+		ExtendTask(JoinGraph graph, OptimisationBudget budget, int[] sets, int from, int to,
+				InterestingPlans[] best, boolean products) {
+			this.graph = graph;
+			this.budget = budget;
+			this.sets = sets;
+			this.from = from;
+			this.to = to;
+			this.best = best;
+			this.products = products;
+		}
+
+		protected void compute() {
+			if (this.to - this.from <= TASK_SIZE) {
+				extend(this.graph, this.budget, this.sets, this.from, this.to, this.best, this.products);
+			} else {
+				int middle = (this.from + this.to) >>> 1;
+				invokeAll(new ExtendTask(this.graph, this.budget, this.sets, this.from, middle, this.best,
+						this.products),
+						new ExtendTask(this.graph, this.budget, this.sets, middle, this.to, this.best,
+						this.products));
+			}
+		}
+	}
+
+	/**
+	 * Find the best plans for a set by joining each plan of each subset
+	 * with one fewer relation with the remaining relation.
+	 *
+	 * @param set The set of relations to find plans for
+	 * @param products If true, allow cartesian products where no predicate
+	 *                 connects the subset and the remaining relation
+	 */
+	private void extend(JoinGraph graph, OptimisationBudget budget, int set, InterestingPlans[] best,
+			boolean products) {
+		InterestingPlans plans = new InterestingPlans(graph.getInterestingAttributes());
+		for (int i = 0; i < graph.size(); i++) {
+			int relation = 1 << i;
+			int rest = set & ~relation;
+			if ((set & relation) == 0 || best[rest] == null) {
+				continue;
+			}
+			if (!products && !graph.isConnected(rest, relation)) {
+				continue;
+			}
+			if (budget.isExhausted()) {
+				budget.truncate();
+				break;
+			}
+			for (InterestingPlans.Plan left : best[rest].getPlans()) {
+				for (InterestingPlans.Plan right : best[relation].getPlans()) {
+					if (budget.charge()) {
+						plans.join(graph, left, rest, right, relation, this.estimator, this.costModel);
+					}
+				}
+			}
+		}
+		if (!plans.isEmpty()) {
+			best[set] = plans;
+		}
+	}
+}
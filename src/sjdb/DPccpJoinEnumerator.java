@@ -0,0 +1,234 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A join enumerator which finds the cheapest bushy join tree by dynamic
+ * programming over the connected subgraphs of the join graph (the DPccp
+ * algorithm of Moerkotte and Neumann).
+ *
+ * Rather than trying every split of every subset, only pairs of disjoint
+ * connected subgraphs which are themselves joined by a predicate (csg-cmp
+ * pairs) are enumerated, each exactly once, in an order which guarantees
+ * that the best plans for both halves of a pair are already known. Cross
+ * products between disconnected subsets are therefore never considered;
+ * if the join graph has several connected components, the plans for the
+ * components are combined with products at the end, smallest first.
+ *
+ * As in DPJoinEnumerator, each connected set keeps the cheapest plan for
+ * each set of interesting properties its output may have (see
+ * InterestingPlans), and the cost of a plan is the total cost of its
+ * physical plan under the cost model, accumulated from the costs of its
+ * two halves. The plan returned is the one which is cheapest once sorted
+ * in the order the join graph requires, if the graph is connected. Each
+ * join of two plans is charged to the budget, and once it runs out the
+ * search is recorded as truncated and the plan for the whole join graph is
+ * only returned if one has already been found.
+ */
+public class DPccpJoinEnumerator implements JoinEnumerator {
+
+	private Estimator estimator;
+	private CostModel costModel;
+	private JoinGraph graph;
+	private OptimisationBudget budget;
+	private HashMap<Long, InterestingPlans> best;
+
+	/**
+	 * Create a new enumerator using the default cost model.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 */
+	public DPccpJoinEnumerator(Estimator estimator) {
+		this(estimator, new DefaultCostModel());
+	}
+
+	/**
+	 * Create a new enumerator.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 * @param costModel Cost model used to cost the candidate plans
+	 */
+	public DPccpJoinEnumerator(Estimator estimator, CostModel costModel) {
+		this.estimator = estimator;
+		this.costModel = costModel;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.JoinEnumerator#enumerate(sjdb.JoinGraph, sjdb.OptimisationBudget)
+	 */
+	public Operator enumerate(JoinGraph graph, OptimisationBudget budget) {
+		this.graph = graph;
+		this.budget = budget;
+		this.best = new HashMap<Long, InterestingPlans>();
+
+		for (int i = 0; i < graph.size(); i++) {
+			this.best.put(1L << i, InterestingPlans.getRelation(graph, i, this.costModel));
+		}
+
+		for (int i = graph.size() - 1; i >= 0 && !isExhausted(); i--) {
+			long set = 1L << i;
+			emitCsg(set);
+			enumerateCsgRec(set, prefix(i));
+		}
+
+		/*
+		 * The products which combine several components do not keep the
+		 * order of either input, so the order is only of use if there is a
+		 * single component.
+		 */
+		List<Long> sets = graph.components(graph.all());
+		List<Attribute> order = sets.size() == 1 ? graph.getOrder() : new ArrayList<Attribute>();
+		List<Operator> components = new ArrayList<Operator>();
+		for (long component : sets) {
+			InterestingPlans plans = this.best.get(component);
+			if (plans == null) {
+				components.clear();
+				break;
+			}
+			components.add(plans.getBest(order, this.estimator, this.costModel).getLogical());
+		}
+		this.graph = null;
+		this.budget = null;
+		this.best = null;
+
+		if (components.isEmpty()) {
+			return null;
+		}
+
+		Collections.sort(components, new Comparator<Operator>() {
+			public int compare(Operator a, Operator b) {
+				return Long.compare(a.getOutput().getTupleCount(), b.getOutput().getTupleCount());
+			}
+		});
+
+		Operator output = components.get(0);
+		for (int i = 1; i < components.size(); i++) {
+			output = new Product(output, components.get(i));
+			this.estimator.visit((Product) output);
+		}
+		return output;
+	}
+
+	/**
+	 * Enumerate the connected supersets of a connected set which can be
+	 * built by adding neighbours that are not excluded.
+	 *
+	 * @param set Connected set of relations
+	 * @param excluded Relations which may not be added
+	 */
+	private void enumerateCsgRec(long set, long excluded) {
+		long neighbours = this.graph.neighbours(set) & ~excluded;
+		if (neighbours == 0 || isExhausted()) {
+			return;
+		}
+
+		for (long subset = next(0, neighbours); subset != 0; subset = next(subset, neighbours)) {
+			emitCsg(set | subset);
+		}
+		for (long subset = next(0, neighbours); subset != 0; subset = next(subset, neighbours)) {
+			enumerateCsgRec(set | subset, excluded | neighbours);
+		}
+	}
+
+	/**
+	 * Enumerate the connected complements of a connected set, that is the
+	 * connected sets which are joined to it by a predicate and only contain
+	 * relations after the lowest relation of the set.
+	 *
+	 * @param set Connected set of relations
+	 */
+	private void emitCsg(long set) {
+		long excluded = set | prefix(Long.numberOfTrailingZeros(set));
+		long neighbours = this.graph.neighbours(set) & ~excluded;
+
+		for (int i = 63 - Long.numberOfLeadingZeros(neighbours); i >= 0; i--) {
+			long complement = 1L << i;
+			if ((neighbours & complement) == 0) {
+				continue;
+			}
+			emitCsgCmp(set, complement);
+			enumerateCmpRec(set, complement, excluded | (prefix(i) & neighbours));
+		}
+	}
+
+	/**
+	 * Enumerate the connected supersets of a complement.
+	 *
+	 * @param set Connected set of relations
+	 * @param complement Connected complement of the set
+	 * @param excluded Relations which may not be added to the complement
+	 */
+	private void enumerateCmpRec(long set, long complement, long excluded) {
+		long neighbours = this.graph.neighbours(complement) & ~excluded;
+		if (neighbours == 0 || isExhausted()) {
+			return;
+		}
+
+		for (long subset = next(0, neighbours); subset != 0; subset = next(subset, neighbours)) {
+			emitCsgCmp(set, complement | subset);
+		}
+		for (long subset = next(0, neighbours); subset != 0; subset = next(subset, neighbours)) {
+			enumerateCmpRec(set, complement | subset, excluded | neighbours);
+		}
+	}
+
+	/**
+	 * Consider joining each plan of one half of a csg-cmp pair with each
+	 * plan of the other, and keep each result which is the best plan for
+	 * their union with its interesting properties. The physical joins of
+	 * each pair of plans take their inputs in both orders. If the budget
+	 * ran out before a plan was found for either half, the pair is skipped.
+	 */
+	private void emitCsgCmp(long left, long right) {
+		InterestingPlans leftPlans = this.best.get(left);
+		InterestingPlans rightPlans = this.best.get(right);
+		if (leftPlans == null || rightPlans == null) {
+			return;
+		}
+
+		InterestingPlans plans = this.best.get(left | right);
+		if (plans == null) {
+			plans = new InterestingPlans(this.graph.getInterestingAttributes());
+		}
+		for (InterestingPlans.Plan leftPlan : leftPlans.getPlans()) {
+			for (InterestingPlans.Plan rightPlan : rightPlans.getPlans()) {
+				if (this.budget.charge()) {
+					plans.join(this.graph, leftPlan, left, rightPlan, right, this.estimator, this.costModel);
+				}
+			}
+		}
+		if (!plans.isEmpty()) {
+			this.best.put(left | right, plans);
+		}
+	}
+
+	/**
+	 * Return true if the budget is exhausted, recording that the search was
+	 * truncated, as it is only asked before sets which remain to be
+	 * enumerated.
+	 */
+	private boolean isExhausted() {
+		if (this.budget.isExhausted()) {
+			this.budget.truncate();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the set of the relations numbered 0 to i inclusive.
+	 */
+	private static long prefix(int i) {
+		return i >= 63 ? -1L : (1L << (i + 1)) - 1;
+	}
+
+	/**
+	 * Return the next non-empty subset of a set in increasing numeric
+	 * order, or 0 when every subset has been returned.
+	 */
+	private static long next(long subset, long set) {
+		return (subset - set) & set;
+	}
+}
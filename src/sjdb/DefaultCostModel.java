@@ -0,0 +1,140 @@
+package sjdb;
+
+/**
+ * The default cost model, which counts the pages read and written by each
+ * operator and the tuples it processes, and takes into account the memory
+ * available to it.
+ *
+ * A scan reads every page of its relation. Selects and projects are
+ * pipelined, so they only cost a pass over the tuples of their input, and
+ * a sort is an external merge sort if its input does not fit in memory. A
+ * physical join costs the pages and tuples given by its algorithm, and a
+ * logical join costs as much as the cheapest physical join which can
+ * implement it. A product is a block nested loop join which keeps as much
+ * of its right input in memory as it can and reads it again for each block
+ * of its left input that does not fit.
+ *
+ * The size of a page of each intermediate result is estimated from the
+ * widths of its attributes.
+ */
+public class DefaultCostModel implements CostModel {
+
+	/**
+	 * The cost of reading or writing a page.
+	 */
+	public static final double PAGE_COST = 1.0;
+
+	/**
+	 * The cost of processing a tuple.
+	 */
+	public static final double TUPLE_COST = 0.01;
+
+	/**
+	 * The default number of pages of memory available to each operator.
+	 */
+	public static final long DEFAULT_MEMORY = 1024;
+
+	private int pageSize;
+	private long memory;
+
+	/**
+	 * Create a cost model with the default page size and memory.
+	 */
+	public DefaultCostModel() {
+		this(Catalogue.DEFAULT_PAGE_SIZE, DEFAULT_MEMORY);
+	}
+
+	/**
+	 * Create a cost model with the page size of the catalogue and the
+	 * default memory.
+	 * @param catalogue
+	 */
+	public DefaultCostModel(Catalogue catalogue) {
+		this(catalogue.getPageSize(), DEFAULT_MEMORY);
+	}
+
+	/**
+	 * Create a cost model with the page size of a version of the catalogue
+	 * and the default amount of memory.
+	 * @param catalogue
+	 */
+	public DefaultCostModel(CatalogueSnapshot catalogue) {
+		this(catalogue.getPageSize(), DEFAULT_MEMORY);
+	}
+
+	/**
+	 * Create a cost model.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to each operator
+	 */
+	public DefaultCostModel(int pageSize, long memory) {
+		this.pageSize = pageSize;
+		this.memory = memory;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.CostModel#getCost(sjdb.Operator)
+	 */
+	public double getCost(Operator op) {
+		if (op instanceof Scan) {
+			Relation relation = ((Scan) op).getRelation();
+			return pages(relation) * PAGE_COST + relation.getTupleCount() * TUPLE_COST;
+		} else if (op instanceof Sort) {
+			Relation input = ((Sort) op).getInput().getOutput();
+			return Sort.getPageCount(pages(input), this.memory) * PAGE_COST
+					+ Sort.getTupleCount(input.getTupleCount()) * TUPLE_COST;
+		} else if (op instanceof UnaryOperator) {
+			return ((UnaryOperator) op).getInput().getOutput().getTupleCount() * TUPLE_COST;
+		} else if (op instanceof PhysicalJoin) {
+			return getCost((PhysicalJoin) op);
+		} else if (op instanceof Join) {
+			return getCost(getCheapestJoin((Join) op));
+		}
+
+		Relation left = ((Product) op).getLeft().getOutput();
+		Relation right = ((Product) op).getRight().getOutput();
+		double tuples = (double) left.getTupleCount() * right.getTupleCount();
+		long pages = 0;
+
+		if (pages(right) > this.memory) {
+			long blocks = (pages(left) + this.memory - 1) / this.memory;
+			pages = Cardinality.add(pages(right), Cardinality.multiply(blocks, pages(right)));
+		}
+		return pages * PAGE_COST + tuples * TUPLE_COST;
+	}
+
+	/**
+	 * Return the cost of a physical join. An index nested-loop join does
+	 * not run its right input, but applies its selects and projects to the
+	 * tuples it finds, so the total cost of the right input is taken off
+	 * its own cost, and the total cost of a plan using it is correct.
+	 */
+	private double getCost(PhysicalJoin join) {
+		double cost = join.getPageCount(this.pageSize, this.memory) * PAGE_COST
+				+ join.getTupleCount() * TUPLE_COST;
+		if (join instanceof IndexNestedLoopJoin) {
+			cost -= getTotalCost(join.getRight());
+		}
+		return cost;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.CostModel#getMemory(sjdb.Operator)
+	 */
+	public long getMemory(Operator op) {
+		if (op instanceof PhysicalJoin) {
+			return ((PhysicalJoin) op).getMemory(this.pageSize, this.memory);
+		} else if (op instanceof Join) {
+			return getCheapestJoin((Join) op).getMemory(this.pageSize, this.memory);
+		} else if (op instanceof Product) {
+			return Math.min(this.memory, Math.max(1, pages(((Product) op).getRight().getOutput())));
+		} else if (op instanceof Sort) {
+			return Math.min(this.memory, Math.max(1, pages(((Sort) op).getInput().getOutput())));
+		}
+		return 1;
+	}
+
+	private long pages(Relation relation) {
+		return relation.getPageCount(this.pageSize);
+	}
+}
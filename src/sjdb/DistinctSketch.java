@@ -0,0 +1,208 @@
+package sjdb;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+
+/**
+ * This class is a K-minimum-values sketch of the distinct values of an
+ * attribute. Each value is hashed to a number which is uniform between 0
+ * and 2^63, and the sketch keeps the hashes below a threshold (theta) which
+ * is the k-th smallest hash seen, so that the number of distinct values is
+ * estimated as the number of hashes kept divided by the fraction of the hash
+ * range below theta. If there are fewer than k distinct values, every hash
+ * is kept and the count is exact.
+ *
+ * Sketches are mergeable: the sketch of the union or the intersection of two
+ * sets of values can be computed from the sketches of the sets, which is how
+ * the Estimator follows the values of an attribute through a join. A sketch
+ * describes the values which may appear in a relation; selects may remove
+ * some of them without the sketch knowing which.
+ */
+public class DistinctSketch {
+
+	/**
+	 * The number of hashes kept by a sketch unless another size is given.
+	 */
+	public static final int DEFAULT_SIZE = 1024;
+
+	private static final double HASH_RANGE = Math.pow(2, 63);
+
+	private long theta;
+	private long[] hashes;
+	private int size;
+
+	private DistinctSketch(long theta, long[] hashes, int size) {
+		this.theta = theta;
+		this.hashes = hashes;
+		this.size = size;
+	}
+
+	/**
+	 * Create a sketch from the smallest hashes of a set of values.
+	 * @param hashes The smallest distinct hashes of the values, as returned
+	 *               by hash(); all of them if there are fewer than size
+	 * @param size The number of hashes kept by the sketch
+	 * @return the sketch
+	 */
+	public static DistinctSketch fromHashes(long[] hashes, int size) {
+		long[] sorted = hashes.clone();
+		Arrays.sort(sorted);
+		return create(Long.MAX_VALUE, sorted, size);
+	}
+
+	/**
+	 * Create a sketch of a set of values.
+	 * @param values
+	 * @param size The number of hashes kept by the sketch
+	 * @return the sketch
+	 */
+	public static DistinctSketch of(Collection<String> values, int size) {
+		TreeSet<Long> hashes = new TreeSet<Long>();
+		for (String value : values) {
+			hashes.add(hash(value));
+			if (hashes.size() > size) {
+				hashes.pollLast();
+			}
+		}
+		long[] sorted = new long[hashes.size()];
+		int i = 0;
+		for (long hash : hashes) {
+			sorted[i++] = hash;
+		}
+		return create(Long.MAX_VALUE, sorted, size);
+	}
+
+	/**
+	 * Create a sketch from distinct hashes in ascending order which are all
+	 * below theta, keeping only the smallest if there are too many.
+	 */
+	private static DistinctSketch create(long theta, long[] sorted, int size) {
+		if (sorted.length >= size) {
+			theta = sorted[size - 1];
+			sorted = Arrays.copyOf(sorted, size - 1);
+		}
+		return new DistinctSketch(theta, sorted, size);
+	}
+
+	/**
+	 * Hash a value to a number between 0 and 2^63 - 2.
+	 * @param value
+	 * @return the hash
+	 */
+	public static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return Math.min(h >>> 1, Long.MAX_VALUE - 1);
+	}
+
+	/**
+	 * Return true if the sketch holds the hash of every value, so that its
+	 * estimate is exact
+	 * @return true if the sketch is exact
+	 */
+	public boolean isExact() {
+		return this.theta == Long.MAX_VALUE;
+	}
+
+	/**
+	 * Estimate the number of distinct values
+	 * @return the estimated number of distinct values
+	 */
+	public double estimate() {
+		if (isExact()) {
+			return this.hashes.length;
+		}
+		return this.hashes.length / (this.theta / HASH_RANGE);
+	}
+
+	/**
+	 * Return the sketch of the values in either this sketch or another.
+	 * @param other
+	 * @return the sketch of the union
+	 */
+	public DistinctSketch union(DistinctSketch other) {
+		long theta = Math.min(this.theta, other.theta);
+		long[] merged = new long[this.hashes.length + other.hashes.length];
+		int i = 0, j = 0, n = 0;
+
+		while (i < this.hashes.length || j < other.hashes.length) {
+			long next;
+			if (j == other.hashes.length || (i < this.hashes.length && this.hashes[i] < other.hashes[j])) {
+				next = this.hashes[i++];
+			} else if (i == this.hashes.length || other.hashes[j] < this.hashes[i]) {
+				next = other.hashes[j++];
+			} else {
+				next = this.hashes[i++];
+				j++;
+			}
+			if (next < theta) {
+				merged[n++] = next;
+			}
+		}
+		return create(theta, Arrays.copyOf(merged, n), Math.min(this.size, other.size));
+	}
+
+	/**
+	 * Return the sketch of the values in both this sketch and another.
+	 * @param other
+	 * @return the sketch of the intersection
+	 */
+	public DistinctSketch intersect(DistinctSketch other) {
+		long theta = Math.min(this.theta, other.theta);
+		long[] common = new long[Math.min(this.hashes.length, other.hashes.length)];
+		int i = 0, j = 0, n = 0;
+
+		while (i < this.hashes.length && j < other.hashes.length) {
+			if (this.hashes[i] < other.hashes[j]) {
+				i++;
+			} else if (other.hashes[j] < this.hashes[i]) {
+				j++;
+			} else {
+				if (this.hashes[i] < theta) {
+					common[n++] = this.hashes[i];
+				}
+				i++;
+				j++;
+			}
+		}
+		return new DistinctSketch(theta, Arrays.copyOf(common, n), Math.min(this.size, other.size));
+	}
+
+	/**
+	 * Return the smallest hashes of the values, in ascending order, from
+	 * which fromHashes() recreates the sketch.
+	 * @return the hashes
+	 */
+	public long[] getHashes() {
+		if (isExact()) {
+			return this.hashes.clone();
+		}
+		long[] all = Arrays.copyOf(this.hashes, this.hashes.length + 1);
+		all[this.hashes.length] = this.theta;
+		return all;
+	}
+
+	/**
+	 * Return the number of hashes kept by the sketch when it is full
+	 * @return the size of the sketch
+	 */
+	public int getSize() {
+		return this.size;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "~" + Math.round(estimate());
+	}
+}
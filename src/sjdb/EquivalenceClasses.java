@@ -0,0 +1,152 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class partitions attributes into classes of attributes which are
+ * known to be equal, using predicates of the form attr=attr. Two attributes
+ * are in the same class if a chain of predicates connects them, so a=b and
+ * b=c put a, b and c in one class and together imply a=c.
+ *
+ * The classes are kept as a union-find forest, and are returned in the
+ * order their attributes were first added so that anything derived from
+ * them is deterministic.
+ */
+public class EquivalenceClasses {
+	private Map<Attribute, Attribute> parents;
+
+	/**
+	 * Create an empty set of classes, in which each attribute is only
+	 * equal to itself.
+	 */
+	public EquivalenceClasses() {
+		this.parents = new LinkedHashMap<Attribute, Attribute>();
+	}
+
+	/**
+	 * Create the classes of attributes made equal by a list of predicates.
+	 * Predicates of the form attr=value are ignored.
+	 * @param predicates
+	 */
+	public EquivalenceClasses(Collection<Predicate> predicates) {
+		this();
+		for (Predicate p : predicates) {
+			add(p);
+		}
+	}
+
+	/**
+	 * Add a predicate, merging the classes of its attributes if it is of
+	 * the form attr=attr.
+	 * @param p
+	 * @return true if the predicate was not already implied by those added
+	 *         before it
+	 */
+	public boolean add(Predicate p) {
+		if (p.equalsValue()) {
+			return false;
+		}
+		return union(p.getLeftAttribute(), p.getRightAttribute());
+	}
+
+	/**
+	 * Merge the classes of two attributes.
+	 * @param left
+	 * @param right
+	 * @return true if the attributes were in different classes
+	 */
+	public boolean union(Attribute left, Attribute right) {
+		Attribute leftRoot = find(left);
+		Attribute rightRoot = find(right);
+		if (leftRoot.equals(rightRoot)) {
+			return false;
+		}
+		this.parents.put(rightRoot, leftRoot);
+		return true;
+	}
+
+	/**
+	 * Return true if two attributes are known to be equal
+	 * @param left
+	 * @param right
+	 * @return true if the attributes are in the same class
+	 */
+	public boolean isEquivalent(Attribute left, Attribute right) {
+		return find(left).equals(find(right));
+	}
+
+	/**
+	 * Return the attributes known to be equal to an attribute, including
+	 * the attribute itself.
+	 * @param attr
+	 * @return the attributes in the class of the attribute
+	 */
+	public Set<Attribute> getEquivalents(Attribute attr) {
+		Attribute root = find(attr);
+		Set<Attribute> equivalents = new LinkedHashSet<Attribute>();
+		equivalents.add(attr);
+		for (Attribute other : this.parents.keySet()) {
+			if (find(other).equals(root)) {
+				equivalents.add(other);
+			}
+		}
+		return equivalents;
+	}
+
+	/**
+	 * Return every class containing more than one attribute
+	 * @return the classes, in the order their first attribute was added
+	 */
+	public List<Set<Attribute>> getClasses() {
+		Map<Attribute, Set<Attribute>> classes = new LinkedHashMap<Attribute, Set<Attribute>>();
+		for (Attribute attr : this.parents.keySet()) {
+			Attribute root = find(attr);
+			Set<Attribute> members = classes.get(root);
+			if (members == null) {
+				members = new LinkedHashSet<Attribute>();
+				classes.put(root, members);
+			}
+			members.add(attr);
+		}
+
+		List<Set<Attribute>> result = new ArrayList<Set<Attribute>>();
+		for (Set<Attribute> members : classes.values()) {
+			if (members.size() > 1) {
+				result.add(Collections.unmodifiableSet(members));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the attribute which represents the class of an attribute,
+	 * adding the attribute in a class of its own if it is not known yet.
+	 */
+	private Attribute find(Attribute attr) {
+		Attribute parent = this.parents.get(attr);
+		if (parent == null) {
+			this.parents.put(attr, attr);
+			return attr;
+		}
+		if (parent.equals(attr)) {
+			return attr;
+		}
+		Attribute root = find(parent);
+		this.parents.put(attr, root);
+		return root;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return getClasses().toString();
+	}
+}
@@ -1,17 +1,176 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * This class estimates the cost of a given query plan.
+ * This class estimates the cost of a given query plan. Along with the
+ * statistics of the output of each operator, it works out the physical 
+ * properties of the output: the order and partitioning of a scan are
+ * those the relation is stored with, selects keep those of their input,
+ * projects keep those on the attributes they do not remove, and a sort or
+ * a physical join gives its output the properties of its algorithm,
+ * which may depend on the page size and memory the estimator is given, as
+ * the properties of a hash join depend on whether it partitions its inputs.
+ *
+ * Attributes with a DistinctSketch keep it through every operator. Their
+ * number of distinct values is re-estimated whenever an operator keeps only
+ * some of the tuples of its input, and the sketches of the attributes of a
+ * join are intersected to estimate how many values they share.
+ *
+ * The output of every subplan is cached by its PlanSignature, and shared
+ * by every operator with the same signature, so that estimating a subplan
+ * again (as the optimisers do for the candidate plans they build from the
+ * same parts) finds the output rather than copying its attributes again.
+ * The output of an operator is only cached if the outputs of its inputs
+ * are the cached outputs of their signatures, and the cache is cleared when
+ * it holds more than its capacity.
  *
  * @author Sirasath Piyapootinun
  */
 
 public class Estimator implements PlanVisitor {
 
+	/**
+	 * The fraction of the tuples assumed to satisfy a predicate of the form
+	 * attr<value when the range of the attribute is not known.
+	 */
+	public static final double DEFAULT_RANGE_SELECTIVITY = 1.0 / 3;
+
+	/**
+	 * The fraction of the tuples assumed to satisfy a predicate of the form
+	 * attr BETWEEN value AND value when the range of the attribute is not
+	 * known.
+	 */
+	public static final double DEFAULT_BETWEEN_SELECTIVITY = 1.0 / 4;
+
+	/**
+	 * The default number of subplans whose outputs are cached.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+	private ConcurrentHashMap<PlanSignature, Relation> estimates;
+	private int capacity;
+	private int pageSize;
+	private long memory;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
 	public Estimator() {
-		// empty constructor
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Create an estimator which caches the outputs of a number of subplans.
+	 * @param capacity Number of outputs cached, or 0 to cache none
+	 */
+	public Estimator(int capacity) {
+		this(Catalogue.DEFAULT_PAGE_SIZE, DefaultCostModel.DEFAULT_MEMORY, capacity);
+	}
+
+	/**
+	 * Create an estimator for a given page size and memory, which caches
+	 * the outputs of the default number of subplans.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to each operator
+	 */
+	public Estimator(int pageSize, long memory) {
+		this(pageSize, memory, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Create an estimator for a given page size and memory, which caches
+	 * the outputs of a number of subplans.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to each operator
+	 * @param capacity Number of outputs cached, or 0 to cache none
+	 */
+	public Estimator(int pageSize, long memory, int capacity) {
+		this.estimates = new ConcurrentHashMap<PlanSignature, Relation>();
+		this.capacity = capacity;
+		this.pageSize = pageSize;
+		this.memory = memory;
+	}
+
+	/**
+	 * Return the number of operators whose output was found in the cache
+	 * @return the number of hits
+	 */
+	public long getCacheHits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Return the number of operators whose output was estimated
+	 * @return the number of misses
+	 */
+	public long getCacheMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * Return the signature of an operator, or null if the output of one of
+	 * its inputs is not the cached output of the signature of the input.
+	 */
+	private PlanSignature getSignature(Operator op) {
+		if (this.capacity <= 0) {
+			return null;
+		}
+		for (Operator input : op.getInputs()) {
+			Relation output = input.getOutput();
+			if (output == null || output.getSignature() == null || !output.getSignature().equals(input.getSignature())) {
+				return null;
+			}
+		}
+		return op.getSignature();
+	}
+
+	/**
+	 * Set the output of an operator to the cached output of its signature,
+	 * if there is one.
+	 * @return true if the operator already has an output, which never
+	 *         changes, or the output was cached
+	 */
+	private boolean reuse(Operator op, PlanSignature signature) {
+		if (op.getOutput() != null) {
+			return true;
+		}
+		if (signature == null) {
+			return false;
+		}
+		Relation output = this.estimates.get(signature);
+		if (output == null) {
+			this.misses.incrementAndGet();
+			return false;
+		}
+		this.hits.incrementAndGet();
+		op.setOutput(output);
+		return true;
+	}
+
+	/**
+	 * Set the output of an operator, and cache it by the signature of the
+	 * operator unless another thread has just cached one.
+	 */
+	private void publish(Operator op, PlanSignature signature, Relation output) {
+		if (signature != null) {
+			if (this.estimates.size() >= this.capacity) {
+				this.estimates.clear();
+			}
+			output.share(signature);
+			Relation cached = this.estimates.putIfAbsent(signature, output);
+			if (cached != null) {
+				output = cached;
+			}
+		}
+		op.setOutput(output);
 	}
 
 	/*
@@ -21,14 +180,22 @@ public class Estimator implements PlanVisitor {
 	 */
 	public void visit(Scan op) {
 		Relation input = op.getRelation();
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
 		Relation output = new Relation(input.getTupleCount());
 
 		Iterator<Attribute> iter = input.getAttributes().iterator();
 		while (iter.hasNext()) {
-			output.addAttribute(new Attribute(iter.next()));
+			output.addAttribute(iter.next());
 		}
 
-		op.setOutput(output);
+		Attribute sortOrder = ((NamedRelation) input).getSortOrder();
+		if (sortOrder != null) {
+			output.setProperties(PhysicalProperties.sorted(Collections.singleton(sortOrder)));
+		}
+		publish(op, signature, output);
 	}
 
 	/**
@@ -36,6 +203,10 @@ public class Estimator implements PlanVisitor {
 	 * @param op Project operator to be visited
 	 */
 	public void visit(Project op) {
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
 		Relation input = op.getInput().getOutput();
 		Relation output = new Relation(input.getTupleCount());
 
@@ -48,7 +219,8 @@ public class Estimator implements PlanVisitor {
 			}
 
 		}
-		op.setOutput(output);
+		output.setProperties(input.getProperties().restrict(new HashSet<Attribute>(output.getAttributes())));
+		publish(op, signature, output);
 	}
 
 	/**
@@ -56,36 +228,366 @@ public class Estimator implements PlanVisitor {
 	 * @param op Select operator to be visited
 	 */
 	public void visit(Select op) {
-		Relation input = op.getInput().getOutput();
 		Predicate p = op.getPredicate();
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
+		Relation input = op.getInput().getOutput();
 		Attribute left = input.getAttribute(p.getLeftAttribute());
 
 		Relation output;
 
-		if (p.equalsValue()) {
-			output = new Relation(input.getTupleCount() / left.getValueCount());
+		if (p.equalsValue() && p.isEquality()) {
+			double groupTupleCount = getGroupTupleCount(op);
+			if (!Double.isNaN(groupTupleCount)) {
+				output = new Relation(Cardinality.ceil(groupTupleCount));
+			} else if (left.getHistogram() == null) {
+				output = new Relation(input.getTupleCount() / Math.max(1, left.getValueCount()));
+			} else {
+				output = new Relation(Cardinality.ceil(input.getTupleCount() * getSelectivity(left, p)));
+			}
+
+			for (Attribute attr : input.getAttributes()) {
+				if (attr.equals(left)) {
+					double value = parseValue(p.getRightValue());
+					attr = Double.isNaN(value) ? new Attribute(attr, 1) : new Attribute(attr, 1, value, value);
+					if (attr.getSketch() != null) {
+						attr = new Attribute(attr, 1, DistinctSketch.of(p.getValues(), attr.getSketch().getSize()));
+					}
+					output.addAttribute(attr);
+				} else {
+					output.addAttribute(shrink(attr, input.getTupleCount(), output.getTupleCount()));
+				}
+			}
+			output.setProperties(input.getProperties());
+		} else if (p.equalsValue()) {
+			double selectivity = getSelectivity(left, p);
+			output = new Relation(Cardinality.ceil(input.getTupleCount() * selectivity));
 
 			for (Attribute attr : input.getAttributes()) {
 				if (attr.equals(left)) {
-					output.addAttribute(new Attribute(attr.getName(), 1));
+					output.addAttribute(restrict(attr, p, selectivity));
 				} else {
-					output.addAttribute(new Attribute(attr));
+					output.addAttribute(shrink(attr, input.getTupleCount(), output.getTupleCount()));
 				}
 			}
+			output.setProperties(input.getProperties());
 		} else {
 			Attribute right = input.getAttribute(p.getRightAttribute());
+			long valueCount = getSharedValueCount(left, right);
 			
-			output = new Relation(input.getTupleCount() / Math.max(left.getValueCount(), right.getValueCount()));
+			if (left.getSketch() == null || right.getSketch() == null) {
+				output = new Relation(input.getTupleCount() / Math.max(1, Math.max(left.getValueCount(), right.getValueCount())));
+			} else {
+				output = new Relation(Cardinality.ceil((double) input.getTupleCount() * valueCount 
+						/ Math.max(1, left.getValueCount()) / Math.max(1, right.getValueCount())));
+			}
 			
 			for (Attribute attr : input.getAttributes()) {
 				if (attr.equals(left) || attr.equals(right)) {
-					output.addAttribute(new Attribute(attr.getName(), Math.min(left.getValueCount(), right.getValueCount())));
+					output.addAttribute(new Attribute(attr, valueCount, getSharedSketch(left, right)));
 				} else {
-					output.addAttribute(new Attribute(attr));
+					output.addAttribute(shrink(attr, input.getTupleCount(), output.getTupleCount()));
 				}
 			}
+			output.setProperties(input.getProperties().equate(left, right));
+		}
+		publish(op, signature, output);
+	}
+
+	/**
+	 * Estimate the fraction of the tuples of a relation which satisfy a
+	 * predicate which compares an attribute with values. If the attribute
+	 * has a histogram, an equality with one of its most common values 
+	 * selects the fraction of the tuples recorded for the value, and any
+	 * other value an equal share of the rest; a range selects the tuples in
+	 * the part of the histogram it covers. Otherwise values are assumed to 
+	 * be spread uniformly, so an equality selects one of the distinct 
+	 * values of the attribute and a range selects the fraction of the range 
+	 * of the attribute it covers. If the range of the attribute or the
+	 * value is not numeric, a range is assumed to select a fixed fraction
+	 * of the tuples. If the histogram has most common values but no buckets,
+	 * the most common values in a range are counted, and only the other
+	 * tuples are assumed to be spread uniformly.
+	 * @param attr Attribute of the relation, with its statistics
+	 * @param p Predicate of the form attr OP value
+	 * @return the selectivity of the predicate
+	 */
+	public double getSelectivity(Attribute attr, Predicate p) {
+		double equal = 1.0 / Math.max(1, attr.getValueCount());
+		List<String> values = p.getValues();
+
+		switch (p.getComparison()) {
+			case EQ:
+				return getSelectivity(attr, values.get(0));
+			case NE:
+				return 1.0 - getSelectivity(attr, values.get(0));
+			case IN:
+				double selectivity = 0;
+				for (String value : values) {
+					selectivity += getSelectivity(attr, value);
+				}
+				return Math.min(1.0, selectivity);
+			case BETWEEN:
+				return getRangeSelectivity(attr, parseValue(values.get(0)), parseValue(values.get(1)), equal, 
+						DEFAULT_BETWEEN_SELECTIVITY);
+			case LT:
+				return getRangeSelectivity(attr, Double.NEGATIVE_INFINITY, parseValue(values.get(0)), 0, 
+						DEFAULT_RANGE_SELECTIVITY);
+			case LE:
+				return getRangeSelectivity(attr, Double.NEGATIVE_INFINITY, parseValue(values.get(0)), equal, 
+						DEFAULT_RANGE_SELECTIVITY);
+			case GT:
+				return getRangeSelectivity(attr, parseValue(values.get(0)), Double.POSITIVE_INFINITY, 0, 
+						DEFAULT_RANGE_SELECTIVITY);
+			default:
+				return getRangeSelectivity(attr, parseValue(values.get(0)), Double.POSITIVE_INFINITY, equal, 
+						DEFAULT_RANGE_SELECTIVITY);
+		}
+	}
+
+	/**
+	 * Estimate the number of tuples produced by a select of the form
+	 * attr=value over a chain of selects over a scan, using a column group
+	 * of the scanned relation which contains its attribute and an attribute
+	 * selected below it by an equality. The whole chain is estimated from
+	 * the tuples of the scanned relation: the selects on the attributes of
+	 * the group select their joint fraction of the tuples, and each other
+	 * select its own fraction, as if it were independent of the rest, unless
+	 * it compares an attribute which the group already fixes to a value.
+	 * @param op Select operator of the form attr=value
+	 * @return the number of tuples, or NaN if no column group applies
+	 */
+	private double getGroupTupleCount(Select op) {
+		List<Predicate> below = new ArrayList<Predicate>();
+		Operator input = op.getInput();
+		while (input instanceof Select) {
+			below.add(((Select) input).getPredicate());
+			input = ((Select) input).getInput();
+		}
+		if (!(input instanceof Scan)) {
+			return Double.NaN;
+		}
+
+		NamedRelation relation = (NamedRelation) ((Scan) input).getRelation();
+		Predicate p = op.getPredicate();
+		for (ColumnGroup group : relation.getColumnGroups()) {
+			if (!group.contains(p.getLeftAttribute())) {
+				continue;
+			}
+			Map<String, String> selected = new LinkedHashMap<String, String>();
+			List<Predicate> others = new ArrayList<Predicate>();
+			for (Predicate other : below) {
+				if (other.equalsValue() && other.isEquality() && group.contains(other.getLeftAttribute())
+						&& !other.getLeftAttribute().equals(p.getLeftAttribute())) {
+					selected.put(other.getLeftAttribute().getName(), other.getRightValue());
+				} else {
+					others.add(other);
+				}
+			}
+			if (selected.isEmpty()) {
+				continue;
+			}
+			selected.put(p.getLeftAttribute().getName(), p.getRightValue());
+
+			double selectivity = getJointSelectivity(relation, group, selected);
+			for (Predicate other : others) {
+				Attribute left = relation.getAttribute(other.getLeftAttribute());
+				String value = selected.get(left.getName());
+				if (other.equalsValue() && value != null) {
+					// the attribute already has a single value
+					selectivity *= other.matches(value) ? 1.0 : 0.0;
+				} else if (other.equalsValue()) {
+					selectivity *= getSelectivity(left, other);
+				} else {
+					Attribute right = relation.getAttribute(other.getRightAttribute());
+					selectivity /= Math.max(1, Math.max(left.getValueCount(), right.getValueCount()));
+				}
+			}
+			return relation.getTupleCount() * selectivity;
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Estimate the fraction of the tuples of a relation in which some of
+	 * the attributes of a column group have the given values. If all of the
+	 * attributes are given, and their values are one of the most common
+	 * combinations, its recorded fraction is used. Otherwise the fraction is
+	 * at least that of one of the distinct combinations of the group, and
+	 * otherwise as if the attributes were independent.
+	 * @param relation
+	 * @param group
+	 * @param selected The value of each selected attribute, by name
+	 * @return the selectivity
+	 */
+	private double getJointSelectivity(NamedRelation relation, ColumnGroup group, Map<String, String> selected) {
+		double selectivity = 1.0;
+		for (Map.Entry<String, String> entry : selected.entrySet()) {
+			selectivity *= getSelectivity(relation.getAttribute(new Attribute(entry.getKey())), entry.getValue());
+		}
+		if (selected.size() < 2) {
+			return selectivity;
+		}
+
+		if (selected.size() == group.getAttributes().size()) {
+			List<String> values = new ArrayList<String>();
+			for (String name : group.getAttributes()) {
+				values.add(selected.get(name));
+			}
+			double frequency = group.getFrequency(values);
+			if (!Double.isNaN(frequency)) {
+				return frequency;
+			}
+		}
+		return Math.max(selectivity, 1.0 / Math.max(1, group.getValueCount()));
+	}
+
+	/**
+	 * Estimate the fraction of the tuples in which an attribute has the
+	 * given value.
+	 * @param attr Attribute with its statistics
+	 * @param value
+	 * @return the selectivity of the value
+	 */
+	private double getSelectivity(Attribute attr, String value) {
+		Histogram histogram = attr.getHistogram();
+		if (histogram == null) {
+			return 1.0 / Math.max(1, attr.getValueCount());
+		}
+		double frequency = histogram.getFrequency(value);
+		if (!Double.isNaN(frequency)) {
+			return frequency;
+		}
+		long others = attr.getValueCount() - histogram.getMostCommonValues().size();
+		return (1.0 - histogram.getMostCommonFraction()) / Math.max(1, others);
+	}
+
+	/**
+	 * Estimate the fraction of the values of an attribute between two
+	 * bounds.
+	 * @param attr Attribute with its statistics
+	 * @param low Lower bound, which may be infinite
+	 * @param high Upper bound, which may be infinite
+	 * @param equal The selectivity of the bounds themselves
+	 * @param otherwise The selectivity assumed without a numeric range
+	 * @return the selectivity of the range
+	 */
+	private double getRangeSelectivity(Attribute attr, double low, double high, double equal, double otherwise) {
+		if (Double.isNaN(low) || Double.isNaN(high)) {
+			return otherwise;
+		}
+		Histogram histogram = attr.getHistogram();
+		if (histogram != null && histogram.getBucketCount() > 0) {
+			return histogram.getRangeFraction(low, high);
+		}
+		double selectivity = getUniformRangeSelectivity(attr, low, high, equal, otherwise);
+		if (histogram == null) {
+			return selectivity;
+		}
+		// only the values which are not among the most common are spread
+		// uniformly over the range of the attribute
+		return Math.min(1.0, histogram.getMostCommonFraction(low, high)
+				+ (1.0 - histogram.getMostCommonFraction()) * selectivity);
+	}
+
+	/**
+	 * Estimate the fraction of the values of an attribute between two
+	 * bounds, as if they were spread uniformly over its range.
+	 */
+	private double getUniformRangeSelectivity(Attribute attr, double low, double high, double equal,
+			double otherwise) {
+		if (!attr.hasRange()) {
+			return otherwise;
+		}
+		low = Math.max(low, attr.getMin());
+		high = Math.min(high, attr.getMax());
+		if (high < low) {
+			return 0.0;
+		}
+		if (attr.getMax() <= attr.getMin()) {
+			return 1.0;
+		}
+		return Math.min(1.0, (high - low) / (attr.getMax() - attr.getMin()) + equal);
+	}
+
+	/**
+	 * Return the statistics of an attribute once a predicate which compares
+	 * it with values has been applied: an inequality removes one value, an
+	 * IN list keeps only its values, and otherwise the number of distinct 
+	 * values shrinks with the selectivity of the predicate, and a range 
+	 * narrows the range of the attribute. A histogram of the attribute is 
+	 * restricted to the values which remain, so that it can be used by the 
+	 * selects above.
+	 */
+	private Attribute restrict(Attribute attr, Predicate p, double selectivity) {
+		List<String> values = p.getValues();
+		long valueCount = Cardinality.ceil(attr.getValueCount() * selectivity);
+		double min = attr.getMin();
+		double max = attr.getMax();
+		Histogram histogram = attr.getHistogram();
+
+		switch (p.getComparison()) {
+			case NE:
+				valueCount = Math.min(attr.getValueCount(), Math.max(1, attr.getValueCount() - 1));
+				if (histogram != null) {
+					histogram = histogram.without(values.get(0), 1.0 - selectivity);
+				}
+				break;
+			case IN:
+				valueCount = Math.min(attr.getValueCount(), values.size());
+				if (histogram != null) {
+					Map<String, Double> mostCommon = new LinkedHashMap<String, Double>();
+					for (String value : values) {
+						mostCommon.put(value, selectivity > 0 ? getSelectivity(attr, value) / selectivity : 0);
+					}
+					histogram = new Histogram(new double[0], mostCommon);
+				}
+				break;
+			case BETWEEN:
+				min = Math.max(min, parseValue(values.get(0)));
+				max = Math.min(max, parseValue(values.get(1)));
+				histogram = range(histogram, parseValue(values.get(0)), parseValue(values.get(1)), selectivity);
+				break;
+			case LT:
+			case LE:
+				max = Math.min(max, parseValue(values.get(0)));
+				histogram = range(histogram, Double.NEGATIVE_INFINITY, parseValue(values.get(0)), selectivity);
+				break;
+			case GT:
+			case GE:
+				min = Math.max(min, parseValue(values.get(0)));
+				histogram = range(histogram, parseValue(values.get(0)), Double.POSITIVE_INFINITY, selectivity);
+				break;
+			default:
+				break;
+		}
+		return new Attribute(attr, valueCount, min, max, histogram);
+	}
+
+	/**
+	 * Restrict a histogram to a range, unless there is no histogram or the
+	 * range is not numeric, in which case it is no longer known how the
+	 * values are distributed.
+	 */
+	private static Histogram range(Histogram histogram, double low, double high, double selectivity) {
+		if (histogram == null || Double.isNaN(low) || Double.isNaN(high)) {
+			return null;
+		}
+		return histogram.range(low, high, selectivity);
+	}
+
+	/**
+	 * Return the numeric value of a value in a predicate, or NaN if it is
+	 * not a number.
+	 */
+	private static double parseValue(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
 		}
-		op.setOutput(output);
 	}
 
 	/**
@@ -93,10 +595,14 @@ public class Estimator implements PlanVisitor {
 	 * @param op Product operator to be visited
 	 */
 	public void visit(Product op) {
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
 		Relation leftInput = op.getLeft().getOutput();
 		Relation rightInput = op.getRight().getOutput();
 		
-		Relation output = new Relation(leftInput.getTupleCount() * rightInput.getTupleCount());
+		Relation output = new Relation(Cardinality.multiply(leftInput.getTupleCount(), rightInput.getTupleCount()));
 		
 		for (Attribute attr : leftInput.getAttributes()) {
 			output.addAttribute(new Attribute(attr));
@@ -105,7 +611,7 @@ public class Estimator implements PlanVisitor {
 		for (Attribute attr : rightInput.getAttributes()) {
 			output.addAttribute(new Attribute(attr));
 		}
-		op.setOutput(output);
+		publish(op, signature, output);
 	}
 
 	/**
@@ -113,34 +619,132 @@ public class Estimator implements PlanVisitor {
 	 * @param op Join operator to be visited
 	 */
 	public void visit(Join op) {
+		Predicate p = op.getPredicate();
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
 		Relation leftInput = op.getLeft().getOutput();
 		Relation rightInput = op.getRight().getOutput();
 		
-		Predicate p = op.getPredicate();
 		Attribute left = leftInput.getAttribute(p.getLeftAttribute());
 		Attribute right = rightInput.getAttribute(p.getRightAttribute());
 		
-		int tupleCount = (leftInput.getTupleCount() * rightInput.getTupleCount()) / Math.max(left.getValueCount(), right.getValueCount());
-		int valueCount = Math.min(left.getValueCount(), right.getValueCount());
+		long tupleCount = Cardinality.multiplyDivide(leftInput.getTupleCount(), rightInput.getTupleCount(),
+				Math.max(left.getValueCount(), right.getValueCount()));
+		long valueCount = getSharedValueCount(left, right);
+		DistinctSketch sketch = getSharedSketch(left, right);
+		
+		if (left.getSketch() != null && right.getSketch() != null) {
+			tupleCount = Cardinality.ceil((double) leftInput.getTupleCount() * rightInput.getTupleCount() * valueCount
+					/ Math.max(1, left.getValueCount()) / Math.max(1, right.getValueCount()));
+		}
 		
 		Relation output = new Relation(tupleCount);
 		
+		/**
+		 * Only the tuples of each input whose join value is shared survive, so
+		 * the other attributes of the input may lose values.
+		 */
+		long leftTuples = Cardinality.ceil((double) leftInput.getTupleCount() * valueCount / Math.max(1, left.getValueCount()));
 		for (Attribute attr : leftInput.getAttributes()) {
 			if (attr.equals(left)) {
-				output.addAttribute(new Attribute(attr.getName(), valueCount));
+				output.addAttribute(new Attribute(attr, valueCount, sketch));
 			} else {
-				output.addAttribute(new Attribute(attr));
+				output.addAttribute(shrink(attr, leftInput.getTupleCount(), leftTuples));
 			}
 		}
 		
+		long rightTuples = Cardinality.ceil((double) rightInput.getTupleCount() * valueCount / Math.max(1, right.getValueCount()));
 		for (Attribute attr : rightInput.getAttributes()) {
 			if (attr.equals(right)) {
-				output.addAttribute(new Attribute(attr.getName(), valueCount));
+				output.addAttribute(new Attribute(attr, valueCount, sketch));
 			} else {
-				output.addAttribute(new Attribute(attr));
+				output.addAttribute(shrink(attr, rightInput.getTupleCount(), rightTuples));
 			}
 		}
 		
-		op.setOutput(output);
+		if (op instanceof PhysicalJoin) {
+			output.setProperties(((PhysicalJoin) op).getProperties(this.pageSize, this.memory));
+		}
+		publish(op, signature, output);
+	}
+
+	/**
+	 * Estimate the number of distinct values shared by the two attributes of
+	 * an equality. Without sketches of both, the values of the attribute
+	 * with fewer are assumed to be among those of the other. Otherwise the
+	 * sketches are intersected, and the result scaled down by the fraction of
+	 * the values in each sketch which the attribute still has.
+	 */
+	private long getSharedValueCount(Attribute left, Attribute right) {
+		long valueCount = Math.min(left.getValueCount(), right.getValueCount());
+		if (left.getSketch() == null || right.getSketch() == null) {
+			return valueCount;
+		}
+		double shared = getSharedSketch(left, right).estimate()
+				* Math.min(1.0, left.getValueCount() / Math.max(1.0, left.getSketch().estimate()))
+				* Math.min(1.0, right.getValueCount() / Math.max(1.0, right.getSketch().estimate()));
+		return Math.min(valueCount, Cardinality.ceil(shared));
+	}
+
+	/**
+	 * Return the sketch of the values the two attributes of an equality may
+	 * share, or whichever sketch there is if only one of them has one.
+	 */
+	private DistinctSketch getSharedSketch(Attribute left, Attribute right) {
+		if (left.getSketch() == null) {
+			return right.getSketch();
+		} else if (right.getSketch() == null) {
+			return left.getSketch();
+		}
+		return left.getSketch().intersect(right.getSketch());
+	}
+
+	/**
+	 * Copy an attribute of an input of an operator which only keeps some of
+	 * the tuples of the input. If the attribute has a sketch, its number of
+	 * distinct values is estimated as the number expected to remain when 
+	 * that many tuples are picked at random; otherwise it is unchanged. Its
+	 * histogram is kept, as tuples picked at random take its values in the
+	 * same proportions.
+	 * @param attr Attribute of the input
+	 * @param tuples Number of tuples in the input
+	 * @param kept Number of tuples of the input which are kept
+	 * @return the attribute of the output
+	 */
+	private Attribute shrink(Attribute attr, long tuples, long kept) {
+		if (attr.getSketch() == null || attr.getValueCount() == 0 || kept >= tuples) {
+			return new Attribute(attr);
+		}
+		double fraction = (double) kept / Math.max(1, tuples);
+		double perValue = (double) tuples / attr.getValueCount();
+		double values = attr.getValueCount() * (1 - Math.pow(1 - fraction, perValue));
+		return new Attribute(attr, Cardinality.ceil(values), attr.getMin(), attr.getMax(), attr.getHistogram());
+	}
+
+	/**
+	 * Create output relation on Sort operator.
+	 * @param op Sort operator to be visited
+	 */
+	public void visit(Sort op) {
+		PlanSignature signature = getSignature(op);
+		if (reuse(op, signature)) {
+			return;
+		}
+		Relation input = op.getInput().getOutput();
+		Relation output = new Relation(input.getTupleCount());
+
+		for (Attribute attr : op.getAttributes()) {
+			if (input.indexOf(attr) < 0) {
+				throw new IllegalArgumentException("Cannot sort on " + attr + ", which is not in "
+						+ input.getAttributes());
+			}
+		}
+		for (Attribute attr : input.getAttributes()) {
+			output.addAttribute(new Attribute(attr));
+		}
+		output.setProperties(PhysicalProperties.sorted(op.getAttributes()));
+		publish(op, signature, output);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,663 @@
+package sjdb;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes query plans over the tuples of the named relations.
+ * It visits a plan to build a tree of iterators, one for each operator,
+ * which produce the tuples of the operator one at a time when asked for
+ * them by the iterator above.
+ *
+ * The tuples of each named relation are read from a data file in the
+ * directory of the catalogue, named after the relation with the suffix
+ * .csv, which holds one tuple on each line with its values in the order of
+ * the attributes of the relation, separated by commas. Blank lines are
+ * skipped. A relation whose catalogue entry gives a sort order must be
+ * stored in that order.
+ *
+ * A nested-loop join or a product reads the whole of its right input into
+ * memory and loops over it for each tuple of its left input; a sort-merge
+ * join reads and sorts both of its inputs; an index nested-loop join looks
+ * up each tuple of its left input in a hash table of the relation scanned
+ * by its right input, which stands in for the index, and applies the
+ * selects and projects of its right input to the tuples it finds; and any
+ * other join, including a join whose algorithm has not been chosen, builds
+ * a hash table of its right input and probes it with its left.
+ */
+public class Executor implements PlanVisitor, PlanExecutor {
+
+	/**
+	 * The suffix of the name of the data file of a relation.
+	 */
+	public static final String DATA_SUFFIX = ".csv";
+
+	private File directory;
+	private Deque<TupleIterator> iterators;
+
+	/**
+	 * Create an executor which reads relations from the data files in a
+	 * directory.
+	 * @param directory
+	 */
+	public Executor(String directory) {
+		this.directory = new File(directory);
+		this.iterators = new ArrayDeque<TupleIterator>();
+	}
+
+	/**
+	 * Return the data file of a named relation.
+	 * @param relation
+	 * @return the file
+	 */
+	public File getDataFile(NamedRelation relation) {
+		return new File(this.directory, relation.getName() + DATA_SUFFIX);
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanExecutor#build(sjdb.Operator)
+	 */
+	public TupleIterator build(Operator plan) {
+		this.iterators.clear();
+		plan.accept(this);
+		return this.iterators.pop();
+	}
+
+	/**
+	 * Return the iterator which scans a named relation, which reads its
+	 * data file.
+	 * @param relation
+	 * @return the iterator
+	 */
+	protected TupleIterator scan(NamedRelation relation) {
+		return new ScanIterator(getDataFile(relation), relation.getAttributes());
+	}
+
+	/**
+	 * Open an iterator, read all of its tuples, and close it.
+	 */
+	private static List<Tuple> materialise(TupleIterator iterator) throws DatabaseException {
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		iterator.open();
+		try {
+			Tuple tuple;
+			while ((tuple = iterator.next()) != null) {
+				tuples.add(tuple);
+			}
+		} finally {
+			iterator.close();
+		}
+		return tuples;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Scan)
+	 */
+	public void visit(Scan op) {
+		this.iterators.push(scan((NamedRelation) op.getRelation()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Project)
+	 */
+	public void visit(Project op) {
+		this.iterators.push(new ProjectIterator(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Select)
+	 */
+	public void visit(Select op) {
+		this.iterators.push(new SelectIterator(this.iterators.pop(), op.getPredicate()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Product)
+	 */
+	public void visit(Product op) {
+		TupleIterator right = this.iterators.pop();
+		TupleIterator left = this.iterators.pop();
+		this.iterators.push(new NestedLoopIterator(left, right, null));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		TupleIterator right = this.iterators.pop();
+		TupleIterator left = this.iterators.pop();
+		if (op instanceof NestedLoopJoin) {
+			this.iterators.push(new NestedLoopIterator(left, right, op.getPredicate()));
+		} else if (op instanceof SortMergeJoin) {
+			this.iterators.push(new MergeJoinIterator(left, right, op.getPredicate()));
+		} else if (op instanceof IndexNestedLoopJoin) {
+			IndexNestedLoopJoin join = (IndexNestedLoopJoin) op;
+			this.iterators.push(new IndexJoinIterator(left, right, join,
+					scan((NamedRelation) join.getScan().getRelation())));
+		} else {
+			this.iterators.push(new HashJoinIterator(left, right, op.getPredicate()));
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Sort)
+	 */
+	public void visit(Sort op) {
+		this.iterators.push(new SortIterator(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/**
+	 * Find the position of an attribute of the tuples of an iterator.
+	 */
+	private static int position(TupleIterator iterator, Attribute attribute) throws DatabaseException {
+		int position = iterator.getAttributes().indexOf(attribute);
+		if (position < 0) {
+			throw new DatabaseException("Attribute " + attribute + " not found in " + iterator.getAttributes());
+		}
+		return position;
+	}
+
+	/**
+	 * Return a comparator which orders tuples on the values at some
+	 * positions, most significant first.
+	 */
+	private static Comparator<Tuple> order(final int[] positions) {
+		return new Comparator<Tuple>() {
+			public int compare(Tuple a, Tuple b) {
+				for (int position : positions) {
+					int cmp = Tuple.compare(a.get(position), b.get(position));
+					if (cmp != 0) {
+						return cmp;
+					}
+				}
+				return 0;
+			}
+		};
+	}
+
+	/**
+	 * An iterator over the tuples of a named relation, read from its data
+	 * file.
+	 */
+	private static class ScanIterator implements TupleIterator {
+		private File file;
+		private List<Attribute> attributes;
+		private BufferedReader reader;
+		private int line;
+
+		ScanIterator(File file, List<Attribute> attributes) {
+			this.file = file;
+			this.attributes = attributes;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.attributes;
+		}
+
+		public void open() throws DatabaseException {
+			try {
+				this.reader = new BufferedReader(new FileReader(this.file));
+				this.line = 0;
+			} catch (IOException e) {
+				throw new DatabaseException("Cannot read " + this.file, e);
+			}
+		}
+
+		public Tuple next() throws DatabaseException {
+			try {
+				String text;
+				while ((text = this.reader.readLine()) != null) {
+					this.line++;
+					if (text.isEmpty()) {
+						continue;
+					}
+					String[] values = text.split(",", -1);
+					if (values.length != this.attributes.size()) {
+						throw new DatabaseException(this.file + ":" + this.line + ": expected "
+								+ this.attributes.size() + " values but found " + values.length);
+					}
+					return new Tuple(values);
+				}
+				return null;
+			} catch (IOException e) {
+				throw new DatabaseException("Cannot read " + this.file, e);
+			}
+		}
+
+		public void close() {
+			if (this.reader != null) {
+				try {
+					this.reader.close();
+				} catch (IOException e) {
+					// nothing more can be read, which was all that was needed
+				}
+				this.reader = null;
+			}
+		}
+	}
+
+	/**
+	 * An iterator over the tuples of its input which satisfy a predicate.
+	 */
+	private static class SelectIterator implements TupleIterator {
+		private TupleIterator input;
+		private Predicate predicate;
+		private int left, right;
+
+		SelectIterator(TupleIterator input, Predicate predicate) {
+			this.input = input;
+			this.predicate = predicate;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.input.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			this.left = position(this.input, this.predicate.getLeftAttribute());
+			this.right = this.predicate.equalsValue() ? -1 : position(this.input, this.predicate.getRightAttribute());
+			this.input.open();
+		}
+
+		public Tuple next() throws DatabaseException {
+			Tuple tuple;
+			while ((tuple = this.input.next()) != null) {
+				if (matches(tuple)) {
+					return tuple;
+				}
+			}
+			return null;
+		}
+
+		private boolean matches(Tuple tuple) {
+			String value = tuple.get(this.left);
+			if (this.right >= 0) {
+				return value.equals(tuple.get(this.right));
+			}
+			return this.predicate.matches(value);
+		}
+
+		public void close() {
+			this.input.close();
+		}
+	}
+
+	/**
+	 * An iterator over some of the attributes of the tuples of its input.
+	 */
+	private static class ProjectIterator implements TupleIterator {
+		private TupleIterator input;
+		private List<Attribute> attributes;
+		private int[] positions;
+
+		ProjectIterator(TupleIterator input, List<Attribute> attributes) {
+			this.input = input;
+			this.attributes = attributes;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.attributes;
+		}
+
+		public void open() throws DatabaseException {
+			this.positions = new int[this.attributes.size()];
+			for (int i = 0; i < this.positions.length; i++) {
+				this.positions[i] = position(this.input, this.attributes.get(i));
+			}
+			this.input.open();
+		}
+
+		public Tuple next() throws DatabaseException {
+			Tuple tuple = this.input.next();
+			return tuple == null ? null : tuple.project(this.positions);
+		}
+
+		public void close() {
+			this.input.close();
+		}
+	}
+
+	/**
+	 * An iterator over the tuples of its input, sorted on some of their
+	 * attributes.
+	 */
+	private static class SortIterator implements TupleIterator {
+		private TupleIterator input;
+		private List<Attribute> order;
+		private List<Tuple> tuples;
+		private int next;
+
+		SortIterator(TupleIterator input, List<Attribute> order) {
+			this.input = input;
+			this.order = order;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.input.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			int[] positions = new int[this.order.size()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = position(this.input, this.order.get(i));
+			}
+			this.tuples = materialise(this.input);
+			Collections.sort(this.tuples, order(positions));
+			this.next = 0;
+		}
+
+		public Tuple next() {
+			return this.next < this.tuples.size() ? this.tuples.get(this.next++) : null;
+		}
+
+		public void close() {
+			this.tuples = null;
+		}
+	}
+
+	/**
+	 * The base class of the iterators which join the tuples of two inputs,
+	 * producing the values of the left tuple followed by those of the right.
+	 */
+	private static abstract class JoinIterator implements TupleIterator {
+		protected TupleIterator left, right;
+		protected Predicate predicate;
+		protected int leftKey, rightKey;
+		private List<Attribute> attributes;
+
+		JoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+			this.left = left;
+			this.right = right;
+			this.predicate = predicate;
+			this.attributes = new ArrayList<Attribute>(left.getAttributes());
+			this.attributes.addAll(right.getAttributes());
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.attributes;
+		}
+
+		/**
+		 * Find the positions of the attributes of the predicate in the
+		 * inputs, whichever way round the predicate is written.
+		 */
+		protected void findKeys() throws DatabaseException {
+			Attribute a = this.predicate.getLeftAttribute();
+			Attribute b = this.predicate.getRightAttribute();
+			if (this.left.getAttributes().contains(a)) {
+				this.leftKey = position(this.left, a);
+				this.rightKey = position(this.right, b);
+			} else {
+				this.leftKey = position(this.left, b);
+				this.rightKey = position(this.right, a);
+			}
+		}
+
+		public void close() {
+			this.left.close();
+			this.right.close();
+		}
+	}
+
+	/**
+	 * An iterator which joins each tuple of its left input with every tuple
+	 * of its right input which satisfies the predicate, or with every tuple
+	 * of its right input if there is no predicate.
+	 */
+	private static class NestedLoopIterator extends JoinIterator {
+		private List<Tuple> inner;
+		private Tuple outer;
+		private int next;
+
+		NestedLoopIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+			super(left, right, predicate);
+		}
+
+		public void open() throws DatabaseException {
+			if (this.predicate != null) {
+				findKeys();
+			}
+			this.inner = materialise(this.right);
+			this.left.open();
+			this.outer = null;
+		}
+
+		public Tuple next() throws DatabaseException {
+			while (true) {
+				if (this.outer == null) {
+					this.outer = this.left.next();
+					this.next = 0;
+					if (this.outer == null) {
+						return null;
+					}
+				}
+				while (this.next < this.inner.size()) {
+					Tuple tuple = this.inner.get(this.next++);
+					if (this.predicate == null || this.outer.get(this.leftKey).equals(tuple.get(this.rightKey))) {
+						return this.outer.concat(tuple);
+					}
+				}
+				this.outer = null;
+			}
+		}
+
+		public void close() {
+			this.inner = null;
+			this.left.close();
+		}
+	}
+
+	/**
+	 * An iterator which builds a hash table of its right input on its join
+	 * attribute, and looks up each tuple of its left input in it.
+	 */
+	private static class HashJoinIterator extends JoinIterator {
+		private Map<String, List<Tuple>> table;
+		private Tuple outer;
+		private List<Tuple> matches;
+		private int next;
+
+		HashJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+			super(left, right, predicate);
+		}
+
+		public void open() throws DatabaseException {
+			findKeys();
+			this.table = new HashMap<String, List<Tuple>>();
+			for (Tuple tuple : materialise(this.right)) {
+				List<Tuple> bucket = this.table.get(tuple.get(this.rightKey));
+				if (bucket == null) {
+					bucket = new ArrayList<Tuple>(1);
+					this.table.put(tuple.get(this.rightKey), bucket);
+				}
+				bucket.add(tuple);
+			}
+			this.left.open();
+			this.matches = null;
+		}
+
+		public Tuple next() throws DatabaseException {
+			while (this.matches == null || this.next >= this.matches.size()) {
+				this.outer = this.left.next();
+				if (this.outer == null) {
+					return null;
+				}
+				this.matches = this.table.get(this.outer.get(this.leftKey));
+				this.next = 0;
+			}
+			return this.outer.concat(this.matches.get(this.next++));
+		}
+
+		public void close() {
+			this.table = null;
+			this.left.close();
+		}
+	}
+
+	/**
+	 * An iterator which looks up each tuple of its left input in an index
+	 * on the join attribute of the relation scanned by its right input, and
+	 * applies the selects and projects of its right input to each tuple it
+	 * finds. The right input itself is only used for its attributes.
+	 */
+	private static class IndexJoinIterator extends JoinIterator {
+		private IndexNestedLoopJoin join;
+		private TupleIterator relation;
+		private Map<String, List<Tuple>> index;
+		private List<Predicate> predicates;
+		private int[][] residual;
+		private int[] positions;
+		private Tuple outer;
+		private List<Tuple> matches;
+		private int next;
+
+		IndexJoinIterator(TupleIterator left, TupleIterator right, IndexNestedLoopJoin join,
+				TupleIterator relation) {
+			super(left, right, join.getPredicate());
+			this.join = join;
+			this.relation = relation;
+		}
+
+		public void open() throws DatabaseException {
+			findKeys();
+			int key = position(this.relation, this.join.getIndexedAttribute());
+			this.positions = new int[this.right.getAttributes().size()];
+			for (int i = 0; i < this.positions.length; i++) {
+				this.positions[i] = position(this.relation, this.right.getAttributes().get(i));
+			}
+			this.predicates = this.join.getResidualPredicates();
+			this.residual = new int[this.predicates.size()][];
+			for (int i = 0; i < this.residual.length; i++) {
+				Predicate predicate = this.predicates.get(i);
+				this.residual[i] = new int[] { position(this.relation, predicate.getLeftAttribute()),
+						predicate.equalsValue() ? -1 : position(this.relation, predicate.getRightAttribute()) };
+			}
+			this.index = new HashMap<String, List<Tuple>>();
+			for (Tuple tuple : materialise(this.relation)) {
+				List<Tuple> bucket = this.index.get(tuple.get(key));
+				if (bucket == null) {
+					bucket = new ArrayList<Tuple>(1);
+					this.index.put(tuple.get(key), bucket);
+				}
+				bucket.add(tuple);
+			}
+			this.left.open();
+			this.matches = null;
+		}
+
+		public Tuple next() throws DatabaseException {
+			while (true) {
+				if (this.matches != null && this.next < this.matches.size()) {
+					Tuple tuple = this.matches.get(this.next++);
+					if (matches(tuple)) {
+						return this.outer.concat(tuple.project(this.positions));
+					}
+					continue;
+				}
+				this.outer = this.left.next();
+				if (this.outer == null) {
+					return null;
+				}
+				this.matches = this.index.get(this.outer.get(this.leftKey));
+				this.next = 0;
+			}
+		}
+
+		/**
+		 * Return true if a tuple of the relation satisfies the predicates
+		 * of the selects of the right input.
+		 */
+		private boolean matches(Tuple tuple) {
+			for (int i = 0; i < this.residual.length; i++) {
+				String value = tuple.get(this.residual[i][0]);
+				if (this.residual[i][1] >= 0 ? !value.equals(tuple.get(this.residual[i][1]))
+						: !this.predicates.get(i).matches(value)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void close() {
+			this.index = null;
+			this.left.close();
+			this.relation.close();
+		}
+	}
+
+	/**
+	 * An iterator which sorts both of its inputs on their join attributes
+	 * and merges them, producing its tuples in the order of the join
+	 * attributes.
+	 */
+	private static class MergeJoinIterator extends JoinIterator {
+		private List<Tuple> lefts, rights;
+		private int outer, start, end, next;
+
+		MergeJoinIterator(TupleIterator left, TupleIterator right, Predicate predicate) {
+			super(left, right, predicate);
+		}
+
+		public void open() throws DatabaseException {
+			findKeys();
+			this.lefts = materialise(this.left);
+			this.rights = materialise(this.right);
+			Collections.sort(this.lefts, order(new int[] { this.leftKey }));
+			Collections.sort(this.rights, order(new int[] { this.rightKey }));
+			this.outer = this.start = this.end = this.next = 0;
+		}
+
+		public Tuple next() {
+			while (true) {
+				// join the current left tuple with the group of right tuples
+				// which have its value
+				if (this.next < this.end) {
+					return this.lefts.get(this.outer).concat(this.rights.get(this.next++));
+				}
+				if (this.end > this.start) {
+					this.outer++;
+					if (this.outer < this.lefts.size() && compare(this.outer, this.start) == 0) {
+						this.next = this.start;
+						continue;
+					}
+					this.start = this.next = this.end;
+				}
+				if (this.outer >= this.lefts.size() || this.start >= this.rights.size()) {
+					return null;
+				}
+				int cmp = compare(this.outer, this.start);
+				if (cmp < 0) {
+					this.outer++;
+				} else if (cmp > 0) {
+					this.start = this.end = this.next = this.start + 1;
+				} else {
+					this.end = this.start + 1;
+					while (this.end < this.rights.size() && Tuple.compare(this.rights.get(this.end).get(this.rightKey),
+							this.rights.get(this.start).get(this.rightKey)) == 0) {
+						this.end++;
+					}
+					this.next = this.start;
+				}
+			}
+		}
+
+		private int compare(int outer, int inner) {
+			return Tuple.compare(this.lefts.get(outer).get(this.leftKey), this.rights.get(inner).get(this.rightKey));
+		}
+
+		public void close() {
+			this.lefts = null;
+			this.rights = null;
+		}
+	}
+}
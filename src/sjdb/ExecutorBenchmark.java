@@ -0,0 +1,188 @@
+package sjdb;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class compares the rates at which the Executor and the
+ * VectorExecutor execute some queries over generated relations. The tuples
+ * of the relations are held in memory and read by both executors through
+ * Executor.scan(), so that neither is timed reading data files; the
+ * VectorExecutor encodes them when it first scans them, which is timed
+ * separately.
+ */
+public class ExecutorBenchmark {
+
+	/**
+	 * The default number of tuples of the Sales relation.
+	 */
+	public static final int DEFAULT_ROWS = 1000000;
+
+	private static final int REPEATS = 5;
+
+	private static final String[] QUERIES = {
+		"SELECT *\nFROM Sales\nWHERE region=\"r3\"",
+		"SELECT saleid, amount\nFROM Sales\nWHERE amount<\"100\"",
+		"SELECT saleid, segment\nFROM Sales, Customer\nWHERE scust=custid",
+		"SELECT saleid, segment\nFROM Sales, Customer\nWHERE scust=custid, segment=\"s1\"",
+	};
+
+	private Catalogue catalogue;
+	private Map<String, List<Tuple>> tuples;
+
+	/**
+	 * Create a benchmark over generated relations: Sales(saleid, scust,
+	 * amount, region) and Customer(custid, segment), with a customer for
+	 * each hundred sales.
+	 * @param rows Number of tuples of Sales
+	 */
+	public ExecutorBenchmark(int rows) {
+		int customers = Math.max(1, rows / 100);
+		Random random = new Random(42);
+		this.catalogue = new Catalogue();
+		this.tuples = new HashMap<String, List<Tuple>>();
+
+		this.catalogue.createRelation("Sales", rows);
+		this.catalogue.createAttribute("Sales", "saleid", rows);
+		this.catalogue.createAttribute("Sales", "scust", customers);
+		this.catalogue.createAttribute("Sales", "amount", 1000);
+		this.catalogue.createAttribute("Sales", "region", 10);
+		List<Tuple> sales = new ArrayList<Tuple>(rows);
+		for (int i = 0; i < rows; i++) {
+			sales.add(new Tuple(new String[] { Integer.toString(i), Integer.toString(random.nextInt(customers)),
+					Integer.toString(random.nextInt(1000)), "r" + random.nextInt(10) }));
+		}
+		this.tuples.put("Sales", sales);
+
+		this.catalogue.createRelation("Customer", customers);
+		this.catalogue.createAttribute("Customer", "custid", customers);
+		this.catalogue.createAttribute("Customer", "segment", 5);
+		List<Tuple> customer = new ArrayList<Tuple>(customers);
+		for (int i = 0; i < customers; i++) {
+			customer.add(new Tuple(new String[] { Integer.toString(i), "s" + random.nextInt(5) }));
+		}
+		this.tuples.put("Customer", customer);
+	}
+
+	/**
+	 * Return an Executor which scans the generated relations in memory.
+	 * @return the executor
+	 */
+	public Executor createExecutor() {
+		return new Executor(".") {
+			protected TupleIterator scan(final NamedRelation relation) {
+				return new TupleIterator() {
+					private List<Tuple> tuples;
+					private int next;
+
+					public List<Attribute> getAttributes() {
+						return relation.getAttributes();
+					}
+
+					public void open() throws DatabaseException {
+						this.tuples = ExecutorBenchmark.this.tuples.get(relation.getName());
+						if (this.tuples == null) {
+							throw new DatabaseException("No tuples for " + relation.getName());
+						}
+						this.next = 0;
+					}
+
+					public Tuple next() {
+						return this.next < this.tuples.size() ? this.tuples.get(this.next++) : null;
+					}
+
+					public void close() {
+						this.tuples = null;
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Parse and optimise a query, and choose its join algorithms.
+	 * @param query
+	 * @return the plan
+	 */
+	public Operator plan(String query) throws Exception {
+		QueryParser parser = new QueryParser(this.catalogue, new StringReader(query));
+		Operator plan = parser.parse();
+		plan.accept(new Estimator());
+		Operator optPlan = new Optimiser(this.catalogue).optimise(plan);
+		return new PhysicalPlanner(new DefaultCostModel(this.catalogue)).plan(optPlan, parser.getOrder(),
+				parser.getAttributes());
+	}
+
+	/**
+	 * Return the number of tuples scanned by a plan.
+	 */
+	private long getInputSize(Operator plan) {
+		if (plan instanceof Scan) {
+			return this.tuples.get(((NamedRelation) ((Scan) plan).getRelation()).getName()).size();
+		}
+		long size = 0;
+		for (Operator input : plan.getInputs()) {
+			size += getInputSize(input);
+		}
+		return size;
+	}
+
+	/**
+	 * Return the number of tuples produced by the Executor for a plan.
+	 */
+	private static long count(Executor executor, Operator plan) throws DatabaseException {
+		TupleIterator iterator = executor.build(plan);
+		long count = 0;
+		iterator.open();
+		try {
+			while (iterator.next() != null) {
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
+	/**
+	 * @param args optionally, the number of tuples of the Sales relation
+	 */
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+		ExecutorBenchmark benchmark = new ExecutorBenchmark(rows);
+		Executor executor = benchmark.createExecutor();
+		VectorExecutor vectorExecutor = new VectorExecutor(executor);
+
+		for (String query : QUERIES) {
+			Operator plan = benchmark.plan(query);
+			long input = benchmark.getInputSize(plan);
+			System.out.println(query.replace('\n', ' '));
+
+			long start = System.nanoTime();
+			long count = vectorExecutor.count(plan);
+			long load = System.nanoTime() - start;
+
+			long rowTime = Long.MAX_VALUE, vectorTime = Long.MAX_VALUE;
+			for (int i = 0; i < REPEATS; i++) {
+				start = System.nanoTime();
+				long rowCount = count(executor, plan);
+				rowTime = Math.min(rowTime, System.nanoTime() - start);
+				start = System.nanoTime();
+				long vectorCount = vectorExecutor.count(plan);
+				vectorTime = Math.min(vectorTime, System.nanoTime() - start);
+				if (rowCount != count || vectorCount != count) {
+					throw new IllegalStateException("tuple counts differ: " + rowCount + " by row, " + vectorCount
+							+ " by vector");
+				}
+			}
+			System.out.printf("  %d tuples in, %d out; first vector run %.1fms%n", input, count, load / 1e6);
+			System.out.printf("  row:    %.1fms, %.2fM rows/s%n", rowTime / 1e6, input * 1e3 / rowTime);
+			System.out.printf("  vector: %.1fms, %.2fM rows/s (%.1fx)%n", vectorTime / 1e6, input * 1e3 / vectorTime,
+					(double) rowTime / vectorTime);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A join enumerator which builds the join tree greedily in the same way as
+ * the Optimiser's own heuristic: at each step, the pair of subplans joined
+ * by a predicate whose join leaves the least total cost over all of the
+ * subplans is joined, and subplans which cannot be joined by any predicate
+ * are combined with a product once nothing else remains. As in
+ * DPJoinEnumerator, the total cost of a plan is accumulated from the costs
+ * of its two halves, so the join chosen is the one which adds least to
+ * them.
+ *
+ * It only costs a polynomial number of plans, so it ignores its budget and
+ * is used as the fallback when another enumerator runs out of budget before
+ * finding a complete plan.
+ */
+public class GreedyJoinEnumerator implements JoinEnumerator {
+	private Estimator estimator;
+	private CostModel costModel;
+
+	/**
+	 * Create a new enumerator using the default cost model.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 */
+	public GreedyJoinEnumerator(Estimator estimator) {
+		this(estimator, new DefaultCostModel());
+	}
+
+	/**
+	 * Create a new enumerator.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 * @param costModel Cost model used to cost the candidate plans
+	 */
+	public GreedyJoinEnumerator(Estimator estimator, CostModel costModel) {
+		this.estimator = estimator;
+		this.costModel = costModel;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.JoinEnumerator#enumerate(sjdb.JoinGraph, sjdb.OptimisationBudget)
+	 */
+	public Operator enumerate(JoinGraph graph, OptimisationBudget budget) {
+		List<Operator> plans = new ArrayList<Operator>();
+		List<Long> sets = new ArrayList<Long>();
+		List<Double> costs = new ArrayList<Double>();
+		for (int i = 0; i < graph.size(); i++) {
+			plans.add(graph.getRelation(i));
+			sets.add(1L << i);
+			costs.add(this.costModel.getTotalCost(graph.getRelation(i)));
+		}
+
+		while (plans.size() > 1) {
+			Operator best = null;
+			double bestCost = 0, bestAdded = 0;
+			int bestLeft = 0, bestRight = 1;
+
+			for (int i = 0; i < plans.size(); i++) {
+				for (int j = i + 1; j < plans.size(); j++) {
+					if (!graph.isConnected(sets.get(i), sets.get(j))) {
+						continue;
+					}
+					Operator plan = graph.join(plans.get(i), sets.get(i), plans.get(j), sets.get(j), this.estimator);
+					double cost = this.costModel.getTotalCost(plan, plans.get(i), costs.get(i), plans.get(j),
+							costs.get(j));
+					double added = cost - costs.get(i) - costs.get(j);
+					if (best == null || added < bestAdded || (added == bestAdded
+							&& plan.getOutput().getTupleCount() < best.getOutput().getTupleCount())) {
+						best = plan;
+						bestCost = cost;
+						bestAdded = added;
+						bestLeft = i;
+						bestRight = j;
+					}
+				}
+			}
+
+			if (best == null) {
+				best = graph.join(plans.get(0), sets.get(0), plans.get(1), sets.get(1), this.estimator);
+				bestCost = this.costModel.getTotalCost(best, plans.get(0), costs.get(0), plans.get(1), costs.get(1));
+			}
+
+			long set = sets.get(bestLeft) | sets.get(bestRight);
+			plans.remove(bestRight);
+			sets.remove(bestRight);
+			costs.remove(bestRight);
+			plans.set(bestLeft, best);
+			sets.set(bestLeft, set);
+			costs.set(bestLeft, bestCost);
+		}
+
+		return plans.get(0);
+	}
+}
@@ -0,0 +1,122 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class represents a group in the memo of the MemoOptimiser: a set of
+ * logically equivalent expressions. The expressions in a group all read the
+ * same named relations, apply the same predicates and output the same
+ * attributes, and these logical properties identify the group.
+ *
+ * The cheapest plan for the group (its winner) is found once and is shared
+ * by every expression which uses the group as an input.
+ */
+public class Group {
+	private int id;
+	private Set<String> relations;
+	private Set<String> predicates;
+	private List<Attribute> attributes;
+	private List<GroupExpression> expressions;
+
+	private Operator winner;
+	private double cost;
+
+	/**
+	 * Create a new group with the given logical properties.
+	 * @param id
+	 * @param relations Names of the named relations read by the group
+	 * @param predicates Normalised predicates applied by the group
+	 * @param attributes Attributes output by the group
+	 */
+	protected Group(int id, Set<String> relations, Set<String> predicates, List<Attribute> attributes) {
+		this.id = id;
+		this.relations = relations;
+		this.predicates = predicates;
+		this.attributes = attributes;
+		this.expressions = new ArrayList<GroupExpression>();
+	}
+
+	public int getId() {
+		return this.id;
+	}
+
+	/**
+	 * Return the names of the named relations read by this group
+	 * @return the relation names
+	 */
+	public Set<String> getRelations() {
+		return this.relations;
+	}
+
+	/**
+	 * Return the normalised predicates applied by this group
+	 * @return the predicates
+	 */
+	public Set<String> getPredicates() {
+		return this.predicates;
+	}
+
+	/**
+	 * Return the attributes output by this group
+	 * @return the attributes
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * Return the equivalent expressions in this group
+	 * @return the expressions
+	 */
+	public List<GroupExpression> getExpressions() {
+		return this.expressions;
+	}
+
+	protected void addExpression(GroupExpression expr) {
+		this.expressions.add(expr);
+		expr.setGroup(this);
+	}
+
+	/**
+	 * Return the cheapest plan for this group, or null if it has not been
+	 * found yet
+	 * @return the winning plan
+	 */
+	public Operator getWinner() {
+		return this.winner;
+	}
+
+	/**
+	 * Return the cost of the winning plan
+	 * @return the cost
+	 */
+	public double getCost() {
+		return this.cost;
+	}
+
+	protected void setWinner(Operator winner, double cost) {
+		this.winner = winner;
+		this.cost = cost;
+	}
+
+	/**
+	 * Return a key which identifies a group by its logical properties.
+	 */
+	protected static String getKey(Set<String> relations, Set<String> predicates, List<Attribute> attributes) {
+		Set<String> names = new TreeSet<String>();
+		for (Attribute attr : attributes) {
+			names.add(attr.getName());
+		}
+		return relations + " " + predicates + " " + names;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "#" + this.id + " " + getKey(this.relations, this.predicates, this.attributes);
+	}
+}
@@ -0,0 +1,176 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class represents a logical expression in the memo of the
+ * MemoOptimiser. An expression is a single logical operator whose inputs
+ * are groups of equivalent expressions rather than other operators, so a
+ * single expression stands for every plan that can be built by choosing
+ * one expression from each of its input groups.
+ */
+public class GroupExpression {
+
+	/**
+	 * The logical operators which an expression may represent.
+	 */
+	public enum Kind {
+		SCAN, SELECT, PROJECT, PRODUCT, JOIN
+	}
+
+	private Kind kind;
+	private NamedRelation relation;
+	private Predicate predicate;
+	private List<Attribute> attributes;
+	private Group[] inputs;
+	private Group group;
+
+	/**
+	 * The total number of expressions in the input groups when the rules
+	 * were last applied to this expression, or -1 if they never have been.
+	 */
+	private int explored = -1;
+
+	private GroupExpression(Kind kind, NamedRelation relation, Predicate predicate,
+			List<Attribute> attributes, Group... inputs) {
+		this.kind = kind;
+		this.relation = relation;
+		this.predicate = predicate;
+		this.attributes = attributes;
+		this.inputs = inputs;
+	}
+
+	/**
+	 * Create a scan of a named relation
+	 */
+	public static GroupExpression scan(NamedRelation relation) {
+		return new GroupExpression(Kind.SCAN, relation, null, null);
+	}
+
+	/**
+	 * Create a select of the given group
+	 */
+	public static GroupExpression select(Group input, Predicate predicate) {
+		return new GroupExpression(Kind.SELECT, null, predicate, null, input);
+	}
+
+	/**
+	 * Create a project of the given group
+	 */
+	public static GroupExpression project(Group input, List<Attribute> attributes) {
+		return new GroupExpression(Kind.PROJECT, null, null, attributes, input);
+	}
+
+	/**
+	 * Create a product of two groups
+	 */
+	public static GroupExpression product(Group left, Group right) {
+		return new GroupExpression(Kind.PRODUCT, null, null, null, left, right);
+	}
+
+	/**
+	 * Create a join of two groups; the left attribute of the predicate must
+	 * be produced by the left group.
+	 */
+	public static GroupExpression join(Group left, Group right, Predicate predicate) {
+		return new GroupExpression(Kind.JOIN, null, predicate, null, left, right);
+	}
+
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	public NamedRelation getRelation() {
+		return this.relation;
+	}
+
+	public Predicate getPredicate() {
+		return this.predicate;
+	}
+
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * Return the input group with the given index
+	 * @param i
+	 * @return the input group
+	 */
+	public Group getInput(int i) {
+		return this.inputs[i];
+	}
+
+	/**
+	 * Return the number of input groups
+	 * @return the number of inputs
+	 */
+	public int getInputCount() {
+		return this.inputs.length;
+	}
+
+	/**
+	 * Return the group which this expression belongs to
+	 * @return the group
+	 */
+	public Group getGroup() {
+		return this.group;
+	}
+
+	protected void setGroup(Group group) {
+		this.group = group;
+	}
+
+	/**
+	 * Return true if the rules have been applied to this expression since
+	 * its input groups last gained expressions. Rules only look at an
+	 * expression and the expressions in its input groups, so applying them
+	 * again before then cannot derive anything new.
+	 * @return true if the expression does not need exploring again
+	 */
+	protected boolean isExplored() {
+		return this.explored == getInputSize();
+	}
+
+	protected void setExplored() {
+		this.explored = getInputSize();
+	}
+
+	private int getInputSize() {
+		int size = 0;
+		for (Group input : this.inputs) {
+			size += input.getExpressions().size();
+		}
+		return size;
+	}
+
+	/**
+	 * Return a key which identifies the expression by its operator, its
+	 * arguments and its input groups, used to avoid adding the same
+	 * expression to the memo twice.
+	 * @return the key
+	 */
+	public String getKey() {
+		String key = this.kind.toString();
+		if (this.relation != null) {
+			key += " " + this.relation.toString();
+		}
+		if (this.predicate != null) {
+			key += " [" + this.predicate.toString() + "]";
+		}
+		if (this.attributes != null) {
+			key += " " + this.attributes.toString();
+		}
+		for (Group input : this.inputs) {
+			key += " #" + input.getId();
+		}
+		return key;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return getKey();
+	}
+}
@@ -0,0 +1,74 @@
+package sjdb;
+
+/**
+ * This class represents a hash join, which builds a hash table on its right
+ * input and probes it with each tuple of its left input. If the right input
+ * does not fit in memory, both inputs are first partitioned to disk by the
+ * hash of the join attribute and each pair of partitions is joined in turn
+ * (a Grace hash join). If both inputs are already partitioned on their
+ * join attributes, the partitions can be joined in turn without
+ * partitioning them again. Either way the output is produced partition by
+ * partition, so it is partitioned on the join attributes; otherwise the
+ * whole of the right input is held in one hash table, and the output has
+ * no particular properties.
+ */
+public class HashJoin extends PhysicalJoin {
+
+	/**
+	 * Create a new hash join operator.
+	 * @param left Left child operator, which probes the hash table
+	 * @param right Right child operator, which the hash table is built on
+	 * @param predicate Join predicate
+	 */
+	public HashJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right, predicate);
+	}
+
+	public String getAlgorithm() {
+		return "HASH JOIN";
+	}
+
+	public long getPageCount(int pageSize, long memory) {
+		if (!isPartitioning(pageSize, memory)) {
+			return 0;
+		}
+		return Cardinality.multiply(2, Cardinality.add(getPages(getLeft(), pageSize), getPages(getRight(), pageSize)));
+	}
+
+	/**
+	 * Return true if the join partitions its inputs to disk, because the
+	 * right input does not fit in memory and they are not both partitioned
+	 * already
+	 */
+	private boolean isPartitioning(int pageSize, long memory) {
+		return getPages(getRight(), pageSize) > memory && !isPartitioned();
+	}
+
+	/**
+	 * Return true if both inputs are partitioned on their join attributes
+	 */
+	private boolean isPartitioned() {
+		return getLeft().getOutput().getProperties().isPartitionedOn(getPredicate().getLeftAttribute())
+				&& getRight().getOutput().getProperties().isPartitionedOn(getPredicate().getRightAttribute());
+	}
+
+	public PhysicalProperties getProperties(int pageSize, long memory) {
+		if (isPartitioned() || isPartitioning(pageSize, memory)) {
+			return PhysicalProperties.partitioned(getKey());
+		}
+		return PhysicalProperties.NONE;
+	}
+
+	public double getTupleCount() {
+		return (double) getLeft().getOutput().getTupleCount() + getRight().getOutput().getTupleCount()
+				+ getOutput().getTupleCount();
+	}
+
+	public long getMemory(int pageSize, long memory) {
+		return Math.max(1, Math.min(memory, getPages(getRight(), pageSize)));
+	}
+
+	public PhysicalJoin copy(Operator left, Operator right) {
+		return new HashJoin(left, right, getPredicate());
+	}
+}
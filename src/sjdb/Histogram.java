@@ -0,0 +1,250 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class describes how the values of an attribute are distributed, for
+ * attributes whose values are too skewed for the number of distinct values
+ * alone to give good estimates. It is made up of two parts:
+ *
+ * - a list of the most common values of the attribute, each with the
+ *   fraction of the tuples of the relation which take that value;
+ * - an equi-depth histogram of the remaining tuples, given by the bounds
+ *   of its buckets. Each bucket holds the same number of tuples, and values
+ *   are assumed to be spread uniformly within a bucket.
+ *
+ * Either part may be empty. The histogram is only useful for numeric values;
+ * the most common values may be any values.
+ */
+public class Histogram {
+	private double[] bounds;
+	private Map<String, Double> mostCommon;
+	private double mostCommonFraction;
+
+	/**
+	 * Create a new histogram.
+	 * @param bounds Bounds of the buckets in ascending order, so that bucket i
+	 *               holds values between bounds[i] and bounds[i+1]; empty if
+	 *               there is no histogram
+	 * @param mostCommon The most common values, each mapped to the fraction
+	 *                   of the tuples which take it
+	 */
+	public Histogram(double[] bounds, Map<String, Double> mostCommon) {
+		for (int i = 1; i < bounds.length; i++) {
+			if (bounds[i] < bounds[i - 1]) {
+				throw new IllegalArgumentException("Histogram bounds must be in ascending order");
+			}
+		}
+		this.bounds = bounds.clone();
+		this.mostCommon = Collections.unmodifiableMap(new LinkedHashMap<String, Double>(mostCommon));
+		for (double fraction : mostCommon.values()) {
+			this.mostCommonFraction += fraction;
+		}
+		this.mostCommonFraction = Math.min(1.0, this.mostCommonFraction);
+	}
+
+	/**
+	 * Return the number of buckets in the histogram
+	 * @return the number of buckets, which is zero if there is no histogram
+	 */
+	public int getBucketCount() {
+		return Math.max(0, this.bounds.length - 1);
+	}
+
+	/**
+	 * Return the bounds of the buckets, in ascending order
+	 * @return the bounds
+	 */
+	public double[] getBounds() {
+		return this.bounds.clone();
+	}
+
+	/**
+	 * Return the most common values, each mapped to the fraction of the
+	 * tuples which take it
+	 * @return the most common values
+	 */
+	public Map<String, Double> getMostCommonValues() {
+		return this.mostCommon;
+	}
+
+	/**
+	 * Return the fraction of the tuples which take one of the most common
+	 * values
+	 * @return the fraction of the tuples
+	 */
+	public double getMostCommonFraction() {
+		return this.mostCommonFraction;
+	}
+
+	/**
+	 * Return the fraction of the tuples which take a value, if it is one of
+	 * the most common values.
+	 * @param value
+	 * @return the fraction of the tuples, or NaN if the value is not one of
+	 *         the most common values
+	 */
+	public double getFrequency(String value) {
+		Double fraction = this.mostCommon.get(value);
+		return fraction == null ? Double.NaN : fraction;
+	}
+
+	/**
+	 * Estimate the fraction of the tuples whose value lies between two
+	 * bounds: the most common values in the range, plus the share of the
+	 * remaining tuples in the buckets the range overlaps.
+	 * @param low Lower bound, which may be negative infinity
+	 * @param high Upper bound, which may be positive infinity
+	 * @return the fraction of the tuples, or NaN if there is no histogram
+	 */
+	public double getRangeFraction(double low, double high) {
+		if (getBucketCount() == 0) {
+			return Double.NaN;
+		}
+
+		double fraction = getMostCommonFraction(low, high);
+		double buckets = 0;
+		for (int i = 0; i < getBucketCount(); i++) {
+			double bottom = this.bounds[i];
+			double top = this.bounds[i + 1];
+			if (top <= bottom) {
+				buckets += (low <= bottom && bottom <= high) ? 1 : 0;
+			} else {
+				buckets += Math.max(0, Math.min(high, top) - Math.max(low, bottom)) / (top - bottom);
+			}
+		}
+
+		fraction += (1.0 - this.mostCommonFraction) * buckets / getBucketCount();
+		return Math.min(1.0, fraction);
+	}
+
+	/**
+	 * Return the fraction of the tuples which take one of the most common
+	 * values between two bounds.
+	 * @param low Lower bound, which may be negative infinity
+	 * @param high Upper bound, which may be positive infinity
+	 * @return the fraction of the tuples
+	 */
+	public double getMostCommonFraction(double low, double high) {
+		double fraction = 0;
+		for (String value : getMostCommonValues(low, high)) {
+			fraction += this.mostCommon.get(value);
+		}
+		return Math.min(1.0, fraction);
+	}
+
+	/**
+	 * Return the most common values which are numbers between two bounds.
+	 */
+	private List<String> getMostCommonValues(double low, double high) {
+		List<String> values = new ArrayList<String>();
+		for (String value : this.mostCommon.keySet()) {
+			try {
+				double number = Double.parseDouble(value);
+				if (number >= low && number <= high) {
+					values.add(value);
+				}
+			} catch (NumberFormatException e) {
+				// not a number, so not in any numeric range
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Return the histogram of the tuples which do not take a value. The
+	 * value is no longer one of the most common values, the fractions of
+	 * the others are scaled up to the tuples which remain, and the buckets
+	 * are unchanged.
+	 * @param value
+	 * @param fraction Fraction of the tuples which take the value
+	 * @return the histogram
+	 */
+	public Histogram without(String value, double fraction) {
+		Map<String, Double> mostCommon = new LinkedHashMap<String, Double>();
+		double remaining = 1.0 - fraction;
+		if (remaining > 0) {
+			for (Map.Entry<String, Double> entry : this.mostCommon.entrySet()) {
+				if (!entry.getKey().equals(value)) {
+					mostCommon.put(entry.getKey(), Math.min(1.0, entry.getValue() / remaining));
+				}
+			}
+		}
+		return new Histogram(remaining > 0 ? this.bounds : new double[0], mostCommon);
+	}
+
+	/**
+	 * Return the histogram of the tuples whose value lies between two
+	 * bounds, as getRangeFraction() counts them. The most common values in
+	 * the range are kept, with their fractions scaled up to the tuples in
+	 * the range, and the part of each bucket in the range is divided again
+	 * into the same number of buckets, each holding the same number of
+	 * tuples.
+	 * @param low Lower bound, which may be negative infinity
+	 * @param high Upper bound, which may be positive infinity
+	 * @param fraction Fraction of the tuples in the range, which is
+	 *                 getRangeFraction() if there are buckets
+	 * @return the histogram
+	 */
+	public Histogram range(double low, double high, double fraction) {
+		int count = getBucketCount();
+		double[] bottoms = new double[count];
+		double[] tops = new double[count];
+		double[] shares = new double[count];
+		double buckets = 0;
+		for (int i = 0; i < count; i++) {
+			double bottom = this.bounds[i];
+			double top = this.bounds[i + 1];
+			if (top <= bottom) {
+				bottoms[i] = tops[i] = bottom;
+				shares[i] = (low <= bottom && bottom <= high) ? 1 : 0;
+			} else {
+				bottoms[i] = Math.max(low, bottom);
+				tops[i] = Math.min(high, top);
+				shares[i] = Math.max(0, tops[i] - bottoms[i]) / (top - bottom);
+			}
+			buckets += shares[i];
+		}
+
+		Map<String, Double> mostCommon = new LinkedHashMap<String, Double>();
+		if (fraction <= 0) {
+			return new Histogram(new double[0], mostCommon);
+		}
+		for (String value : getMostCommonValues(low, high)) {
+			mostCommon.put(value, Math.min(1.0, this.mostCommon.get(value) / fraction));
+		}
+		if (buckets <= 0) {
+			return new Histogram(new double[0], mostCommon);
+		}
+
+		// walk through the parts of the buckets in the range, placing a new
+		// bound each time another 1/count of their tuples has been passed
+		double[] bounds = new double[count + 1];
+		double passed = 0;
+		int next = 1;
+		boolean first = true;
+		for (int i = 0; i < count; i++) {
+			if (shares[i] <= 0) {
+				continue;
+			}
+			if (first) {
+				bounds[0] = bottoms[i];
+				first = false;
+			}
+			while (next < count && passed + shares[i] >= buckets * next / count) {
+				double into = (buckets * next / count - passed) / shares[i];
+				bounds[next++] = bottoms[i] + into * (tops[i] - bottoms[i]);
+			}
+			passed += shares[i];
+			bounds[count] = tops[i];
+		}
+		while (next < count) {
+			bounds[next++] = bounds[count];
+		}
+		return new Histogram(bounds, mostCommon);
+	}
+}
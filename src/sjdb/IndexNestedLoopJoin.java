@@ -0,0 +1,155 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class represents an index nested-loop join, which looks up each
+ * tuple of its left input in an index on the join attribute of its right
+ * input. The right input must be a scan of a named relation with an index
+ * on the attribute, under any number of selects and projects; the relation
+ * is never scanned, only the pages holding matching tuples are read, and
+ * the selects and projects are applied to the tuples found by each lookup.
+ * The left input is read a tuple at a time, so the output is in the same
+ * order as the left input.
+ */
+public class IndexNestedLoopJoin extends PhysicalJoin {
+
+	/**
+	 * The number of index pages read by each lookup.
+	 */
+	public static final int INDEX_PAGES = 2;
+
+	/**
+	 * Create a new index nested-loop join operator.
+	 * @param left Left child operator, whose tuples are looked up
+	 * @param right Scan of the indexed relation
+	 * @param predicate Join predicate
+	 */
+	public IndexNestedLoopJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right, predicate);
+	}
+
+	/**
+	 * Return true if an index nested-loop join can be used to join the
+	 * given right input, which is the case if it is a scan of a named
+	 * relation, under any selects and projects, with an index on the
+	 * attribute of the predicate which the right input produces.
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 * @return true if an index can be used
+	 */
+	public static boolean canUse(Operator right, Predicate predicate) {
+		Scan scan = getScan(right);
+		Attribute key = getIndexedAttribute(right, predicate);
+		return scan != null && key != null && ((NamedRelation) scan.getRelation()).hasIndex(key);
+	}
+
+	/**
+	 * Return the scan at the bottom of a chain of selects and projects.
+	 * @param op Operator at the top of the chain
+	 * @return the scan, or null if there is another operator in the chain
+	 */
+	public static Scan getScan(Operator op) {
+		while (op instanceof Select || op instanceof Project) {
+			op = ((UnaryOperator) op).getInput();
+		}
+		return op instanceof Scan ? (Scan) op : null;
+	}
+
+	/**
+	 * Return the attribute of a predicate which is produced by a chain of
+	 * selects and projects over a scan, or null if neither is.
+	 */
+	private static Attribute getIndexedAttribute(Operator op, Predicate predicate) {
+		while (op instanceof Select) {
+			op = ((Select) op).getInput();
+		}
+		List<Attribute> attributes;
+		if (op instanceof Project) {
+			attributes = ((Project) op).getAttributes();
+		} else if (op instanceof Scan) {
+			attributes = ((Scan) op).getRelation().getAttributes();
+		} else {
+			return null;
+		}
+		if (attributes.contains(predicate.getRightAttribute())) {
+			return predicate.getRightAttribute();
+		} else if (attributes.contains(predicate.getLeftAttribute())) {
+			return predicate.getLeftAttribute();
+		}
+		return null;
+	}
+
+	/**
+	 * Return the scan of the indexed relation.
+	 * @return the scan
+	 */
+	public Scan getScan() {
+		return getScan(getRight());
+	}
+
+	/**
+	 * Return the attribute of the predicate which is indexed.
+	 * @return the attribute
+	 */
+	public Attribute getIndexedAttribute() {
+		return getIndexedAttribute(getRight(), getPredicate());
+	}
+
+	/**
+	 * Return the predicates of the selects between the join and the scan of
+	 * the indexed relation, which are applied to each tuple found.
+	 * @return the predicates, from the bottom of the chain up
+	 */
+	public List<Predicate> getResidualPredicates() {
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		for (Operator op = getRight(); op instanceof UnaryOperator; op = ((UnaryOperator) op).getInput()) {
+			if (op instanceof Select) {
+				predicates.add(0, ((Select) op).getPredicate());
+			}
+		}
+		return predicates;
+	}
+
+	/**
+	 * Return the number of tuples of the indexed relation found by the
+	 * lookups, before the residual predicates are applied.
+	 * @return the number of tuples
+	 */
+	public long getFetchedCount() {
+		Relation relation = getScan().getRelation();
+		Attribute key = relation.getAttribute(getIndexedAttribute());
+		return Cardinality.multiplyDivide(getLeft().getOutput().getTupleCount(), relation.getTupleCount(),
+				key.getValueCount());
+	}
+
+	public String getAlgorithm() {
+		return "INDEX JOIN";
+	}
+
+	/**
+	 * Each lookup reads the index pages and then one page for each matching
+	 * tuple, as the relation is not stored in the order of the index.
+	 */
+	public long getPageCount(int pageSize, long memory) {
+		return Cardinality.add(Cardinality.multiply(getLeft().getOutput().getTupleCount(), INDEX_PAGES),
+				getFetchedCount());
+	}
+
+	public double getTupleCount() {
+		return (double) getLeft().getOutput().getTupleCount() + getFetchedCount();
+	}
+
+	public long getMemory(int pageSize, long memory) {
+		return 1;
+	}
+
+	public PhysicalProperties getProperties(int pageSize, long memory) {
+		return getLeft().getOutput().getProperties();
+	}
+
+	public PhysicalJoin copy(Operator left, Operator right) {
+		return new IndexNestedLoopJoin(left, right, getPredicate());
+	}
+}
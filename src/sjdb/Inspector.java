@@ -39,6 +39,13 @@ public class Inspector implements PlanVisitor {
 		System.out.println("  out: " + op.getOutput().render());
 	}
 
+	@Override
+	public void visit(Sort op) {
+		System.out.println(op.toString());
+		System.out.println("  in:  " + op.getInput().getOutput().render());
+		System.out.println("  out: " + op.getOutput().render());
+	}
+
 	@Override
 	public void visit(Join op) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,208 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class holds the plans kept by a dynamic programming join enumerator
+ * for one set of relations: for each set of interesting physical properties
+ * which the output of a plan for the set may have, the cheapest plan with
+ * those properties. An order or partitioning is interesting if it is on an
+ * attribute of a join predicate of the join graph or of the order the query
+ * requires, as a join above the plan or the final sort may then be cheaper.
+ * So a plan which is not the cheapest for the set is only discarded if
+ * another plan with the same interesting properties is cheaper.
+ *
+ * Each plan is kept both as the logical plan built by the JoinGraph, which
+ * is what the enumerator returns, and as the physical plan it is costed
+ * as, which joins the physical plans of its two halves with one of the
+ * PhysicalJoin algorithms, its inputs in either order. The PhysicalPlanner
+ * later chooses the physical plan for the logical plan returned from the
+ * same alternatives, so it finds one at least as cheap.
+ *
+ * Plans with the same cost are kept in the order they were added, so the
+ * plan chosen only depends on the order in which the enumerator adds them.
+ */
+public class InterestingPlans {
+
+	/**
+	 * A logical plan, the physical plan it is costed as, and the total cost
+	 * of the physical plan.
+	 */
+	public static class Plan {
+		private Operator logical;
+		private Operator physical;
+		private double cost;
+
+		private Plan(Operator logical, Operator physical, double cost) {
+			this.logical = logical;
+			this.physical = physical;
+			this.cost = cost;
+		}
+
+		/**
+		 * @return the logical plan
+		 */
+		public Operator getLogical() {
+			return this.logical;
+		}
+
+		/**
+		 * @return the estimated physical plan
+		 */
+		public Operator getPhysical() {
+			return this.physical;
+		}
+
+		/**
+		 * @return the total cost of the physical plan
+		 */
+		public double getCost() {
+			return this.cost;
+		}
+	}
+
+	private Set<Attribute> interesting;
+	private Map<PhysicalProperties, Plan> plans;
+
+	/**
+	 * Create an empty set of plans.
+	 * @param interesting Attributes whose orders and partitionings are
+	 *                    interesting
+	 */
+	public InterestingPlans(Set<Attribute> interesting) {
+		this.interesting = interesting;
+		this.plans = new LinkedHashMap<PhysicalProperties, Plan>();
+	}
+
+	/**
+	 * Create the plans for a single relation of a join graph, which only
+	 * has its own optimised operator.
+	 * @param graph Join graph
+	 * @param i Number of the relation
+	 * @param costModel Cost model used to cost the operator
+	 * @return the plans
+	 */
+	public static InterestingPlans getRelation(JoinGraph graph, int i, CostModel costModel) {
+		Operator relation = graph.getRelation(i);
+		InterestingPlans plans = new InterestingPlans(graph.getInterestingAttributes());
+		plans.add(relation, relation, costModel.getTotalCost(relation));
+		return plans;
+	}
+
+	/**
+	 * Return true if no plan has been found.
+	 * @return true if there are no plans
+	 */
+	public boolean isEmpty() {
+		return this.plans.isEmpty();
+	}
+
+	/**
+	 * Return the cheapest plan for each set of interesting properties.
+	 * @return the plans
+	 */
+	public Collection<Plan> getPlans() {
+		return this.plans.values();
+	}
+
+	/**
+	 * Keep a plan if it is cheaper than every plan found so far with its
+	 * interesting properties.
+	 * @param logical Logical plan
+	 * @param physical Estimated physical plan which the logical plan is
+	 *                 costed as
+	 * @param cost Total cost of the physical plan
+	 */
+	public void add(Operator logical, Operator physical, double cost) {
+		PhysicalProperties properties = physical.getOutput().getProperties().restrict(this.interesting);
+		Plan current = this.plans.get(properties);
+		if (current == null || cost < current.cost) {
+			this.plans.put(properties, new Plan(logical, physical, cost));
+		}
+	}
+
+	/**
+	 * Join a plan for each of two disjoint sets of relations, as the
+	 * JoinGraph joins them, with each physical join of their physical
+	 * plans, and keep each result which is the cheapest with its
+	 * interesting properties.
+	 * @param graph Join graph which joins the logical plans
+	 * @param left Plan for the left set
+	 * @param leftSet
+	 * @param right Plan for the right set
+	 * @param rightSet
+	 * @param estimator Estimator used to estimate the new operators
+	 * @param costModel Cost model used to cost the physical plans
+	 */
+	public void join(JoinGraph graph, Plan left, long leftSet, Plan right, long rightSet, Estimator estimator,
+			CostModel costModel) {
+		Operator logical = graph.join(left.logical, leftSet, right.logical, rightSet, estimator);
+
+		// the predicates applied over the join, innermost first
+		List<Predicate> selects = new ArrayList<Predicate>();
+		Operator join = logical;
+		while (join instanceof Select) {
+			selects.add(0, ((Select) join).getPredicate());
+			join = ((Select) join).getInput();
+		}
+
+		List<Operator> joins = new ArrayList<Operator>();
+		if (join instanceof Join) {
+			Predicate p = ((Join) join).getPredicate();
+			Predicate reversed = new Predicate(p.getRightAttribute(), p.getLeftAttribute());
+			joins.addAll(PhysicalJoin.getAlternatives(left.physical, right.physical, p));
+			joins.addAll(PhysicalJoin.getAlternatives(right.physical, left.physical, reversed));
+		} else {
+			joins.add(new Product(left.physical, right.physical));
+		}
+
+		for (Operator physical : joins) {
+			if (physical instanceof Product) {
+				estimator.visit((Product) physical);
+			} else {
+				estimator.visit((Join) physical);
+			}
+			for (Predicate p : selects) {
+				physical = new Select(physical, p);
+				estimator.visit((Select) physical);
+			}
+			add(logical, physical,
+					costModel.getTotalCost(physical, left.physical, left.cost, right.physical, right.cost));
+		}
+	}
+
+	/**
+	 * Return the plan which is cheapest once its output is sorted in the
+	 * given order, including the cost of the sort for each plan whose
+	 * output is not already in that order.
+	 * @param order Attributes the output must be sorted on, most significant
+	 *              first, or an empty list if it may be in any order
+	 * @param estimator Estimator used to estimate the sorts
+	 * @param costModel Cost model used to cost the sorts
+	 * @return the best plan, or null if there are no plans
+	 */
+	public Plan getBest(List<Attribute> order, Estimator estimator, CostModel costModel) {
+		Plan best = null;
+		double bestCost = 0;
+		for (Plan plan : this.plans.values()) {
+			double cost = plan.cost;
+			Relation output = plan.physical.getOutput();
+			if (!order.isEmpty() && output.getAttributes().containsAll(order)
+					&& !output.getProperties().isSortedOn(order)) {
+				Sort sort = new Sort(plan.physical, order);
+				estimator.visit(sort);
+				cost += costModel.getCost(sort);
+			}
+			if (best == null || cost < bestCost) {
+				best = plan;
+				bestCost = cost;
+			}
+		}
+		return best;
+	}
+}
@@ -21,6 +21,13 @@ public class Join extends BinaryOperator {
 		return this.predicate;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getDetail()
+	 */
+	protected Object getDetail() {
+		return this.predicate.getTerms();
+	}
+	
 	/* (non-Javadoc)
 	 * @see sjdb.BinaryOperator#accept(sjdb.OperatorVisitor)
 	 */
@@ -0,0 +1,44 @@
+package sjdb;
+
+/**
+ * A transformation rule which re-associates two joins:
+ * (A JOIN[p] B) JOIN[q] C becomes A JOIN[p] (B JOIN[q] C), provided that
+ * q joins B and C. If q joins A and C instead, the rule applies once the
+ * inner join has been commuted to (B JOIN[p] A). A join is never
+ * re-associated into a product, but a product below a join is moved
+ * above it: (A TIMES B) JOIN[q] C becomes A TIMES (B JOIN[q] C).
+ */
+public class JoinAssociativityRule implements Rule {
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.GroupExpression, sjdb.Memo)
+	 */
+	public void apply(GroupExpression expr, Memo memo) {
+		if (expr.getKind() != GroupExpression.Kind.JOIN) {
+			return;
+		}
+		Predicate q = expr.getPredicate();
+		Group right = expr.getInput(1);
+
+		// copy the expressions as inserting may add to the group
+		GroupExpression[] lefts = expr.getInput(0).getExpressions().toArray(new GroupExpression[0]);
+
+		for (GroupExpression left : lefts) {
+			if (left.getKind() != GroupExpression.Kind.JOIN && left.getKind() != GroupExpression.Kind.PRODUCT) {
+				continue;
+			}
+			Group a = left.getInput(0);
+			Group b = left.getInput(1);
+
+			if (!b.getAttributes().contains(q.getLeftAttribute())) {
+				continue;
+			}
+			Group inner = memo.insert(GroupExpression.join(b, right, q));
+			if (left.getKind() == GroupExpression.Kind.JOIN) {
+				memo.insert(GroupExpression.join(a, inner, left.getPredicate()));
+			} else {
+				memo.insert(GroupExpression.product(a, inner));
+			}
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package sjdb;
+
+/**
+ * A transformation rule which swaps the inputs of a join or product:
+ * A JOIN[a=b] B becomes B JOIN[b=a] A.
+ */
+public class JoinCommutativityRule implements Rule {
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.GroupExpression, sjdb.Memo)
+	 */
+	public void apply(GroupExpression expr, Memo memo) {
+		if (expr.getKind() == GroupExpression.Kind.JOIN) {
+			Predicate p = expr.getPredicate();
+			memo.insert(GroupExpression.join(expr.getInput(1), expr.getInput(0),
+					new Predicate(p.getRightAttribute(), p.getLeftAttribute())));
+		} else if (expr.getKind() == GroupExpression.Kind.PRODUCT) {
+			memo.insert(GroupExpression.product(expr.getInput(1), expr.getInput(0)));
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package sjdb;
+
+/**
+ * This is an interface for a strategy that chooses the order in which the
+ * relations of a query are joined. The Optimiser builds a join graph from
+ * the optimised operator for each relation (with its selections and
+ * projections already pushed down) and the join predicates which apply to
+ * them, and the enumerator returns a single plan joining all of them.
+ */
+public interface JoinEnumerator {
+	/**
+	 * Build a plan that joins all of the relations in the graph, charging
+	 * the budget for each candidate plan costed and stopping once it is
+	 * exhausted.
+	 * @param graph Join graph of the relations and join predicates
+	 * @param budget Budget for the search
+	 * @return Plan joining all of the relations, or null if the budget was
+	 *         exhausted before any such plan was found
+	 */
+	public Operator enumerate(JoinGraph graph, OptimisationBudget budget);
+}
@@ -0,0 +1,313 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents the join graph of a query. Each vertex is an
+ * optimised operator for one relation, and each edge is a join predicate of
+ * the form attr=attr between the two relations containing its attributes.
+ *
+ * Sets of relations are represented as bitmasks, where bit i is set if the
+ * set contains the i-th relation, so a graph may have at most 64 relations.
+ *
+ * The operators which join plans are created by a PlanFactory, so joining
+ * the same plans again returns the operators created the first time.
+ *
+ * A graph may also give the order in which the query requires its output,
+ * so that an enumerator can prefer a plan which produces that order over a
+ * cheaper one which has to be sorted.
+ */
+public class JoinGraph {
+
+	/**
+	 * The largest number of relations which can be held in a bitmask.
+	 */
+	public static final int MAX_RELATIONS = 64;
+
+	private List<Operator> relations;
+	private List<Predicate> predicates;
+	private List<Attribute> order;
+	private Set<Attribute> interesting;
+
+	/**
+	 * The relations containing the left and right attribute of each
+	 * predicate.
+	 */
+	private int[] lefts, rights;
+
+	/**
+	 * The set of relations adjacent to each relation.
+	 */
+	private long[] neighbours;
+
+	private PlanFactory factory;
+
+	/**
+	 * Create a join graph.
+	 * @param relations Optimised operators, one for each relation
+	 * @param predicates Join predicates, each of which must have its
+	 *                   attributes in two different relations
+	 */
+	public JoinGraph(List<Operator> relations, List<Predicate> predicates) {
+		this(relations, predicates, new ArrayList<Attribute>());
+	}
+
+	/**
+	 * Create a join graph whose output is required in the given order.
+	 * @param relations Optimised operators, one for each relation
+	 * @param predicates Join predicates, each of which must have its
+	 *                   attributes in two different relations
+	 * @param order Attributes the output must be sorted on, most significant
+	 *              first, or an empty list if it may be in any order
+	 */
+	public JoinGraph(List<Operator> relations, List<Predicate> predicates, List<Attribute> order) {
+		if (relations.size() > MAX_RELATIONS) {
+			throw new IllegalArgumentException("Cannot build a join graph over " + relations.size() + " relations");
+		}
+		this.relations = new ArrayList<Operator>(relations);
+		this.predicates = new ArrayList<Predicate>(predicates);
+		this.order = new ArrayList<Attribute>(order);
+		this.interesting = new HashSet<Attribute>(order);
+		this.lefts = new int[predicates.size()];
+		this.rights = new int[predicates.size()];
+		this.neighbours = new long[relations.size()];
+		this.factory = new PlanFactory();
+
+		for (int k = 0; k < predicates.size(); k++) {
+			Predicate p = predicates.get(k);
+			this.lefts[k] = indexOf(p.getLeftAttribute());
+			this.rights[k] = indexOf(p.getRightAttribute());
+
+			if (this.lefts[k] < 0 || this.rights[k] < 0 || this.lefts[k] == this.rights[k]) {
+				throw new IllegalArgumentException("Predicate " + p + " does not join two relations");
+			}
+			this.neighbours[this.lefts[k]] |= 1L << this.rights[k];
+			this.neighbours[this.rights[k]] |= 1L << this.lefts[k];
+			this.interesting.add(p.getLeftAttribute());
+			this.interesting.add(p.getRightAttribute());
+		}
+	}
+
+	/**
+	 * Return the number of relations in the graph
+	 * @return the number of relations
+	 */
+	public int size() {
+		return this.relations.size();
+	}
+
+	/**
+	 * Return the set containing every relation in the graph
+	 * @return the set of all relations
+	 */
+	public long all() {
+		return size() == 64 ? -1L : (1L << size()) - 1;
+	}
+
+	/**
+	 * Return the optimised operator for the i-th relation
+	 * @param i
+	 * @return the operator for the relation
+	 */
+	public Operator getRelation(int i) {
+		return this.relations.get(i);
+	}
+
+	/**
+	 * Return the join predicates, the edges of the graph
+	 * @return the predicates
+	 */
+	public List<Predicate> getPredicates() {
+		return this.predicates;
+	}
+
+	/**
+	 * Return the order in which the output is required
+	 * @return the attributes the output must be sorted on, or an empty list
+	 */
+	public List<Attribute> getOrder() {
+		return this.order;
+	}
+
+	/**
+	 * Return the attributes on which an order or partitioning of a plan
+	 * may make a plan above it cheaper: those of the join predicates and
+	 * of the required order.
+	 * @return the interesting attributes
+	 */
+	public Set<Attribute> getInterestingAttributes() {
+		return this.interesting;
+	}
+
+	/**
+	 * Return the relations which are adjacent to a set of relations but
+	 * are not in the set itself.
+	 * @param set
+	 * @return the neighbourhood of the set
+	 */
+	public long neighbours(long set) {
+		long result = 0;
+		for (long rest = set; rest != 0; rest &= rest - 1) {
+			result |= this.neighbours[Long.numberOfTrailingZeros(rest)];
+		}
+		return result & ~set;
+	}
+
+	/**
+	 * Return true if at least one predicate joins the two sets of relations.
+	 * @param left
+	 * @param right
+	 * @return true if the sets are connected
+	 */
+	public boolean isConnected(long left, long right) {
+		return (neighbours(left) & right) != 0;
+	}
+
+	/**
+	 * Return true if the predicates connect every relation in the set.
+	 * @param set
+	 * @return true if the set induces a connected subgraph
+	 */
+	public boolean isConnected(long set) {
+		if (set == 0) {
+			return false;
+		}
+		long reached = Long.lowestOneBit(set);
+		long frontier = reached;
+		while (frontier != 0) {
+			frontier = neighbours(reached) & set;
+			reached |= frontier;
+		}
+		return reached == set;
+	}
+
+	/**
+	 * Split a set of relations into the connected components of the
+	 * subgraph it induces.
+	 * @param set
+	 * @return the components, in order of their lowest relation
+	 */
+	public List<Long> components(long set) {
+		List<Long> components = new ArrayList<Long>();
+		long rest = set;
+		while (rest != 0) {
+			long component = Long.lowestOneBit(rest);
+			long frontier = component;
+			while (frontier != 0) {
+				frontier = neighbours(component) & rest;
+				component |= frontier;
+			}
+			components.add(component);
+			rest &= ~component;
+		}
+		return components;
+	}
+
+	/**
+	 * Return the predicates which join two disjoint sets of relations, each
+	 * oriented so that its left attribute belongs to the left set.
+	 * @param left
+	 * @param right
+	 * @return the joining predicates
+	 */
+	public List<Predicate> getPredicates(long left, long right) {
+		List<Predicate> result = new ArrayList<Predicate>();
+		for (int k = 0; k < this.predicates.size(); k++) {
+			long l = 1L << this.lefts[k];
+			long r = 1L << this.rights[k];
+			if ((l & left) != 0 && (r & right) != 0) {
+				result.add(this.predicates.get(k));
+			} else if ((r & left) != 0 && (l & right) != 0) {
+				Predicate p = this.predicates.get(k);
+				result.add(new Predicate(p.getRightAttribute(), p.getLeftAttribute()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Join the plans for two disjoint sets of relations using every
+	 * predicate between the sets. The most selective predicate, whose join
+	 * is estimated to produce the fewest tuples, becomes the join predicate
+	 * and the rest are applied as selections over the join, except those
+	 * implied by the predicates already applied within and between the
+	 * sets, which would otherwise be counted twice. If there is no
+	 * predicate between the sets, a product is used instead.
+	 *
+	 * @param left Plan for the left set
+	 * @param leftSet
+	 * @param right Plan for the right set
+	 * @param rightSet
+	 * @param estimator Estimator used to estimate the new operators
+	 * @return the estimated plan for the union of the sets
+	 */
+	public Operator join(Operator left, long leftSet, Operator right, long rightSet, Estimator estimator) {
+		List<Predicate> predicates = getPredicates(leftSet, rightSet);
+		Operator output;
+
+		if (predicates.isEmpty()) {
+			output = this.factory.product(left, right);
+			estimator.visit((Product) output);
+			return output;
+		}
+
+		int best = 0;
+		output = null;
+		for (int i = 0; i < predicates.size(); i++) {
+			Operator join = this.factory.join(left, right, predicates.get(i));
+			estimator.visit((Join) join);
+			if (output == null || join.getOutput().getTupleCount() < output.getOutput().getTupleCount()) {
+				output = join;
+				best = i;
+			}
+		}
+
+		if (predicates.size() > 1) {
+			EquivalenceClasses applied = new EquivalenceClasses(getPredicates(leftSet));
+			for (Predicate p : getPredicates(rightSet)) {
+				applied.add(p);
+			}
+			applied.add(predicates.get(best));
+
+			for (int i = 0; i < predicates.size(); i++) {
+				if (i != best && applied.add(predicates.get(i))) {
+					output = this.factory.select(output, predicates.get(i));
+					estimator.visit((Select) output);
+				}
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Return the predicates which have both of their attributes in a set of
+	 * relations.
+	 * @param set
+	 * @return the predicates within the set
+	 */
+	public List<Predicate> getPredicates(long set) {
+		List<Predicate> result = new ArrayList<Predicate>();
+		for (int k = 0; k < this.predicates.size(); k++) {
+			if ((set & (1L << this.lefts[k])) != 0 && (set & (1L << this.rights[k])) != 0) {
+				result.add(this.predicates.get(k));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find the relation whose output contains the attribute.
+	 * @return The index of the relation, or -1 if there is none
+	 */
+	private int indexOf(Attribute attr) {
+		for (int i = 0; i < this.relations.size(); i++) {
+			if (this.relations.get(i).getOutput().contains(attr)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
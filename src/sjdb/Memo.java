@@ -0,0 +1,155 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * This class is the memo of the MemoOptimiser. It holds every group of
+ * equivalent expressions found so far, and makes sure that each group and
+ * each expression is only created once, however many times a rule derives
+ * it.
+ */
+public class Memo {
+	private HashMap<String, Group> groups;
+	private HashMap<String, GroupExpression> expressions;
+	private List<GroupExpression> allExpressions;
+
+	public Memo() {
+		this.groups = new HashMap<String, Group>();
+		this.expressions = new HashMap<String, GroupExpression>();
+		this.allExpressions = new ArrayList<GroupExpression>();
+	}
+
+	/**
+	 * Copy a plan into the memo, creating an expression for each of its
+	 * operators.
+	 * @param plan
+	 * @return the group containing the root of the plan
+	 */
+	public Group copyIn(Operator plan) {
+		if (plan instanceof Scan) {
+			return insert(GroupExpression.scan((NamedRelation) ((Scan) plan).getRelation()));
+		} else if (plan instanceof Select) {
+			Select select = (Select) plan;
+			return insert(GroupExpression.select(copyIn(select.getInput()), select.getPredicate()));
+		} else if (plan instanceof Project) {
+			Project project = (Project) plan;
+			return insert(GroupExpression.project(copyIn(project.getInput()), project.getAttributes()));
+		} else if (plan instanceof Join) {
+			Join join = (Join) plan;
+			return insert(GroupExpression.join(copyIn(join.getLeft()), copyIn(join.getRight()), join.getPredicate()));
+		} else if (plan instanceof Product) {
+			Product product = (Product) plan;
+			return insert(GroupExpression.product(copyIn(product.getLeft()), copyIn(product.getRight())));
+		}
+		throw new IllegalArgumentException("Unknown operator " + plan);
+	}
+
+	/**
+	 * Add an expression to the memo. The expression is placed in the group
+	 * with the same logical properties, which is created if it does not
+	 * exist yet. A select of a predicate which has already been applied, or
+	 * a project which does not remove any attributes, is the same as its
+	 * input so is not added.
+	 *
+	 * @param expr
+	 * @return the group containing the expression
+	 */
+	public Group insert(GroupExpression expr) {
+		Set<String> relations = new TreeSet<String>();
+		Set<String> predicates = new TreeSet<String>();
+		List<Attribute> attributes = new ArrayList<Attribute>();
+
+		for (int i = 0; i < expr.getInputCount(); i++) {
+			relations.addAll(expr.getInput(i).getRelations());
+			predicates.addAll(expr.getInput(i).getPredicates());
+			attributes.addAll(expr.getInput(i).getAttributes());
+		}
+
+		switch (expr.getKind()) {
+			case SCAN:
+				relations.add(expr.getRelation().toString());
+				attributes.addAll(expr.getRelation().getAttributes());
+				break;
+			case SELECT:
+				if (!predicates.add(normalise(expr.getPredicate()))) {
+					return expr.getInput(0);
+				}
+				break;
+			case PROJECT:
+				if (new HashSet<Attribute>(expr.getAttributes()).equals(new HashSet<Attribute>(attributes))) {
+					return expr.getInput(0);
+				}
+				attributes = expr.getAttributes();
+				break;
+			case JOIN:
+				predicates.add(normalise(expr.getPredicate()));
+				break;
+			default:
+				break;
+		}
+
+		String groupKey = Group.getKey(relations, predicates, attributes);
+		Group group = this.groups.get(groupKey);
+		if (group == null) {
+			group = new Group(this.groups.size(), relations, predicates, attributes);
+			this.groups.put(groupKey, group);
+		}
+
+		String key = expr.getKey();
+		GroupExpression existing = this.expressions.get(key);
+		if (existing != null) {
+			return existing.getGroup();
+		}
+
+		group.addExpression(expr);
+		this.expressions.put(key, expr);
+		this.allExpressions.add(expr);
+		return group;
+	}
+
+	/**
+	 * Return the expressions in the memo, in the order they were added
+	 * @return the expressions
+	 */
+	public List<GroupExpression> getExpressions() {
+		return this.allExpressions;
+	}
+
+	/**
+	 * Return the number of expressions in the memo
+	 * @return the number of expressions
+	 */
+	public int getExpressionCount() {
+		return this.allExpressions.size();
+	}
+
+	/**
+	 * Return the number of groups in the memo
+	 * @return the number of groups
+	 */
+	public int getGroupCount() {
+		return this.groups.size();
+	}
+
+	/**
+	 * Normalise a predicate so that attr=attr and its reverse compare equal,
+	 * and so that a parameter is identified by its number, not its value.
+	 * @param p
+	 * @return the normalised predicate
+	 */
+	public static String normalise(Predicate p) {
+		if (p.isParameter()) {
+			return p.getLeftAttribute().getName() + "=?" + p.getParameter();
+		} else if (p.equalsValue()) {
+			return p.toString();
+		}
+		String left = p.getLeftAttribute().getName();
+		String right = p.getRightAttribute().getName();
+		return left.compareTo(right) < 0 ? left + "=" + right : right + "=" + left;
+	}
+}
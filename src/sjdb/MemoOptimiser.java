@@ -0,0 +1,182 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule-driven optimiser in the style of Volcano/Cascades. Rather than
+ * rewriting the plan by hand-coded recursion, the canonical plan is copied
+ * into a memo of groups of equivalent expressions, and transformation rules
+ * (select pushdown, project pushdown, join commutativity and associativity)
+ * are applied to every expression in the memo until no rule derives a new
+ * expression. The memo never holds the same expression twice, which bounds
+ * the work done and means that each subplan is only derived once.
+ *
+ * Each logical expression is then implemented by the corresponding
+ * operator, and the cheapest plan for each group is found once using the
+ * Estimator and shared by every expression that uses the group.
+ *
+ * The cost of a plan is the sum of the costs of its operators under the
+ * cost model, so projects are pushed down wherever the narrower
+ * intermediate results they make save more than the pass over their input
+ * costs.
+ */
+public class MemoOptimiser {
+
+	/**
+	 * The default limit on the number of expressions in the memo.
+	 */
+	public static final int DEFAULT_MAX_EXPRESSIONS = 20000;
+
+	private Estimator estimator;
+	private CostModel costModel;
+	private List<Rule> rules;
+	private int maxExpressions;
+	private Memo memo;
+
+	/**
+	 * Create a new optimiser with the default rules and cost model.
+	 * @param catalogue Catalogue whose page size the cost model uses.
+	 */
+	public MemoOptimiser(Catalogue catalogue) {
+		this(catalogue, DEFAULT_MAX_EXPRESSIONS);
+	}
+
+	/**
+	 * Create a new optimiser with the default rules and cost model.
+	 * @param catalogue Catalogue whose page size the cost model uses.
+	 * @param maxExpressions Limit on the number of expressions in the memo;
+	 *                       once it is reached no more rules are applied.
+	 */
+	public MemoOptimiser(Catalogue catalogue, int maxExpressions) {
+		this(new DefaultCostModel(catalogue), maxExpressions);
+	}
+
+	/**
+	 * Create a new optimiser with the default rules.
+	 * @param costModel Cost model used to cost the plans.
+	 * @param maxExpressions Limit on the number of expressions in the memo;
+	 *                       once it is reached no more rules are applied.
+	 */
+	public MemoOptimiser(CostModel costModel, int maxExpressions) {
+		this.estimator = new Estimator();
+		this.costModel = costModel;
+		this.maxExpressions = maxExpressions;
+		this.rules = new ArrayList<Rule>();
+		this.rules.add(new SelectPushdownRule());
+		this.rules.add(new ProjectPushdownRule());
+		this.rules.add(new JoinCommutativityRule());
+		this.rules.add(new JoinAssociativityRule());
+	}
+
+	/**
+	 * Optimise a plan.
+	 * @param plan The plan to be optimised.
+	 * @return The cheapest equivalent plan found.
+	 */
+	public Operator optimise(Operator plan) {
+		this.memo = new Memo();
+		Group root = this.memo.copyIn(plan);
+		explore();
+		return getWinner(root);
+	}
+
+	/**
+	 * Return the memo used by the last call to optimise, for inspection.
+	 * @return the memo
+	 */
+	public Memo getMemo() {
+		return this.memo;
+	}
+
+	/**
+	 * Apply every rule to every expression in the memo, including those
+	 * added while doing so, until a whole pass adds no new expressions or
+	 * the memo is full. An expression is explored again on a later pass
+	 * only if its input groups have gained expressions since.
+	 */
+	private void explore() {
+		int count;
+		do {
+			count = this.memo.getExpressionCount();
+			for (int i = 0; i < this.memo.getExpressionCount() && !isFull(); i++) {
+				GroupExpression expr = this.memo.getExpressions().get(i);
+				if (expr.isExplored()) {
+					continue;
+				}
+				expr.setExplored();
+				for (Rule rule : this.rules) {
+					rule.apply(expr, this.memo);
+				}
+			}
+		} while (this.memo.getExpressionCount() != count && !isFull());
+	}
+
+	private boolean isFull() {
+		return this.memo.getExpressionCount() >= this.maxExpressions;
+	}
+
+	/**
+	 * Find the cheapest plan for a group, implementing each expression in
+	 * the group with the winning plans of its input groups.
+	 * @param group
+	 * @return the winning plan
+	 */
+	private Operator getWinner(Group group) {
+		if (group.getWinner() != null) {
+			return group.getWinner();
+		}
+
+		Operator best = null;
+		double bestCost = 0;
+
+		for (GroupExpression expr : group.getExpressions()) {
+			Operator plan = implement(expr);
+			double cost = this.costModel.getCost(plan);
+			for (int i = 0; i < expr.getInputCount(); i++) {
+				cost += expr.getInput(i).getCost();
+			}
+
+			if (best == null || cost < bestCost) {
+				best = plan;
+				bestCost = cost;
+			}
+		}
+
+		group.setWinner(best, bestCost);
+		return best;
+	}
+
+	/**
+	 * Build and estimate the operator for a logical expression.
+	 * @param expr
+	 * @return the estimated operator
+	 */
+	private Operator implement(GroupExpression expr) {
+		Operator output;
+
+		switch (expr.getKind()) {
+			case SCAN:
+				output = new Scan(expr.getRelation());
+				this.estimator.visit((Scan) output);
+				break;
+			case SELECT:
+				output = new Select(getWinner(expr.getInput(0)), expr.getPredicate());
+				this.estimator.visit((Select) output);
+				break;
+			case PROJECT:
+				output = new Project(getWinner(expr.getInput(0)), expr.getAttributes());
+				this.estimator.visit((Project) output);
+				break;
+			case PRODUCT:
+				output = new Product(getWinner(expr.getInput(0)), getWinner(expr.getInput(1)));
+				this.estimator.visit((Product) output);
+				break;
+			default:
+				output = new Join(getWinner(expr.getInput(0)), getWinner(expr.getInput(1)), expr.getPredicate());
+				this.estimator.visit((Join) output);
+				break;
+		}
+		return output;
+	}
+}
@@ -3,8 +3,21 @@
  */
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
- * This class represents a named relation which is fed into a query plan
+ * This class represents a named relation which is fed into a query plan.
+ * A named relation may have indexes on some of its attributes, which
+ * allow the tuples with a given value of the attribute to be found 
+ * without scanning the whole relation, and may be stored sorted on one of
+ * its attributes. Statistics on groups of correlated attributes are kept
+ * as the column groups of the relation. Only the Catalogue changes a named
+ * relation, and it freezes the relation, with its attributes, when it
+ * publishes it.
  * @author nmg
  */
 public class NamedRelation extends Relation {
@@ -13,14 +26,120 @@ public class NamedRelation extends Relation {
 	 */
 	private String name;
 	
+	/**
+	 * The names of the attributes which are indexed
+	 */
+	private Set<String> indexes;
+	
+	/**
+	 * The attribute the relation is stored sorted on, or null
+	 */
+	private Attribute sortOrder;
+	
+	/**
+	 * The groups of correlated attributes with joint statistics
+	 */
+	private List<ColumnGroup> columnGroups;
+	
 	/**
 	 * Create a new named relation with a given name and tuple count
 	 * @param name The name of the relation
 	 * @param size The tuple count
 	 */
-	public NamedRelation(String name, int size) {
+	public NamedRelation(String name, long size) {
 		super(size);
 		this.name = name;
+		this.indexes = new HashSet<String>();
+		this.columnGroups = new ArrayList<ColumnGroup>();
+	}
+	
+	/**
+	 * Create a copy of a named relation which can be changed without
+	 * changing the original
+	 * @param relation The relation to copy
+	 */
+	public NamedRelation(NamedRelation relation) {
+		super(relation.getTupleCount());
+		this.name = relation.name;
+		for (Attribute attr : relation.getAttributes()) {
+			addAttribute(attr);
+		}
+		this.indexes = new HashSet<String>(relation.indexes);
+		this.sortOrder = relation.sortOrder;
+		this.columnGroups = new ArrayList<ColumnGroup>(relation.columnGroups);
+	}
+	
+	/**
+	 * Return the name of this relation
+	 * @return
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
+	/**
+	 * Record that an attribute of this relation is indexed
+	 * @param attribute
+	 */
+	protected void addIndex(Attribute attribute) {
+		checkUnfrozen();
+		this.indexes.add(attribute.getName());
+	}
+	
+	/**
+	 * Return true if an attribute of this relation is indexed
+	 * @param attribute
+	 * @return
+	 */
+	public boolean hasIndex(Attribute attribute) {
+		return this.indexes.contains(attribute.getName());
+	}
+	
+	/**
+	 * Record that this relation is stored sorted on an attribute
+	 * @param attribute
+	 */
+	protected void setSortOrder(Attribute attribute) {
+		checkUnfrozen();
+		this.sortOrder = attribute;
+	}
+	
+	/**
+	 * Return the attribute this relation is stored sorted on, or null if
+	 * it is not stored in any order
+	 * @return
+	 */
+	public Attribute getSortOrder() {
+		return this.sortOrder;
+	}
+
+	/**
+	 * Add a group of correlated attributes of this relation
+	 * @param group
+	 */
+	protected void addColumnGroup(ColumnGroup group) {
+		checkUnfrozen();
+		this.columnGroups.add(group);
+	}
+	
+	/**
+	 * Return the groups of correlated attributes of this relation
+	 * @return
+	 */
+	public List<ColumnGroup> getColumnGroups() {
+		return this.columnGroups;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Relation#freeze()
+	 */
+	@Override
+	protected void freeze() {
+		super.freeze();
+		this.columnGroups = Collections.unmodifiableList(this.columnGroups);
+		for (Attribute attr : getAttributes()) {
+			attr.freeze();
+		}
 	}
 
 	/* (non-Javadoc)
@@ -0,0 +1,55 @@
+package sjdb;
+
+/**
+ * This class represents a block nested-loop join, which compares every
+ * tuple of its left input with every tuple of its right input. As much of
+ * the right input as fits is kept in memory; if it does not all fit, it is
+ * written to disk and read again for each block of the left input.
+ */
+public class NestedLoopJoin extends PhysicalJoin {
+
+	/**
+	 * Create a new nested-loop join operator.
+	 * @param left Left child operator, the outer loop
+	 * @param right Right child operator, the inner loop
+	 * @param predicate Join predicate
+	 */
+	public NestedLoopJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right, predicate);
+	}
+
+	public String getAlgorithm() {
+		return "NESTED LOOP JOIN";
+	}
+
+	public long getPageCount(int pageSize, long memory) {
+		long left = getPages(getLeft(), pageSize);
+		long right = getPages(getRight(), pageSize);
+		if (right <= memory) {
+			return 0;
+		}
+		long blocks = (left + memory - 1) / memory;
+		return Cardinality.add(right, Cardinality.multiply(blocks, right));
+	}
+
+	public double getTupleCount() {
+		return (double) getLeft().getOutput().getTupleCount() * getRight().getOutput().getTupleCount()
+				+ getOutput().getTupleCount();
+	}
+
+	public long getMemory(int pageSize, long memory) {
+		return Math.max(1, Math.min(memory, getPages(getRight(), pageSize)));
+	}
+
+	/**
+	 * The right input is read a block at a time, so the output is in no
+	 * particular order.
+	 */
+	public PhysicalProperties getProperties(int pageSize, long memory) {
+		return PhysicalProperties.NONE;
+	}
+
+	public PhysicalJoin copy(Operator left, Operator right) {
+		return new NestedLoopJoin(left, right, getPredicate());
+	}
+}
@@ -3,13 +3,21 @@
  */
 package sjdb;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.Iterator;
 
 /**
  * This abstract class represents an operator in a query, and
  * is subclassed by UnaryOperator and BinaryOperator.
+ * 
+ * The inputs of an operator are fixed when it is created, so its
+ * PlanSignature is worked out once, when it is first asked for, from those
+ * of its inputs. Operators with equal signatures compute the same relation;
+ * a PlanFactory uses them to share a single operator between every plan
+ * which contains the same subplan. The output of an operator is set once,
+ * by the Estimator, and never changes afterwards, so an operator may be
+ * shared between threads and caches once it has been estimated.
  * @author nmg
  *
  */
@@ -18,33 +26,29 @@ public abstract class Operator {
 	 * The list of child operators that feed their outputs to
 	 * this operator.
 	 */
-	protected ArrayList<Operator> inputs;
+	private final List<Operator> inputs;
 	/**
 	 * The relation produced by this operator as output.
 	 */
-	protected Relation output;
+	private volatile Relation output;
 	
-	public Operator() {
-		this.inputs = new ArrayList<Operator>();
-	}
+	private volatile PlanSignature signature;
 	
 	/**
-	 * Return an arraylist containing the child operators of this
-	 * operator.
-	 * @return Child operators
+	 * Create a new operator.
+	 * @param inputs Child operators
 	 */
-	public List<Operator> getInputs() {
-		List<Operator> inputs = new ArrayList<Operator>();
-		inputs.addAll(this.inputs);
-		return inputs;
+	protected Operator(Operator... inputs) {
+		this.inputs = Collections.unmodifiableList(Arrays.asList(inputs.clone()));
 	}
 	
 	/**
-	 * Add a child operator to this operator
-	 * @param op Child operator
+	 * Return an unmodifiable list containing the child operators of this
+	 * operator.
+	 * @return Child operators
 	 */
-	protected void addOperator(Operator op) {
-		this.inputs.add(op);
+	public List<Operator> getInputs() {
+		return this.inputs;
 	}
 	
 	/**
@@ -56,11 +60,40 @@ public abstract class Operator {
 	}
 	
 	/**
-	 * Set the relation produced by this operator as output.
+	 * Set the relation produced by this operator as output, unless it has
+	 * already been set.
 	 * @param reln Output relation
+	 * @return the output of this operator, which is the one set first
+	 */
+	protected synchronized Relation setOutput(Relation reln) {
+		if (this.output == null) {
+			this.output = reln;
+		}
+		return this.output;
+	}
+	
+	/**
+	 * Return the signature of the subplan below and including this operator.
+	 * @return Signature
+	 */
+	public PlanSignature getSignature() {
+		PlanSignature signature = this.signature;
+		if (signature == null) {
+			PlanSignature left = this.inputs.size() > 0 ? this.inputs.get(0).getSignature() : null;
+			PlanSignature right = this.inputs.size() > 1 ? this.inputs.get(1).getSignature() : null;
+			signature = new PlanSignature(getClass(), getDetail(), left, right);
+			this.signature = signature;
+		}
+		return signature;
+	}
+	
+	/**
+	 * Return the details of this operator which its output depends on
+	 * besides its inputs, which are part of its signature.
+	 * @return Details, compared with equals(), or null if there are none
 	 */
-	public void setOutput(Relation reln) {
-		this.output = reln;
+	protected Object getDetail() {
+		return null;
 	}
 	
 	/**
@@ -68,9 +101,8 @@ public abstract class Operator {
 	 * @param visitor Visitor to be accepted
 	 */
 	public void accept(PlanVisitor visitor) {
-		Iterator<Operator> iter = this.inputs.iterator();
-		while (iter.hasNext()){
-			iter.next().accept(visitor);
+		for (Operator input : this.inputs) {
+			input.accept(visitor);
 		}
 	}
 }
@@ -0,0 +1,119 @@
+package sjdb;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class bounds the work done by a join enumerator. A budget may limit
+ * the time spent optimising a query, the number of candidate plans that are
+ * costed, or both, and may be cancelled at any time from another thread.
+ * Once the budget is exhausted the enumerator stops and returns the best
+ * complete plan it has found, if any.
+ *
+ * An enumerator which stops before it has considered every plan it would
+ * otherwise have considered records that its search was truncated, so that
+ * a plan is only treated as cut short if the search really was, and not
+ * just because the budget ran out after it finished. A charge which the
+ * budget refuses records this itself, as the plan charged for is never
+ * costed.
+ *
+ * The time limit runs from the creation of the budget, so a new budget
+ * should be created for each query.
+ */
+public class OptimisationBudget {
+	private long deadline;
+	private long maxPlans;
+	private AtomicLong plans;
+	private volatile boolean cancelled;
+	private volatile boolean exhausted;
+	private volatile boolean truncated;
+
+	/**
+	 * Create a new budget.
+	 * @param timeLimit Time in milliseconds the optimiser may spend, or 0
+	 *                  for no limit
+	 * @param maxPlans Number of candidate plans the optimiser may cost, or 0
+	 *                 for no limit
+	 */
+	public OptimisationBudget(long timeLimit, long maxPlans) {
+		this.deadline = timeLimit > 0 ? System.nanoTime() + timeLimit * 1000000 : 0;
+		this.maxPlans = maxPlans > 0 ? maxPlans : Long.MAX_VALUE;
+		this.plans = new AtomicLong();
+	}
+
+	/**
+	 * Create a budget with no limits, which is only exhausted if it is
+	 * cancelled.
+	 * @return the budget
+	 */
+	public static OptimisationBudget unlimited() {
+		return new OptimisationBudget(0, 0);
+	}
+
+	/**
+	 * Stop the optimisation using this budget as soon as possible.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * Charge the budget for costing one more candidate plan.
+	 * @return true if the plan may be costed, or false if the budget is
+	 *         exhausted
+	 */
+	public boolean charge() {
+		if (isExhausted()) {
+			this.truncated = true;
+			return false;
+		}
+		if (this.plans.incrementAndGet() > this.maxPlans) {
+			this.exhausted = true;
+			this.truncated = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Return true if the budget has run out or been cancelled, in which
+	 * case the optimisation was cut short.
+	 * @return true if the budget is exhausted
+	 */
+	public boolean isExhausted() {
+		if (!this.exhausted && (this.cancelled || (this.deadline != 0 && System.nanoTime() - this.deadline > 0))) {
+			this.exhausted = true;
+		}
+		return this.exhausted;
+	}
+
+	/**
+	 * Record that a search using this budget stopped early because the
+	 * budget was exhausted, leaving plans which it would otherwise have
+	 * considered.
+	 */
+	public void truncate() {
+		this.truncated = true;
+	}
+
+	/**
+	 * Return true if a search using this budget stopped early, so that the
+	 * plan it returned may not be the one it would have found without the
+	 * budget.
+	 * @return true if the search was truncated
+	 */
+	public boolean wasTruncated() {
+		return this.truncated;
+	}
+
+	/**
+	 * Return the number of candidate plans costed so far
+	 * @return the number of plans
+	 */
+	public long getPlansCosted() {
+		return Math.min(this.plans.get(), this.maxPlans);
+	}
+}
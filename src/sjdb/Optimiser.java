@@ -1,7 +1,6 @@
 package sjdb;
 
 import java.util.*;
-import java.util.Map.Entry;
 
 /**
  * A class which attempts to optimise a given query plan.
@@ -29,11 +28,30 @@ public class Optimiser {
      */
     private ArrayList<Predicate> selects, joins;
 
+    /**
+     * The classes of attributes made equal by the join predicates which have
+     * been applied so far, used to drop a join predicate which is implied by
+     * them rather than applying it again.
+     */
+    private EquivalenceClasses applied;
+
     /**
      * An estimator which is used to estimate the cost of each operation.
      */
     private Estimator estimator;
 
+    /**
+     * A factory which creates the candidate joins, so that a candidate which
+     * is built again in a later round is the operator built before.
+     */
+    private PlanFactory factory;
+
+    /**
+     * The cost model used to compare the candidate joins when they are
+     * chosen greedily.
+     */
+    private CostModel costModel;
+
     /**
      * A variable to keep check that the Project operator is present in the
      * query as if not present, it is not require to project meaning the query
@@ -44,10 +62,34 @@ public class Optimiser {
     private boolean addProjections = false;
 
     /**
-     * A list to keep all operators of a relation.
+     * A list to keep all operators of a relation. It holds one operator for
+     * each group of relations not yet joined, which is a few for any query,
+     * and its operators are replaced whenever two are joined or a select is
+     * applied over one, so it is searched in order rather than indexed.
      */
     private ArrayList<Operator> allRelations;
 
+    /**
+     * The strategy used to order the joins of a Product operator. If null,
+     * the joins are chosen greedily by the join which adds least to the
+     * total cost.
+     */
+    private JoinEnumerator enumerator;
+
+    /**
+     * The order in which the output of the query is required, which the
+     * join enumerator may produce rather than sorting the output.
+     */
+    private List<Attribute> order;
+
+    /**
+     * The budget which bounds the work done by the join enumerator, and
+     * whether the enumerator stopped early because the budget ran out, so
+     * that the plan may not be the best one.
+     */
+    private OptimisationBudget budget;
+    private boolean truncated = false;
+
     /**
      * Constructor to initialize all required attributes.
      * @param catalogue Not used but required in constructor to make the
@@ -57,8 +99,68 @@ public class Optimiser {
         this.requiredAttrs = new HashMap<Attribute, Integer>();
         this.selects = new ArrayList<Predicate>();
         this.joins = new ArrayList<Predicate>();
+        this.applied = new EquivalenceClasses();
         this.estimator = new Estimator();
+        this.factory = new PlanFactory();
+        this.costModel = new DefaultCostModel(catalogue);
         this.allRelations = new ArrayList<Operator>();
+        this.order = new ArrayList<Attribute>();
+        this.budget = OptimisationBudget.unlimited();
+    }
+
+    /**
+     * Sets the strategy used to order the joins of the query.
+     *
+     * @param enumerator The join enumerator to be used, or null to choose the
+     *                   joins greedily.
+     */
+    public void setJoinEnumerator(JoinEnumerator enumerator) {
+        this.enumerator = enumerator;
+    }
+
+    /**
+     * Sets the order in which the output of the query is required, so that
+     * the join enumerator may prefer a join order which produces it.
+     *
+     * @param order Attributes the output must be sorted on, most significant
+     *              first, or an empty list if it may be in any order.
+     */
+    public void setOrder(List<Attribute> order) {
+        this.order = order;
+    }
+
+    /**
+     * Sets the cost model used to compare the candidate joins when they are
+     * chosen greedily, including by the fallback when the join enumerator
+     * runs out of budget.
+     *
+     * @param costModel The cost model to be used.
+     */
+    public void setCostModel(CostModel costModel) {
+        this.costModel = costModel;
+    }
+
+    /**
+     * Sets the budget which bounds the work done by the join enumerator. If
+     * the budget runs out, the best complete plan found so far is used, or
+     * the joins are chosen greedily if the enumerator had not found one.
+     *
+     * @param budget The budget for optimising the query.
+     */
+    public void setBudget(OptimisationBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns true if the join enumerator stopped early because it ran out
+     * of budget, so the plan returned may not be the best one it could have
+     * found. A budget which only ran out after the enumerator had finished
+     * does not truncate the optimisation.
+     *
+     * @return true if the optimisation was truncated.
+     */
+    public boolean wasTruncated() {
+        return this.truncated;
     }
 
     /**
@@ -97,7 +199,6 @@ public class Optimiser {
      */
     public Operator optimise(Scan plan) {
         Relation r = plan.getRelation();
-        List<Attribute> attributes = r.getAttributes();
         Operator output = new Scan((NamedRelation) r);
         this.estimator.visit((Scan) output);
 
@@ -106,10 +207,10 @@ public class Optimiser {
         while (iterator.hasNext()) {
             Predicate p = iterator.next();
             Attribute attr = p.getLeftAttribute();
-            if (attributes.contains(attr)) {
+            if (r.contains(attr)) {
 
-                Attribute newAttr = new Attribute(attr);
-                Predicate newPredicate = new Predicate(newAttr, p.getRightValue());
+                Attribute newAttr = new Attribute(r.getAttribute(attr));
+                Predicate newPredicate = p.withAttribute(newAttr);
 
                 output = new Select(output, newPredicate);
                 this.estimator.visit((Select) output);
@@ -132,7 +233,8 @@ public class Optimiser {
      * the Select Operator to the appropriate lists where predicate 'attr=attr'
      * will be added to the joins list and 'attr=val' will be added to the selects
      * lists and these predicates will later on be added with the appropriate
-     * operator respectively.
+     * operator respectively. Once the last Select has been collected, the
+     * predicates implied by those in both lists are derived.
      *
      * @param plan Select operator to be optimised.
      * @return A new optimised operator with the Select operator moved down or
@@ -147,9 +249,82 @@ public class Optimiser {
             this.joins.add(p);
             addRequiredAttribute(p.getRightAttribute());
         }
+        if (!(plan.getInput() instanceof Select)) {
+            deriveImpliedPredicates();
+        }
         return optimise(plan.getInput());
     }
 
+    /**
+     * Derives the predicates implied by the selects and joins lists from the
+     * classes of attributes which the join predicates make equal. A value or
+     * range selected on one attribute of a class is also selected on every
+     * other attribute of the class, so that it is applied at the Scan of each
+     * of their relations, and every pair of attributes in a class is given a
+     * join predicate, so that the joins may be ordered along any of them.
+     */
+    private void deriveImpliedPredicates() {
+        EquivalenceClasses classes = new EquivalenceClasses(this.joins);
+
+        for (Predicate p : new ArrayList<Predicate>(this.selects)) {
+            for (Attribute attr : classes.getEquivalents(p.getLeftAttribute())) {
+                if (!hasSelect(attr, p)) {
+                    this.selects.add(p.withAttribute(attr));
+                    addRequiredAttribute(attr);
+                }
+            }
+        }
+
+        for (Set<Attribute> equivalents : classes.getClasses()) {
+            List<Attribute> attributes = new ArrayList<Attribute>(equivalents);
+            for (int i = 0; i < attributes.size(); i++) {
+                for (int j = i + 1; j < attributes.size(); j++) {
+                    if (!hasJoin(attributes.get(i), attributes.get(j))) {
+                        this.joins.add(new Predicate(attributes.get(i), attributes.get(j)));
+                        addRequiredAttribute(attributes.get(i));
+                        addRequiredAttribute(attributes.get(j));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the selects list already makes the same comparison as a
+     * predicate on an attribute.
+     *
+     * @param attr The attribute to be checked.
+     * @param p The predicate whose value is selected.
+     * @return true if there is a select of the same value on the attribute.
+     */
+    private boolean hasSelect(Attribute attr, Predicate p) {
+        for (Predicate select : this.selects) {
+            if (select.getLeftAttribute().equals(attr) && select.getParameter() == p.getParameter()
+                    && select.getComparison() == p.getComparison() && select.getValues().equals(p.getValues())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the joins list already has a predicate between two
+     * attributes, in either order.
+     *
+     * @param left The first attribute.
+     * @param right The second attribute.
+     * @return true if there is a join predicate between the attributes.
+     */
+    private boolean hasJoin(Attribute left, Attribute right) {
+        for (Predicate join : this.joins) {
+            if ((join.getLeftAttribute().equals(left) && join.getRightAttribute().equals(right))
+                    || (join.getLeftAttribute().equals(right) && join.getRightAttribute().equals(left))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Optimises a Project operator. This method simply keep track of what
      * attributes a required to be projected. New Project Operators are added
@@ -166,6 +341,15 @@ public class Optimiser {
         Operator output = optimise(plan.getInput());
         output = addProjectionsToQuery(output);
         this.addProjections = false;
+
+        // output the attributes in the order the query gives them
+        if (output != null && !output.getOutput().getAttributes().equals(plan.getAttributes())) {
+            if (output instanceof Project) {
+                output = ((Project) output).getInput();
+            }
+            output = new Project(output, plan.getAttributes());
+            this.estimator.visit((Project) output);
+        }
         return output;
     }
 
@@ -187,6 +371,10 @@ public class Optimiser {
      */
     public Operator optimise(Product plan) {
 
+        if (this.enumerator != null) {
+            return enumerateJoins(plan);
+        }
+
         /**
          * The right side of the product operator is always a relation since it is
          * a left deep tree so the right of the Product operator is always a
@@ -210,9 +398,13 @@ public class Optimiser {
             return rightOp;
         }
 
+        applyPredicatesWithin(allRelations);
+
         Iterator<Predicate> allJoins = joins.iterator();
         Operator mostRestrictive = null;
+        double leastCost = 0;
         Predicate selectedPredicate = null;
+        Predicate selectedJoin = null;
         Operator outputLeft = null;
         Operator outputRight = null;
 
@@ -220,7 +412,8 @@ public class Optimiser {
         boolean hasJoin = false;
 
         while (allJoins.hasNext()) {
-            Predicate p = allJoins.next();
+            Predicate join = allJoins.next();
+            Predicate p = join;
 
             Operator left = findOperator(p.getLeftAttribute());
             Operator right = findOperator(p.getRightAttribute());
@@ -237,16 +430,22 @@ public class Optimiser {
 
             hasJoin = true;
 
-            Join testJoin = new Join(left, right, p);
+            Join testJoin = this.factory.join(left, right, p);
             this.estimator.visit(testJoin);
 
             /**
-             * Assign the testJoin to be the mostRestrictive on if it is the first one or if the
-             * testJoin has lesser number of tuples than the mostRestrictive.
+             * Assign the testJoin to be the mostRestrictive one if it is the first one or if it
+             * adds less than the mostRestrictive to the total cost of the plans of all of the
+             * relations, or the same and the testJoin has fewer tuples.
              */
-            if (mostRestrictive == null || testJoin.getOutput().getTupleCount() < mostRestrictive.getOutput().getTupleCount()) {
+            double cost = this.costModel.getTotalCost(testJoin) - this.costModel.getTotalCost(left)
+                    - this.costModel.getTotalCost(right);
+            if (mostRestrictive == null || cost < leastCost || (cost == leastCost
+                    && testJoin.getOutput().getTupleCount() < mostRestrictive.getOutput().getTupleCount())) {
                 mostRestrictive = testJoin;
+                leastCost = cost;
                 selectedPredicate = p;
+                selectedJoin = join;
                 outputLeft = left;
                 outputRight = right;
             }
@@ -264,7 +463,8 @@ public class Optimiser {
         if (hasJoin) {
             removeRequiredAttribute(selectedPredicate.getLeftAttribute());
             removeRequiredAttribute(selectedPredicate.getRightAttribute());
-            joins.remove(selectedPredicate);
+            joins.remove(selectedJoin);
+            applied.add(selectedPredicate);
             mostRestrictive = addProjectionsToQuery(mostRestrictive);
             allRelations.remove(outputLeft);
             allRelations.remove(outputRight);
@@ -273,6 +473,13 @@ public class Optimiser {
             }
             allRelations.add(mostRestrictive);
 
+            /**
+             * The join may have brought both attributes of other predicates
+             * into the same operator, in which case they are applied over it.
+             */
+            applyPredicatesWithin(allRelations);
+            mostRestrictive = allRelations.get(allRelations.size() - 1);
+
         } else {
             outputLeft = getFirstOperator();
             outputRight = getFirstOperator();
@@ -280,7 +487,7 @@ public class Optimiser {
             if (outputRight == null) {
                 return outputLeft;
             }
-            Product product = new Product(outputLeft, outputRight);
+            Product product = this.factory.product(outputLeft, outputRight);
             this.estimator.visit(product);
             mostRestrictive = addProjectionsToQuery(product);
         }
@@ -288,6 +495,173 @@ public class Optimiser {
         return mostRestrictive;
     }
 
+    /**
+     * Optimises a tree of Product operators using the join enumerator. All of
+     * the relations below the Product operators are optimised first, then the
+     * enumerator is given every relation and every join predicate at once to
+     * choose the order of the joins. Project operators are then added between
+     * the joins to remove the attributes which are no longer required.
+     *
+     * @param plan Product operator to be optimised.
+     * @return A new optimised operator with the joins ordered by the join
+     *         enumerator or null if none of the relations are required.
+     */
+    private Operator enumerateJoins(Product plan) {
+        List<Operator> relations = new ArrayList<Operator>();
+        collectRelations(plan, relations);
+        this.allRelations.removeAll(relations);
+
+        if (relations.isEmpty()) {
+            return null;
+        }
+
+        /**
+         * A predicate whose attributes are both in the same relation does
+         * not join anything so it is applied as a Select on the relation.
+         */
+        applyPredicatesWithin(relations);
+
+        List<Predicate> predicates = new ArrayList<Predicate>();
+        Iterator<Predicate> iterator = joins.iterator();
+
+        while (iterator.hasNext()) {
+            Predicate p = iterator.next();
+            Operator left = findOperator(relations, p.getLeftAttribute());
+            Operator right = findOperator(relations, p.getRightAttribute());
+
+            if (left == null || right == null) {
+                continue;
+            }
+            predicates.add(p);
+            removeRequiredAttribute(p.getLeftAttribute());
+            removeRequiredAttribute(p.getRightAttribute());
+            iterator.remove();
+        }
+
+        JoinGraph graph = new JoinGraph(relations, predicates, this.order);
+        Operator output = this.enumerator.enumerate(graph, this.budget);
+        if (output == null) {
+            output = new GreedyJoinEnumerator(this.estimator, this.costModel).enumerate(graph, this.budget);
+        }
+        if (this.budget.wasTruncated()) {
+            this.truncated = true;
+        }
+
+        if (this.addProjections) {
+            output = removeUnrequiredAttributes(output, this.requiredAttrs.keySet(), relations);
+        }
+        return addProjectionsToQuery(output);
+    }
+
+    /**
+     * Applies each join predicate whose attributes are both output by the
+     * same operator in a list as a Select over that operator, replacing it in
+     * the list. A predicate implied by the join predicates already applied
+     * is dropped instead, as it would not remove any tuples.
+     *
+     * @param operators The operators to apply the predicates to.
+     */
+    private void applyPredicatesWithin(List<Operator> operators) {
+        Iterator<Predicate> iterator = joins.iterator();
+
+        while (iterator.hasNext()) {
+            Predicate p = iterator.next();
+            Operator left = findOperator(operators, p.getLeftAttribute());
+            Operator right = findOperator(operators, p.getRightAttribute());
+
+            if (left == null || left != right) {
+                continue;
+            }
+            if (this.applied.add(p)) {
+                Operator select = new Select(left, p);
+                this.estimator.visit((Select) select);
+                operators.set(operators.indexOf(left), select);
+            }
+            removeRequiredAttribute(p.getLeftAttribute());
+            removeRequiredAttribute(p.getRightAttribute());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Optimises each of the relations below a tree of Product operators and
+     * adds those which are required by the query to the list.
+     *
+     * @param plan The operator whose relations are to be optimised.
+     * @param relations The list which the optimised relations are added to.
+     */
+    private void collectRelations(Operator plan, List<Operator> relations) {
+        if (plan instanceof Product) {
+            collectRelations(((Product) plan).getLeft(), relations);
+            collectRelations(((Product) plan).getRight(), relations);
+        } else {
+            Operator output = optimise(plan);
+            if (output != null) {
+                relations.add(output);
+            }
+        }
+    }
+
+    /**
+     * Adds Project operators between the joins of a plan so that each join
+     * only outputs the attributes required by the query or by the joins and
+     * selects above it. The relations at the bottom of the plan have already
+     * been projected so they are left unchanged.
+     *
+     * @param plan The plan to add the Project operators to.
+     * @param required The attributes required above the plan.
+     * @param relations The optimised relations at the bottom of the plan.
+     * @return A new operator which only outputs the required attributes.
+     */
+    private Operator removeUnrequiredAttributes(Operator plan, Set<Attribute> required, List<Operator> relations) {
+        if (relations.contains(plan)) {
+            return plan;
+        }
+
+        Set<Attribute> below = new HashSet<Attribute>(required);
+        Operator output;
+
+        if (plan instanceof Select) {
+            Predicate p = ((Select) plan).getPredicate();
+            below.add(p.getLeftAttribute());
+            if (!p.equalsValue()) {
+                below.add(p.getRightAttribute());
+            }
+            Operator input = removeUnrequiredAttributes(((Select) plan).getInput(), below, relations);
+            output = new Select(input, p);
+            this.estimator.visit((Select) output);
+        } else if (plan instanceof Join) {
+            Predicate p = ((Join) plan).getPredicate();
+            below.add(p.getLeftAttribute());
+            below.add(p.getRightAttribute());
+            Operator left = removeUnrequiredAttributes(((Join) plan).getLeft(), below, relations);
+            Operator right = removeUnrequiredAttributes(((Join) plan).getRight(), below, relations);
+            output = new Join(left, right, p);
+            this.estimator.visit((Join) output);
+        } else if (plan instanceof Product) {
+            Operator left = removeUnrequiredAttributes(((Product) plan).getLeft(), below, relations);
+            Operator right = removeUnrequiredAttributes(((Product) plan).getRight(), below, relations);
+            output = new Product(left, right);
+            this.estimator.visit((Product) output);
+        } else {
+            return plan;
+        }
+
+        List<Attribute> attributes = output.getOutput().getAttributes();
+        List<Attribute> projectedAttr = new ArrayList<Attribute>();
+        for (Attribute attr : attributes) {
+            if (required.contains(attr)) {
+                projectedAttr.add(attr);
+            }
+        }
+
+        if (!projectedAttr.isEmpty() && projectedAttr.size() != attributes.size()) {
+            output = new Project(output, projectedAttr);
+            this.estimator.visit((Project) output);
+        }
+        return output;
+    }
+
     /**
      * Add a count of the attribute in the hashMap containing all of the
      * required attributes.
@@ -325,22 +699,18 @@ public class Optimiser {
      */
     public Operator addProjectionsToQuery(Operator plan) {
         if (this.addProjections) {
-            List<Attribute> attributes = plan.getOutput().getAttributes();
+            Relation output = plan.getOutput();
             List<Attribute> projectedAttr = new ArrayList<Attribute>();
 
-            Iterator<Entry<Attribute, Integer>> iterator = this.requiredAttrs.entrySet().iterator();
-
-            while (iterator.hasNext()) {
-                Entry<Attribute, Integer> pair = iterator.next();
-                Attribute attr = pair.getKey();
-                if (attributes.contains(attr) && !projectedAttr.contains(attr)) {
+            for (Attribute attr : output.getAttributes()) {
+                if (this.requiredAttrs.containsKey(attr)) {
                     projectedAttr.add(attr);
                 }
             }
 
             if (projectedAttr.isEmpty()) {
                 return null;
-            } else if (projectedAttr.size() != attributes.size()) {
+            } else if (projectedAttr.size() != output.getAttributes().size()) {
                 plan = new Project(plan, projectedAttr);
                 this.estimator.visit((Project) plan);
             }
@@ -354,12 +724,27 @@ public class Optimiser {
      * @return The Operator whose results contains the attribute.
      */
     public Operator findOperator(Attribute attr) {
-        Iterator<Operator> relationIterator = allRelations.iterator();
+        return findOperator(allRelations, attr);
+    }
+
+    /**
+     * Finds the operator in a list whose results contains the attribute.
+     * The list is searched in order, as it only holds an operator for each
+     * relation of the query, and the output of each operator finds the
+     * attribute through its own index of its attributes once it has more
+     * than a few; an index of the whole list would have to be rebuilt each
+     * time two of its operators are joined.
+     * @param operators The operators to be searched.
+     * @param attr Attribute whose operator is required.
+     * @return The Operator whose results contains the attribute.
+     */
+    private Operator findOperator(List<Operator> operators, Attribute attr) {
+        Iterator<Operator> relationIterator = operators.iterator();
 
         while (relationIterator.hasNext()) {
             Operator current = relationIterator.next();
 
-            if (current.getOutput().getAttributes().contains(attr)) {
+            if (current.getOutput().contains(attr)) {
                 return current;
             }
         }
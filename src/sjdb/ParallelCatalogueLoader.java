@@ -0,0 +1,407 @@
+package sjdb;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class loads a serialised system catalogue in the text format read
+ * by CatalogueParser, for catalogues too large to parse one line at a time.
+ * The file is mapped into memory and split into chunks at line boundaries,
+ * and the chunks are parsed in parallel. Relation lines, which make up
+ * most of a catalogue, are parsed directly from the bytes of the file, so
+ * that the only strings created are the names of the relations and
+ * attributes. The other lines, which give statistics, are handed to a
+ * CatalogueParser.
+ *
+ * The parsed lines are then added to the catalogue in the order of the
+ * file, and published as a single new version of the catalogue. A line
+ * which cannot be parsed is recorded with its line number and skipped, and
+ * the rest of the file is loaded all the same.
+ */
+public class ParallelCatalogueLoader {
+
+	/**
+	 * The number of malformed lines listed in the message of the exception
+	 * thrown by load().
+	 */
+	private static final int REPORTED_ERRORS = 10;
+
+	private static final int INDEXED = 1;
+	private static final int SORTED = 2;
+
+	private String filename;
+	private Catalogue catalogue;
+	private ForkJoinPool pool;
+	private int chunkCount;
+	private List<String> errors;
+
+	/**
+	 * Create a loader which parses the catalogue in one chunk for each
+	 * thread of the common ForkJoinPool.
+	 * @param filename
+	 * @param catalogue Catalogue the relations and attributes are added to
+	 */
+	public ParallelCatalogueLoader(String filename, Catalogue catalogue) {
+		this(filename, catalogue, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * Create a loader.
+	 * @param filename
+	 * @param catalogue Catalogue the relations and attributes are added to
+	 * @param pool Pool the chunks are parsed in
+	 * @param chunkCount Number of chunks the file is split into
+	 */
+	public ParallelCatalogueLoader(String filename, Catalogue catalogue, ForkJoinPool pool, int chunkCount) {
+		this.filename = filename;
+		this.catalogue = catalogue;
+		this.pool = pool;
+		this.chunkCount = Math.max(1, chunkCount);
+		this.errors = new ArrayList<String>();
+	}
+
+	/**
+	 * Load the catalogue.
+	 * @throws IOException if the file cannot be read
+	 * @throws DatabaseException if any line is malformed, after the other
+	 *                           lines have been loaded
+	 */
+	public void load() throws IOException, DatabaseException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		// split the file into chunks which end at the end of a line
+		final List<Chunk> chunks = new ArrayList<Chunk>();
+		int length = buffer.limit();
+		int start = 0;
+		for (int i = 1; i <= this.chunkCount && start < length; i++) {
+			int end = i == this.chunkCount ? length : Math.max(start + 1, (int) ((long) length * i / this.chunkCount));
+			while (end < length && buffer.get(end - 1) != '\n') {
+				end++;
+			}
+			if (end > start) {
+				chunks.add(new Chunk(buffer, start, end));
+				start = end;
+			}
+		}
+
+		for (Future<Chunk> result : this.pool.invokeAll(chunks)) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while loading " + this.filename, e);
+			} catch (ExecutionException e) {
+				throw new IOException("Failed to load " + this.filename, e.getCause());
+			}
+		}
+
+		this.catalogue.update(new Runnable() {
+			public void run() {
+				merge(chunks);
+			}
+		});
+
+		if (!this.errors.isEmpty()) {
+			StringBuilder message = new StringBuilder(this.errors.size() + " malformed lines in " + this.filename);
+			for (String error : this.errors.subList(0, Math.min(REPORTED_ERRORS, this.errors.size()))) {
+				message.append("\n").append(error);
+			}
+			if (this.errors.size() > REPORTED_ERRORS) {
+				message.append("\n...");
+			}
+			throw new DatabaseException(message.toString());
+		}
+	}
+
+	/**
+	 * Return the malformed lines found by the last call to load(), each
+	 * with its line number
+	 * @return the errors
+	 */
+	public List<String> getErrors() {
+		return Collections.unmodifiableList(this.errors);
+	}
+
+	/**
+	 * Add the lines parsed from each chunk to the catalogue, in the order
+	 * of the file.
+	 */
+	private void merge(List<Chunk> chunks) {
+		CatalogueParser parser = new CatalogueParser(this.catalogue);
+		int firstLine = 0;
+		for (Chunk chunk : chunks) {
+			for (ParsedLine line : chunk.lines) {
+				int lineNumber = firstLine + line.lineNumber;
+				if (line.error != null) {
+					this.errors.add("line " + lineNumber + ": " + line.error);
+					continue;
+				}
+				try {
+					if (line.text != null) {
+						parser.parseLine(line.text);
+					} else {
+						addRelation(line);
+					}
+				} catch (DatabaseException e) {
+					this.errors.add("line " + lineNumber + ": " + e.getMessage());
+				} catch (RuntimeException e) {
+					this.errors.add("line " + lineNumber + ": " + e);
+				}
+			}
+			firstLine += chunk.lineCount;
+		}
+	}
+
+	private void addRelation(ParsedLine line) throws DatabaseException {
+		if (line.relation.isEmpty()) {
+			throw new DatabaseException("missing relation name");
+		}
+		this.catalogue.createRelation(line.relation, line.size);
+		for (int i = 0; i < line.attributes.length; i++) {
+			this.catalogue.createAttribute(line.relation, line.attributes[i], line.values[i], line.widths[i],
+					line.mins[i], line.maxs[i]);
+			if ((line.flags[i] & INDEXED) != 0) {
+				this.catalogue.createIndex(line.relation, line.attributes[i]);
+			}
+			if ((line.flags[i] & SORTED) != 0) {
+				this.catalogue.setSortOrder(line.relation, line.attributes[i]);
+			}
+		}
+	}
+
+	/**
+	 * A line of the catalogue: either a relation with its attributes, the
+	 * text of a line giving statistics, or the reason the line could not be
+	 * parsed.
+	 */
+	private static class ParsedLine {
+		int lineNumber;
+		String text;
+		String error;
+		String relation;
+		long size;
+		String[] attributes;
+		long[] values;
+		int[] widths;
+		double[] mins;
+		double[] maxs;
+		byte[] flags;
+	}
+
+	/**
+	 * A part of the file made up of whole lines, which is parsed
+	 * independently of the others.
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		private ByteBuffer buffer;
+		private int start, end;
+		private List<ParsedLine> lines;
+		private int lineCount;
+
+		Chunk(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+			this.lines = new ArrayList<ParsedLine>();
+		}
+
+		public Chunk call() {
+			int from = this.start;
+			while (from < this.end) {
+				int to = from;
+				while (to < this.end && this.buffer.get(to) != '\n') {
+					to++;
+				}
+				this.lineCount++;
+				int last = to;
+				if (last > from && this.buffer.get(last - 1) == '\r') {
+					last--;
+				}
+				if (last > from) {
+					ParsedLine line = new ParsedLine();
+					line.lineNumber = this.lineCount;
+					try {
+						parseLine(line, from, last);
+					} catch (IllegalArgumentException e) {
+						line.error = e.getMessage();
+					}
+					this.lines.add(line);
+				}
+				from = to + 1;
+			}
+			return this;
+		}
+
+		private void parseLine(ParsedLine line, int from, int to) {
+			int colon = find(':', from, to);
+			if (isStatistics(from, colon)) {
+				line.text = string(from, to);
+				return;
+			}
+			line.relation = string(from, colon);
+			if (colon == to) {
+				throw new IllegalArgumentException("missing tuple count of relation " + line.relation);
+			}
+			int next = find(':', colon + 1, to);
+			line.size = parseLong(colon + 1, next);
+
+			int count = 0;
+			for (int i = next; i < to; i = find(':', i + 1, to)) {
+				count++;
+			}
+			line.attributes = new String[count];
+			line.values = new long[count];
+			line.widths = new int[count];
+			line.mins = new double[count];
+			line.maxs = new double[count];
+			line.flags = new byte[count];
+
+			for (int i = 0; i < count; i++) {
+				int fieldStart = next + 1;
+				next = find(':', fieldStart, to);
+				parseAttribute(line, i, fieldStart, next);
+			}
+		}
+
+		private void parseAttribute(ParsedLine line, int i, int from, int to) {
+			int comma = find(',', from, to);
+			line.attributes[i] = string(from, comma);
+			if (comma == to) {
+				throw new IllegalArgumentException("missing value count of attribute " + line.attributes[i]);
+			}
+			int next = find(',', comma + 1, to);
+			line.values[i] = parseLong(comma + 1, next);
+			line.widths[i] = Attribute.DEFAULT_WIDTH;
+			line.mins[i] = Double.NaN;
+			line.maxs[i] = Double.NaN;
+
+			while (next < to) {
+				int option = next + 1;
+				next = find(',', option, to);
+				if (matches("index", option, next)) {
+					line.flags[i] |= INDEXED;
+				} else if (matches("sorted", option, next)) {
+					line.flags[i] |= SORTED;
+				} else if (startsWith("min=", option, next)) {
+					line.mins[i] = parseDouble(option + 4, next);
+				} else if (startsWith("max=", option, next)) {
+					line.maxs[i] = parseDouble(option + 4, next);
+				} else {
+					line.widths[i] = parseInt(option, next);
+				}
+			}
+		}
+
+		private boolean isStatistics(int from, int to) {
+			return matches("PAGESIZE", from, to) || matches("HISTOGRAM", from, to) || matches("MCV", from, to)
+					|| matches("GROUP", from, to) || matches("SKETCH", from, to);
+		}
+
+		/**
+		 * Return the position of the first occurrence of a character between
+		 * two positions, or the second position if there is none.
+		 */
+		private int find(char c, int from, int to) {
+			while (from < to && this.buffer.get(from) != c) {
+				from++;
+			}
+			return from;
+		}
+
+		private boolean startsWith(String prefix, int from, int to) {
+			if (to - from < prefix.length()) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length(); i++) {
+				if (this.buffer.get(from + i) != prefix.charAt(i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean matches(String word, int from, int to) {
+			return to - from == word.length() && startsWith(word, from, to);
+		}
+
+		/**
+		 * Parse an integer in the forms accepted by Integer.decode().
+		 */
+		private int parseInt(int from, int to) {
+			long value = parseLong(from, to);
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("number out of range: " + string(from, to));
+			}
+			return (int) value;
+		}
+
+		/**
+		 * Parse a long in the forms accepted by Long.decode().
+		 */
+		private long parseLong(int from, int to) {
+			int i = from;
+			boolean negative = false;
+			if (i < to && (this.buffer.get(i) == '-' || this.buffer.get(i) == '+')) {
+				negative = this.buffer.get(i) == '-';
+				i++;
+			}
+			int radix = 10;
+			if (startsWith("0x", i, to) || startsWith("0X", i, to)) {
+				radix = 16;
+				i += 2;
+			} else if (startsWith("#", i, to)) {
+				radix = 16;
+				i++;
+			} else if (startsWith("0", i, to) && to - i > 1) {
+				radix = 8;
+				i++;
+			}
+			if (i == to) {
+				throw new IllegalArgumentException("expected a number but found \"" + string(from, to) + "\"");
+			}
+
+			long value = 0;
+			for (; i < to; i++) {
+				int digit = Character.digit(this.buffer.get(i), radix);
+				if (digit < 0) {
+					throw new IllegalArgumentException("expected a number but found \"" + string(from, to) + "\"");
+				}
+				if (value > (Long.MAX_VALUE - digit) / radix) {
+					throw new IllegalArgumentException("number out of range: " + string(from, to));
+				}
+				value = value * radix + digit;
+			}
+			return negative ? -value : value;
+		}
+
+		private double parseDouble(int from, int to) {
+			try {
+				return Double.parseDouble(string(from, to));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("expected a number but found \"" + string(from, to) + "\"");
+			}
+		}
+
+		private String string(int from, int to) {
+			byte[] bytes = new byte[to - from];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = this.buffer.get(from + i);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+}
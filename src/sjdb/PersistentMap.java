@@ -0,0 +1,192 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is an immutable map from names to values, which is changed by
+ * making a changed copy of it. The entries are held in a trie indexed by
+ * the hash of their names, five bits at each level, and a copy only copies
+ * the nodes on the path to the entry it changes, sharing the rest with the
+ * original. Adding or replacing an entry therefore takes time logarithmic
+ * in the size of the map, however many versions of the map are kept.
+ *
+ * Names whose hashes are equal are kept in a list at the end of their path.
+ *
+ * @param <V> the type of the values
+ */
+public final class PersistentMap<V> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final PersistentMap<Object> EMPTY = new PersistentMap<Object>(new Object[WIDTH], 0);
+
+	/**
+	 * An entry in the trie, and the next entry whose name has the same hash.
+	 */
+	private static final class Entry {
+		private final int hash;
+		private final String key;
+		private final Object value;
+		private final Entry next;
+
+		private Entry(int hash, String key, Object value, Entry next) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+
+		/**
+		 * Return a copy of this list of entries with the value of a name
+		 * replaced, or with the name added if it is not in the list.
+		 */
+		private Entry put(String key, Object value, boolean[] added) {
+			if (this.key.equals(key)) {
+				return new Entry(this.hash, key, value, this.next);
+			}
+			if (this.next == null) {
+				added[0] = true;
+				return new Entry(this.hash, key, value, this);
+			}
+			return new Entry(this.hash, this.key, this.value, this.next.put(key, value, added));
+		}
+	}
+
+	/**
+	 * Each element of a node is null, an Entry or another node.
+	 */
+	private final Object[] root;
+	private final int size;
+
+	private PersistentMap(Object[] root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Return the empty map.
+	 * @return the map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentMap<V> empty() {
+		return (PersistentMap<V>) EMPTY;
+	}
+
+	/**
+	 * Return the number of entries in this map.
+	 * @return the size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Return the value of a name.
+	 * @param key
+	 * @return the value, or null if the name is not in this map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(String key) {
+		int hash = hash(key);
+		Object[] node = this.root;
+		for (int shift = 0; ; shift += BITS) {
+			Object child = node[(hash >>> shift) & MASK];
+			if (child instanceof Object[]) {
+				node = (Object[]) child;
+				continue;
+			}
+			for (Entry entry = (Entry) child; entry != null; entry = entry.next) {
+				if (entry.hash == hash && entry.key.equals(key)) {
+					return (V) entry.value;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Return a copy of this map in which a name has a value, sharing every
+	 * entry but that one with this map.
+	 * @param key
+	 * @param value
+	 * @return the changed map
+	 */
+	public PersistentMap<V> put(String key, V value) {
+		boolean[] added = new boolean[1];
+		Object[] root = put(this.root, 0, hash(key), key, value, added);
+		return new PersistentMap<V>(root, added[0] ? this.size + 1 : this.size);
+	}
+
+	/**
+	 * Return a copy of a node with the value of a name replaced or added.
+	 */
+	private static Object[] put(Object[] node, int shift, int hash, String key, Object value, boolean[] added) {
+		Object[] copy = node.clone();
+		int i = (hash >>> shift) & MASK;
+		Object child = node[i];
+		if (child == null) {
+			copy[i] = new Entry(hash, key, value, null);
+			added[0] = true;
+		} else if (child instanceof Object[]) {
+			copy[i] = put((Object[]) child, shift + BITS, hash, key, value, added);
+		} else if (((Entry) child).hash == hash) {
+			copy[i] = ((Entry) child).put(key, value, added);
+		} else {
+			// the hashes differ in a later level, which there always is, as
+			// the last level starts at bit 30
+			Entry entry = (Entry) child;
+			Object[] split = new Object[WIDTH];
+			split[(entry.hash >>> (shift + BITS)) & MASK] = entry;
+			copy[i] = put(split, shift + BITS, hash, key, value, added);
+		}
+		return copy;
+	}
+
+	/**
+	 * Return the names in this map, in no particular order.
+	 * @return the names
+	 */
+	public Collection<String> keys() {
+		List<String> keys = new ArrayList<String>(this.size);
+		collect(this.root, keys, null);
+		return Collections.unmodifiableList(keys);
+	}
+
+	/**
+	 * Return the values in this map, in no particular order.
+	 * @return the values
+	 */
+	public Collection<V> values() {
+		List<V> values = new ArrayList<V>(this.size);
+		collect(this.root, null, values);
+		return Collections.unmodifiableList(values);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void collect(Object[] node, List<String> keys, List<V> values) {
+		for (Object child : node) {
+			if (child instanceof Object[]) {
+				collect((Object[]) child, keys, values);
+				continue;
+			}
+			for (Entry entry = (Entry) child; entry != null; entry = entry.next) {
+				if (keys != null) {
+					keys.add(entry.key);
+				}
+				if (values != null) {
+					values.add((V) entry.value);
+				}
+			}
+		}
+	}
+
+	private static int hash(String key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
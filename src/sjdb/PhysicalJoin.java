@@ -0,0 +1,122 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This abstract class represents a join operator implemented by a
+ * particular algorithm, and is subclassed by HashJoin, SortMergeJoin,
+ * NestedLoopJoin and IndexNestedLoopJoin. A physical join produces the
+ * same output as the logical join with the same inputs and predicate, so
+ * it is estimated in the same way, but it also gives the pages it reads and
+ * writes, the tuples it processes and the memory it needs, from which a
+ * cost model works out its cost, and the physical properties of its
+ * output.
+ */
+public abstract class PhysicalJoin extends Join {
+
+	/**
+	 * Create a new physical join operator.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 */
+	public PhysicalJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right, predicate);
+	}
+
+	/**
+	 * Return the name of the join algorithm, as shown in the plan
+	 * @return the name of the algorithm
+	 */
+	public abstract String getAlgorithm();
+
+	/**
+	 * Return the number of pages the join reads and writes, besides those
+	 * read by its inputs.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to the join
+	 * @return the number of pages
+	 */
+	public abstract long getPageCount(int pageSize, long memory);
+
+	/**
+	 * Return the number of tuples the join processes.
+	 * @return the number of tuples
+	 */
+	public abstract double getTupleCount();
+
+	/**
+	 * Return the memory the join needs to run without spilling to disk.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to the join
+	 * @return the memory needed, in pages
+	 */
+	public abstract long getMemory(int pageSize, long memory);
+
+	/**
+	 * Return the physical properties of the output of the join, given
+	 * those of its estimated inputs.
+	 * @param pageSize Size of a page in bytes
+	 * @param memory Number of pages of memory available to the join
+	 * @return the properties
+	 */
+	public abstract PhysicalProperties getProperties(int pageSize, long memory);
+
+	/**
+	 * Create a join using the same algorithm and predicate over new inputs.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @return the new join
+	 */
+	public abstract PhysicalJoin copy(Operator left, Operator right);
+
+	/**
+	 * Return a physical join for each algorithm which can implement a
+	 * join of the given inputs. The joins are not estimated.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 * @return the physical joins
+	 */
+	public static List<PhysicalJoin> getAlternatives(Operator left, Operator right, Predicate predicate) {
+		List<PhysicalJoin> joins = new ArrayList<PhysicalJoin>();
+		joins.add(new HashJoin(left, right, predicate));
+		joins.add(new SortMergeJoin(left, right, predicate));
+		joins.add(new NestedLoopJoin(left, right, predicate));
+		if (IndexNestedLoopJoin.canUse(right, predicate)) {
+			joins.add(new IndexNestedLoopJoin(left, right, predicate));
+		}
+		return joins;
+	}
+
+	/**
+	 * Return the number of pages of the given size needed to store the
+	 * output of an operator.
+	 */
+	protected static long getPages(Operator op, int pageSize) {
+		return op.getOutput().getPageCount(pageSize);
+	}
+
+	/**
+	 * Return the join key: the attributes of the predicate, which are equal
+	 * in every output tuple.
+	 */
+	protected Set<Attribute> getKey() {
+		Set<Attribute> key = new HashSet<Attribute>();
+		key.add(getPredicate().getLeftAttribute());
+		key.add(getPredicate().getRightAttribute());
+		return key;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.Join#toString()
+	 */
+	public String toString() {
+		return "(" + this.getLeft().toString() + ") " + getAlgorithm() + " [" +
+				this.getPredicate().toString() +
+				"] (" + this.getRight().toString() + ")";
+	}
+}
@@ -0,0 +1,221 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class turns an optimised logical plan into a physical plan by
+ * choosing the algorithm for each join, and adds a sort at the top of the
+ * plan if its output is required in an order that the plan does not
+ * produce, below a project if the plan produces attributes only so that it
+ * can be sorted on them. The order of the joins is left as the optimiser chose it,
+ * although the inputs of a join may be swapped. The dynamic programming
+ * join enumerators choose the join order by the cost of its physical
+ * plans, keeping the plans whose output has an interesting order in the
+ * same way as this planner (see InterestingPlans), so the planner finds a
+ * physical plan for their join order at least as cheap as the one they
+ * costed it by; the other optimisers cost each logical join as its
+ * cheapest physical join.
+ *
+ * The cheapest algorithm for each join is not always the best choice, as
+ * a more expensive one may produce its output in an order (or with a
+ * partitioning) that makes a join above it or the final sort cheaper. So
+ * for each operator, the planner keeps the cheapest plan for each set of
+ * interesting physical properties its output can have, where an order or
+ * partitioning is interesting if it is on an attribute used by a join
+ * above it or by the required order, and only chooses between them at the
+ * top of the plan.
+ */
+public class PhysicalPlanner {
+
+	/**
+	 * A physical plan for an operator and its total cost.
+	 */
+	private static class Candidate {
+		private Operator plan;
+		private double cost;
+
+		private Candidate(Operator plan, double cost) {
+			this.plan = plan;
+			this.cost = cost;
+		}
+	}
+
+	private CostModel costModel;
+	private Estimator estimator;
+	private Set<Attribute> interesting;
+
+	/**
+	 * Create a new physical planner for the default page size and memory.
+	 * @param costModel Cost model used to choose the join algorithms
+	 */
+	public PhysicalPlanner(CostModel costModel) {
+		this(costModel, new Estimator());
+	}
+
+	/**
+	 * Create a new physical planner.
+	 * @param costModel Cost model used to choose the join algorithms
+	 * @param estimator Estimator used to estimate the physical plans, for
+	 *                  the same page size and memory as the cost model
+	 */
+	public PhysicalPlanner(CostModel costModel, Estimator estimator) {
+		this.costModel = costModel;
+		this.estimator = estimator;
+	}
+
+	/**
+	 * Choose the algorithm for each join in a plan.
+	 * @param plan Logical plan
+	 * @return the estimated physical plan
+	 */
+	public Operator plan(Operator plan) {
+		return plan(plan, new ArrayList<Attribute>());
+	}
+
+	/**
+	 * Choose the algorithm for each join in a plan whose output is required
+	 * in the given order.
+	 * @param plan Logical plan
+	 * @param order Attributes the output must be sorted on, most significant
+	 *              first, or an empty list if it may be in any order
+	 * @return the estimated physical plan
+	 */
+	public Operator plan(Operator plan, List<Attribute> order) {
+		this.interesting = new HashSet<Attribute>(order);
+		collectJoinAttributes(plan);
+
+		Candidate best = null;
+		for (Candidate candidate : getCandidates(plan)) {
+			Operator output = candidate.plan;
+			double cost = candidate.cost;
+			if (!order.isEmpty() && !output.getOutput().getProperties().isSortedOn(order)) {
+				output = new Sort(output, order);
+				this.estimator.visit((Sort) output);
+				cost += this.costModel.getCost(output);
+			}
+			if (best == null || cost < best.cost) {
+				best = new Candidate(output, cost);
+			}
+		}
+
+		this.interesting = null;
+		return best.plan;
+	}
+
+	/**
+	 * Choose the algorithm for each join in a plan whose output is required
+	 * in the given order, and project its output onto the attributes of the
+	 * result once it is in order, leaving out any attributes which the plan
+	 * only produces so that it can be sorted on them.
+	 * @param plan Logical plan
+	 * @param order Attributes the output must be sorted on, most significant
+	 *              first, or an empty list if it may be in any order
+	 * @param attributes Attributes of the result, in order, or an empty list
+	 *                   if the result has every attribute of the plan
+	 * @return the estimated physical plan
+	 */
+	public Operator plan(Operator plan, List<Attribute> order, List<Attribute> attributes) {
+		Operator output = plan(plan, order);
+		if (!attributes.isEmpty() && !output.getOutput().getAttributes().equals(attributes)) {
+			output = new Project(output, attributes);
+			this.estimator.visit((Project) output);
+		}
+		return output;
+	}
+
+	/**
+	 * Add the attributes of the join predicates in a plan to the set of
+	 * interesting attributes.
+	 */
+	private void collectJoinAttributes(Operator plan) {
+		if (plan instanceof Scan) {
+			return;
+		}
+		if (plan instanceof Join) {
+			this.interesting.add(((Join) plan).getPredicate().getLeftAttribute());
+			this.interesting.add(((Join) plan).getPredicate().getRightAttribute());
+		}
+		for (Operator input : plan.getInputs()) {
+			collectJoinAttributes(input);
+		}
+	}
+
+	/**
+	 * Return the cheapest physical plan for an operator for each set of
+	 * interesting properties its output may have.
+	 */
+	private Collection<Candidate> getCandidates(Operator plan) {
+		Map<PhysicalProperties, Candidate> candidates = new LinkedHashMap<PhysicalProperties, Candidate>();
+
+		if (plan instanceof Scan) {
+			this.estimator.visit((Scan) plan);
+			add(candidates, plan, this.costModel.getCost(plan));
+		} else if (plan instanceof Select) {
+			for (Candidate input : getCandidates(((Select) plan).getInput())) {
+				Select output = new Select(input.plan, ((Select) plan).getPredicate());
+				this.estimator.visit(output);
+				add(candidates, output, input.cost + this.costModel.getCost(output));
+			}
+		} else if (plan instanceof Project) {
+			for (Candidate input : getCandidates(((Project) plan).getInput())) {
+				Project output = new Project(input.plan, ((Project) plan).getAttributes());
+				this.estimator.visit(output);
+				add(candidates, output, input.cost + this.costModel.getCost(output));
+			}
+		} else if (plan instanceof Product) {
+			Collection<Candidate> right = getCandidates(((Product) plan).getRight());
+			for (Candidate left : getCandidates(((Product) plan).getLeft())) {
+				for (Candidate r : right) {
+					Product output = new Product(left.plan, r.plan);
+					this.estimator.visit(output);
+					add(candidates, output, left.cost + r.cost + this.costModel.getCost(output));
+				}
+			}
+		} else {
+			Predicate p = ((Join) plan).getPredicate();
+			Predicate reversed = new Predicate(p.getRightAttribute(), p.getLeftAttribute());
+			Collection<Candidate> left = getCandidates(((Join) plan).getLeft());
+			Collection<Candidate> right = getCandidates(((Join) plan).getRight());
+			addJoins(candidates, left, right, p);
+			addJoins(candidates, right, left, reversed);
+		}
+		return candidates.values();
+	}
+
+	/**
+	 * Add each physical join of each pair of input plans. Both orders of
+	 * the inputs are tried, as the algorithms treat their inputs
+	 * differently (a hash join builds on its right input, and an index
+	 * join needs an index on its right input but keeps the order of its
+	 * left input).
+	 */
+	private void addJoins(Map<PhysicalProperties, Candidate> candidates, Collection<Candidate> left,
+			Collection<Candidate> right, Predicate p) {
+		for (Candidate l : left) {
+			for (Candidate r : right) {
+				for (PhysicalJoin output : PhysicalJoin.getAlternatives(l.plan, r.plan, p)) {
+					this.estimator.visit(output);
+					add(candidates, output, l.cost + r.cost + this.costModel.getCost(output));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keep a plan if it is the cheapest found so far with its interesting
+	 * properties.
+	 */
+	private void add(Map<PhysicalProperties, Candidate> candidates, Operator plan, double cost) {
+		PhysicalProperties properties = plan.getOutput().getProperties().restrict(this.interesting);
+		Candidate current = candidates.get(properties);
+		if (current == null || cost < current.cost) {
+			candidates.put(properties, new Candidate(plan, cost));
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class describes the physical properties of the output of an
+ * operator: the order its tuples are produced in, and how they are
+ * partitioned. Unlike the tuple and value counts, these depend on the
+ * algorithms which produce the output rather than on what it contains.
+ *
+ * The sort order is a list of sort keys, most significant first. Each key
+ * is a set of attributes which are known to be equal in every tuple, such
+ * as the two attributes of a join predicate, so the output is sorted on
+ * any one of them. Likewise the output is partitioned on any attribute of
+ * its partitioning key, meaning that all of the tuples with the same value
+ * of the attribute are produced together in the same partition.
+ *
+ * Instances are immutable.
+ */
+public class PhysicalProperties {
+
+	/**
+	 * The properties of an output which is neither sorted nor partitioned.
+	 */
+	public static final PhysicalProperties NONE =
+			new PhysicalProperties(new ArrayList<Set<Attribute>>(), new HashSet<Attribute>());
+
+	private List<Set<Attribute>> order;
+	private Set<Attribute> partitioning;
+
+	private PhysicalProperties(List<Set<Attribute>> order, Set<Attribute> partitioning) {
+		this.order = order;
+		this.partitioning = partitioning;
+	}
+
+	/**
+	 * Return the properties of an output sorted on the given attributes.
+	 * @param attributes
+	 * @return the properties
+	 */
+	public static PhysicalProperties sorted(List<Attribute> attributes) {
+		List<Set<Attribute>> order = new ArrayList<Set<Attribute>>();
+		for (Attribute attr : attributes) {
+			order.add(Collections.singleton(attr));
+		}
+		return new PhysicalProperties(order, new HashSet<Attribute>());
+	}
+
+	/**
+	 * Return the properties of an output sorted on a single key made up of
+	 * attributes which are equal in every tuple.
+	 * @param key
+	 * @return the properties
+	 */
+	public static PhysicalProperties sorted(Set<Attribute> key) {
+		List<Set<Attribute>> order = new ArrayList<Set<Attribute>>();
+		order.add(key);
+		return new PhysicalProperties(order, new HashSet<Attribute>());
+	}
+
+	/**
+	 * Return the properties of an output partitioned on a key made up of
+	 * attributes which are equal in every tuple.
+	 * @param key
+	 * @return the properties
+	 */
+	public static PhysicalProperties partitioned(Set<Attribute> key) {
+		return new PhysicalProperties(new ArrayList<Set<Attribute>>(), key);
+	}
+
+	/**
+	 * Return the sort keys of the output, most significant first
+	 * @return the sort order
+	 */
+	public List<Set<Attribute>> getOrder() {
+		return Collections.unmodifiableList(this.order);
+	}
+
+	/**
+	 * Return the attributes the output is partitioned on
+	 * @return the partitioning key
+	 */
+	public Set<Attribute> getPartitioning() {
+		return Collections.unmodifiableSet(this.partitioning);
+	}
+
+	/**
+	 * Return true if the output is sorted on the given attributes, which is
+	 * the case if its sort order starts with them.
+	 * @param attributes
+	 * @return true if the output is sorted
+	 */
+	public boolean isSortedOn(List<Attribute> attributes) {
+		if (attributes.size() > this.order.size()) {
+			return false;
+		}
+		for (int i = 0; i < attributes.size(); i++) {
+			if (!this.order.get(i).contains(attributes.get(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return true if the output is sorted on the given attribute
+	 * @param attribute
+	 * @return true if the output is sorted
+	 */
+	public boolean isSortedOn(Attribute attribute) {
+		return !this.order.isEmpty() && this.order.get(0).contains(attribute);
+	}
+
+	/**
+	 * Return true if the output is partitioned on the given attribute
+	 * @param attribute
+	 * @return true if the output is partitioned
+	 */
+	public boolean isPartitionedOn(Attribute attribute) {
+		return this.partitioning.contains(attribute);
+	}
+
+	/**
+	 * Return the properties after a select of a predicate of the form
+	 * attr=attr, after which the two attributes are equal so the output is
+	 * sorted or partitioned on either if it was on one.
+	 * @param left
+	 * @param right
+	 * @return the properties
+	 */
+	public PhysicalProperties equate(Attribute left, Attribute right) {
+		List<Set<Attribute>> order = new ArrayList<Set<Attribute>>();
+		for (Set<Attribute> key : this.order) {
+			order.add(equate(key, left, right));
+		}
+		return new PhysicalProperties(order, equate(this.partitioning, left, right));
+	}
+
+	private static Set<Attribute> equate(Set<Attribute> key, Attribute left, Attribute right) {
+		if (!key.contains(left) && !key.contains(right)) {
+			return key;
+		}
+		Set<Attribute> equated = new HashSet<Attribute>(key);
+		equated.add(left);
+		equated.add(right);
+		return equated;
+	}
+
+	/**
+	 * Return the properties restricted to the given attributes. The sort
+	 * order is cut off at the first key which has none of them, and the
+	 * output is no longer partitioned if its key has none of them.
+	 * @param attributes
+	 * @return the properties
+	 */
+	public PhysicalProperties restrict(Set<Attribute> attributes) {
+		List<Set<Attribute>> order = new ArrayList<Set<Attribute>>();
+		for (Set<Attribute> key : this.order) {
+			Set<Attribute> restricted = restrict(key, attributes);
+			if (restricted.isEmpty()) {
+				break;
+			}
+			order.add(restricted);
+		}
+		return new PhysicalProperties(order, restrict(this.partitioning, attributes));
+	}
+
+	private static Set<Attribute> restrict(Set<Attribute> key, Set<Attribute> attributes) {
+		Set<Attribute> restricted = new HashSet<Attribute>(key);
+		restricted.retainAll(attributes);
+		return restricted;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.order.hashCode() * 31 + this.partitioning.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PhysicalProperties)) {
+			return false;
+		}
+		PhysicalProperties rhs = (PhysicalProperties) obj;
+		return this.order.equals(rhs.order) && this.partitioning.equals(rhs.partitioning);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return "ORDER " + this.order + " PARTITION " + this.partitioning;
+	}
+}
@@ -0,0 +1,289 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class caches optimised plans so that repeated queries do not have
+ * to be optimised again. Plans are keyed by a fingerprint of the canonical
+ * query plan in which the order of the relations and of the predicates is
+ * normalised, so queries which only differ in the order of their FROM or
+ * WHERE clauses share a plan.
+ *
+ * The cache holds a bounded number of plans and evicts the least recently
+ * used plan when it is full. Every cached plan was optimised using the
+ * statistics in one version of the catalogue, so the whole cache is cleared
+ * when a newer version is seen, and plans optimised using an older version
+ * are neither cached nor returned.
+ *
+ * If the query is parameterised, plans are cached as templates keyed by
+ * the parameter numbers rather than their values, and a cached template is
+ * bound to the values of the query it is reused for. A template is only
+ * reused if the estimated selectivity of each parameter is close to the
+ * selectivity it was optimised for; otherwise the query is optimised again.
+ */
+public class PlanCache {
+	private Catalogue catalogue;
+	private LinkedHashMap<String, PlanTemplate> plans;
+	private Estimator estimator;
+	private int version;
+	private int hits, misses, evictions, invalidations, reoptimisations;
+
+	/**
+	 * Create a new plan cache.
+	 * @param catalogue Catalogue whose statistics the plans are based on
+	 * @param capacity Maximum number of plans held
+	 */
+	public PlanCache(Catalogue catalogue, final int capacity) {
+		this.catalogue = catalogue;
+		this.estimator = new Estimator();
+		this.version = catalogue.getVersion();
+		this.plans = new LinkedHashMap<String, PlanTemplate>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, PlanTemplate> eldest) {
+				if (size() > capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Return the optimised plan cached for a query, bound to the values of
+	 * its parameters.
+	 * @param plan Canonical plan of the query
+	 * @return the optimised plan, or null if there is none or the cached
+	 *         plan was optimised for parameters of very different selectivity
+	 */
+	public Operator get(Operator plan) {
+		return get(plan, this.catalogue.snapshot());
+	}
+
+	/**
+	 * Return the optimised plan cached for a query, bound to the values of
+	 * its parameters, if it was optimised using the given version of the
+	 * catalogue.
+	 * @param plan Canonical plan of the query
+	 * @param snapshot The version of the catalogue the query is read from
+	 * @return the optimised plan, or null if there is none or the cached
+	 *         plan was optimised for parameters of very different selectivity
+	 */
+	public synchronized Operator get(Operator plan, CatalogueSnapshot snapshot) {
+		validate(snapshot);
+		PlanTemplate template = this.plans.get(fingerprint(plan));
+		if (template == null || snapshot.getVersion() != this.version) {
+			this.misses++;
+			return null;
+		}
+
+		List<Predicate> parameters = getParameters(plan);
+		if (!template.isValidFor(getSelectivities(snapshot, parameters))) {
+			this.misses++;
+			this.reoptimisations++;
+			return null;
+		}
+
+		this.hits++;
+		List<String> values = new ArrayList<String>();
+		for (Predicate p : parameters) {
+			values.add(p.getRightValue());
+		}
+		return template.bind(values);
+	}
+
+	/**
+	 * Cache the optimised plan for a query.
+	 * @param plan Canonical plan of the query
+	 * @param optimised Optimised plan of the query
+	 */
+	public void put(Operator plan, Operator optimised) {
+		put(plan, optimised, this.catalogue.snapshot());
+	}
+
+	/**
+	 * Cache the optimised plan for a query, unless the version of the
+	 * catalogue it was optimised using is out of date.
+	 * @param plan Canonical plan of the query
+	 * @param optimised Optimised plan of the query
+	 * @param snapshot The version of the catalogue the plan was optimised
+	 *                 using
+	 */
+	public synchronized void put(Operator plan, Operator optimised, CatalogueSnapshot snapshot) {
+		validate(snapshot);
+		if (snapshot.getVersion() != this.version) {
+			return;
+		}
+		double[] selectivities = getSelectivities(snapshot, getParameters(plan));
+		this.plans.put(fingerprint(plan), new PlanTemplate(optimised, selectivities));
+	}
+
+	/**
+	 * Return the cached plan for a query, optimising and caching it with
+	 * the given optimiser if there is none.
+	 * @param plan Canonical plan of the query
+	 * @param optimiser Optimiser used if the plan is not cached
+	 * @return the optimised plan
+	 */
+	public Operator optimise(Operator plan, Optimiser optimiser) {
+		CatalogueSnapshot snapshot = this.catalogue.snapshot();
+		Operator optimised = get(plan, snapshot);
+		if (optimised == null) {
+			optimised = optimiser.optimise(plan);
+			put(plan, optimised, snapshot);
+		}
+		return optimised;
+	}
+
+	/**
+	 * Remove every plan from the cache.
+	 */
+	public synchronized void clear() {
+		this.plans.clear();
+	}
+
+	/**
+	 * Clear the cache if a version of the catalogue is newer than the one
+	 * the plans were optimised using.
+	 */
+	private void validate(CatalogueSnapshot snapshot) {
+		if (this.version < snapshot.getVersion()) {
+			if (!this.plans.isEmpty()) {
+				this.invalidations++;
+			}
+			this.plans.clear();
+			this.version = snapshot.getVersion();
+		}
+	}
+
+	public synchronized int size() {
+		return this.plans.size();
+	}
+
+	public synchronized int getHits() {
+		return this.hits;
+	}
+
+	public synchronized int getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * Return the number of plans evicted because the cache was full
+	 * @return the number of evictions
+	 */
+	public synchronized int getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * Return the number of times the cache was cleared because the catalogue
+	 * changed
+	 * @return the number of invalidations
+	 */
+	public synchronized int getInvalidations() {
+		return this.invalidations;
+	}
+
+	/**
+	 * Return the number of times a cached plan was not reused because the
+	 * selectivity of its parameters had changed too much
+	 * @return the number of re-optimisations
+	 */
+	public synchronized int getReoptimisations() {
+		return this.reoptimisations;
+	}
+
+	/**
+	 * Return the parameterised predicates of a query plan, indexed by
+	 * parameter number.
+	 */
+	private static List<Predicate> getParameters(Operator plan) {
+		List<Predicate> parameters = new ArrayList<Predicate>();
+		collectParameters(plan, parameters);
+		Collections.sort(parameters, new Comparator<Predicate>() {
+			public int compare(Predicate a, Predicate b) {
+				return a.getParameter() - b.getParameter();
+			}
+		});
+		return parameters;
+	}
+
+	private static void collectParameters(Operator plan, List<Predicate> parameters) {
+		if (plan instanceof Scan) {
+			return;
+		}
+		if (plan instanceof Select && ((Select) plan).getPredicate().isParameter()) {
+			parameters.add(((Select) plan).getPredicate());
+		}
+		for (Operator input : plan.getInputs()) {
+			collectParameters(input, parameters);
+		}
+	}
+
+	/**
+	 * Estimate the selectivity of each parameterised predicate using the
+	 * statistics in a version of the catalogue.
+	 */
+	private double[] getSelectivities(CatalogueSnapshot snapshot, List<Predicate> parameters) {
+		double[] selectivities = new double[parameters.size()];
+		Arrays.fill(selectivities, 1.0);
+		for (int i = 0; i < parameters.size(); i++) {
+			Predicate p = parameters.get(i);
+			try {
+				Attribute attr = snapshot.getAttribute(p.getLeftAttribute().getName());
+				selectivities[i] = this.estimator.getSelectivity(attr, p);
+			} catch (DatabaseException e) {
+				// no statistics for the attribute; assume no selectivity
+			}
+		}
+		return selectivities;
+	}
+
+	/**
+	 * Return the fingerprint of a query plan: the attributes it projects, in
+	 * order, followed by the names of the relations it reads and the
+	 * predicates it applies, each sorted.
+	 * @param plan
+	 * @return the fingerprint
+	 */
+	public static String fingerprint(Operator plan) {
+		List<String> relations = new ArrayList<String>();
+		List<String> predicates = new ArrayList<String>();
+		String projection = "*";
+
+		if (plan instanceof Project) {
+			projection = ((Project) plan).getAttributes().toString();
+			plan = ((Project) plan).getInput();
+		}
+		collect(plan, relations, predicates);
+		Collections.sort(relations);
+		Collections.sort(predicates);
+
+		return "SELECT " + projection + " FROM " + relations + " WHERE " + predicates;
+	}
+
+	private static void collect(Operator plan, List<String> relations, List<String> predicates) {
+		if (plan instanceof Scan) {
+			relations.add(plan.toString());
+			return;
+		}
+		if (plan instanceof Select) {
+			predicates.add(Memo.normalise(((Select) plan).getPredicate()));
+		} else if (plan instanceof Join) {
+			predicates.add(Memo.normalise(((Join) plan).getPredicate()));
+		} else if (plan instanceof Project) {
+			predicates.add("PROJECT " + ((Project) plan).getAttributes());
+		}
+		for (Operator input : plan.getInputs()) {
+			collect(input, relations, predicates);
+		}
+	}
+}
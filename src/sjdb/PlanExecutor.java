@@ -0,0 +1,39 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This interface is implemented by the engines which execute optimised
+ * query plans: the Executor, which produces one tuple at a time, and the
+ * VectorExecutor, which processes batches of values of each attribute.
+ */
+public interface PlanExecutor {
+	/**
+	 * Build the iterator over the tuples of the output of a plan. The
+	 * iterator has not been opened.
+	 * @param plan
+	 * @return the iterator
+	 */
+	public TupleIterator build(Operator plan);
+
+	/**
+	 * Execute a plan and return all of its tuples.
+	 * @param plan
+	 * @return the tuples of the output of the plan
+	 */
+	public default List<Tuple> execute(Operator plan) throws DatabaseException {
+		TupleIterator iterator = build(plan);
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		iterator.open();
+		try {
+			Tuple tuple;
+			while ((tuple = iterator.next()) != null) {
+				tuples.add(tuple);
+			}
+		} finally {
+			iterator.close();
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,195 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class creates the operators of query plans, sharing them between
+ * plans: asked for an operator with the same signature as one it has
+ * created before, it returns that operator rather than a new one. Plans
+ * built by a factory from shared inputs therefore share every identical
+ * subplan, and an optimiser which builds many candidate plans from the same
+ * parts creates each candidate operator once, which the Estimator then
+ * estimates once.
+ *
+ * The signature of the operator asked for is worked out from the cached
+ * signatures of its inputs, so finding a shared operator only creates its
+ * signature. Shared operators may be used by several threads at once, as
+ * their inputs never change; their outputs are set once by the Estimator and
+ * never change either. The factory holds at most a given number of
+ * operators. When it is full it forgets one operator for each it creates,
+ * choosing an operator which has not been asked for recently by the clock
+ * algorithm: the operators are kept in a queue in the order they were
+ * created, each with a flag set whenever it is asked for again, and the
+ * operator at the head of the queue is forgotten unless its flag is set,
+ * in which case the flag is cleared and the operator goes to the back of
+ * the queue.
+ */
+public class PlanFactory {
+
+	/**
+	 * The default number of operators held.
+	 */
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	/**
+	 * An operator held by the factory, and whether it has been asked for
+	 * since it last reached the head of the queue
+	 */
+	private static final class Entry {
+		private final PlanSignature signature;
+		private final Operator op;
+		private volatile boolean used;
+
+		private Entry(PlanSignature signature, Operator op) {
+			this.signature = signature;
+			this.op = op;
+		}
+	}
+
+	private ConcurrentHashMap<PlanSignature, Entry> operators;
+	private ConcurrentLinkedQueue<Entry> clock;
+	private int capacity;
+
+	public PlanFactory() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a new factory.
+	 * @param capacity Maximum number of operators held
+	 */
+	public PlanFactory(int capacity) {
+		this.operators = new ConcurrentHashMap<PlanSignature, Entry>();
+		this.clock = new ConcurrentLinkedQueue<Entry>();
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Return the number of operators held
+	 * @return the number of operators
+	 */
+	public int size() {
+		return this.operators.size();
+	}
+
+	/**
+	 * Return a scan of a named relation.
+	 * @param relation
+	 * @return the scan
+	 */
+	public Scan scan(NamedRelation relation) {
+		PlanSignature signature = new PlanSignature(Scan.class, relation, null, null);
+		Operator op = get(signature);
+		if (op == null) {
+			op = share(signature, new Scan(relation));
+		}
+		return (Scan) op;
+	}
+
+	/**
+	 * Return a select over an input.
+	 * @param input
+	 * @param predicate
+	 * @return the select
+	 */
+	public Select select(Operator input, Predicate predicate) {
+		PlanSignature signature = new PlanSignature(Select.class, predicate.getTerms(), input.getSignature(), null);
+		Operator op = get(signature);
+		if (op == null) {
+			op = share(signature, new Select(input, predicate));
+		}
+		return (Select) op;
+	}
+
+	/**
+	 * Return a project over an input.
+	 * @param input
+	 * @param attributes Attributes projected, which are copied
+	 * @return the project
+	 */
+	public Project project(Operator input, List<Attribute> attributes) {
+		List<Attribute> projected = new ArrayList<Attribute>(attributes);
+		PlanSignature signature = new PlanSignature(Project.class, projected, input.getSignature(), null);
+		Operator op = get(signature);
+		if (op == null) {
+			op = share(signature, new Project(input, projected));
+		}
+		return (Project) op;
+	}
+
+	/**
+	 * Return a product of two inputs.
+	 * @param left
+	 * @param right
+	 * @return the product
+	 */
+	public Product product(Operator left, Operator right) {
+		PlanSignature signature = new PlanSignature(Product.class, null, left.getSignature(), right.getSignature());
+		Operator op = get(signature);
+		if (op == null) {
+			op = share(signature, new Product(left, right));
+		}
+		return (Product) op;
+	}
+
+	/**
+	 * Return a join of two inputs.
+	 * @param left
+	 * @param right
+	 * @param predicate
+	 * @return the join
+	 */
+	public Join join(Operator left, Operator right, Predicate predicate) {
+		PlanSignature signature = new PlanSignature(Join.class, predicate.getTerms(), left.getSignature(),
+				right.getSignature());
+		Operator op = get(signature);
+		if (op == null) {
+			op = share(signature, new Join(left, right, predicate));
+		}
+		return (Join) op;
+	}
+
+	/**
+	 * Return the operator held with a signature, marking it as used, or
+	 * null if there is none.
+	 */
+	private Operator get(PlanSignature signature) {
+		Entry entry = this.operators.get(signature);
+		if (entry == null) {
+			return null;
+		}
+		entry.used = true;
+		return entry.op;
+	}
+
+	/**
+	 * Hold a new operator, unless another thread has just created one with
+	 * the same signature, and return the operator held. If the factory is
+	 * then over its capacity, operators are forgotten until it is not.
+	 */
+	private Operator share(PlanSignature signature, Operator op) {
+		Entry entry = new Entry(signature, op);
+		Entry shared = this.operators.putIfAbsent(signature, entry);
+		if (shared != null) {
+			shared.used = true;
+			return shared.op;
+		}
+		this.clock.add(entry);
+		while (this.operators.size() > this.capacity) {
+			Entry head = this.clock.poll();
+			if (head == null) {
+				break;
+			}
+			if (head.used) {
+				head.used = false;
+				this.clock.add(head);
+			} else {
+				this.operators.remove(head.signature, head);
+			}
+		}
+		return op;
+	}
+}
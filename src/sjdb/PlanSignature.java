@@ -0,0 +1,64 @@
+package sjdb;
+
+import java.util.Objects;
+
+/**
+ * This class is the signature of a subplan, by which the Estimator caches
+ * the estimated output of the subplan. The signature of an operator is made
+ * up of its class, the details of the operator which its output depends on
+ * (the relation it scans, its predicate, or the attributes it projects or
+ * sorts on), and the signatures of its inputs, so two subplans have equal
+ * signatures when they scan the same relations and apply the same
+ * predicates in the same way.
+ *
+ * Signatures are built from the bottom of a plan up, and the hash code of
+ * each is worked out once from those of its inputs, so finding the
+ * signature of an operator does not walk the plan below it. Each operator
+ * keeps its signature once it has been worked out.
+ */
+public final class PlanSignature {
+	private final Class<?> operator;
+	private final Object detail;
+	private final PlanSignature left;
+	private final PlanSignature right;
+	private final int hash;
+
+	/**
+	 * Create the signature of an operator.
+	 * @param operator Class of the operator
+	 * @param detail Details of the operator, compared with equals()
+	 * @param left Signature of the input, or of the left input of a binary
+	 *             operator, or null for a scan
+	 * @param right Signature of the right input of a binary operator, or null
+	 */
+	public PlanSignature(Class<?> operator, Object detail, PlanSignature left, PlanSignature right) {
+		this.operator = operator;
+		this.detail = detail;
+		this.left = left;
+		this.right = right;
+		this.hash = ((operator.hashCode() * 31 + Objects.hashCode(detail)) * 31 + Objects.hashCode(left)) * 31
+				+ Objects.hashCode(right);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PlanSignature)) {
+			return false;
+		}
+		PlanSignature rhs = (PlanSignature) obj;
+		return this.hash == rhs.hash && this.operator == rhs.operator && Objects.equals(this.detail, rhs.detail)
+				&& Objects.equals(this.left, rhs.left) && Objects.equals(this.right, rhs.right);
+	}
+}
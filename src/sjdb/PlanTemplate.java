@@ -0,0 +1,136 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This class represents a plan optimised for a parameterised query, which
+ * can be bound to different values of the parameters. The template records
+ * the estimated selectivity of each parameter's predicate for the values it
+ * was optimised with; if the selectivity for new values differs materially,
+ * the plan may no longer be a good one and the query should be optimised
+ * again.
+ */
+public class PlanTemplate {
+
+	/**
+	 * The factor by which the selectivity of a parameter may change before
+	 * the template is no longer used for the new value.
+	 */
+	public static final double REOPTIMISE_RATIO = 10;
+
+	private Operator plan;
+	private double[] selectivities;
+	private Estimator estimator;
+
+	/**
+	 * Create a new template.
+	 * @param plan Optimised plan of the query
+	 * @param selectivities Selectivity of each parameter's predicate for
+	 *                      the values the plan was optimised with
+	 */
+	public PlanTemplate(Operator plan, double[] selectivities) {
+		this.plan = plan;
+		this.selectivities = selectivities;
+		this.estimator = new Estimator();
+	}
+
+	/**
+	 * Return the optimised plan, bound to the values it was optimised with
+	 * @return the plan
+	 */
+	public Operator getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Return true if the plan can be used for parameters with the given
+	 * selectivities, meaning that none of them differs from the selectivity
+	 * the plan was optimised with by more than REOPTIMISE_RATIO.
+	 * @param selectivities
+	 * @return true if the plan can be used
+	 */
+	public boolean isValidFor(double[] selectivities) {
+		if (selectivities.length != this.selectivities.length) {
+			return false;
+		}
+		for (int i = 0; i < selectivities.length; i++) {
+			double ratio = selectivities[i] / this.selectivities[i];
+			if (ratio > REOPTIMISE_RATIO || ratio < 1 / REOPTIMISE_RATIO) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Bind the plan to new values of the parameters. Only the operators
+	 * above a parameterised select are copied; the rest of the plan is
+	 * shared with the template.
+	 * @param values The value of each parameter, indexed by number
+	 * @return the estimated plan for the new values
+	 */
+	public Operator bind(List<String> values) {
+		if (values.isEmpty()) {
+			return this.plan;
+		}
+		return bind(this.plan, values);
+	}
+
+	private Operator bind(Operator op, List<String> values) {
+		Operator output;
+
+		if (op instanceof Select) {
+			Select select = (Select) op;
+			Operator input = bind(select.getInput(), values);
+			Predicate p = select.getPredicate();
+			if (p.isParameter()) {
+				p = p.bind(values.get(p.getParameter()));
+			} else if (input == select.getInput()) {
+				return op;
+			}
+			output = new Select(input, p);
+			this.estimator.visit((Select) output);
+		} else if (op instanceof Sort) {
+			Sort sort = (Sort) op;
+			Operator input = bind(sort.getInput(), values);
+			if (input == sort.getInput()) {
+				return op;
+			}
+			output = new Sort(input, sort.getAttributes());
+			this.estimator.visit((Sort) output);
+		} else if (op instanceof Project) {
+			Project project = (Project) op;
+			Operator input = bind(project.getInput(), values);
+			if (input == project.getInput()) {
+				return op;
+			}
+			output = new Project(input, project.getAttributes());
+			this.estimator.visit((Project) output);
+		} else if (op instanceof Join) {
+			Join join = (Join) op;
+			Operator left = bind(join.getLeft(), values);
+			Operator right = bind(join.getRight(), values);
+			if (left == join.getLeft() && right == join.getRight()) {
+				return op;
+			}
+			if (join instanceof PhysicalJoin) {
+				output = ((PhysicalJoin) join).copy(left, right);
+			} else {
+				output = new Join(left, right, join.getPredicate());
+			}
+			this.estimator.visit((Join) output);
+		} else if (op instanceof Product) {
+			Product product = (Product) op;
+			Operator left = bind(product.getLeft(), values);
+			Operator right = bind(product.getRight(), values);
+			if (left == product.getLeft() && right == product.getRight()) {
+				return op;
+			}
+			output = new Product(left, right);
+			this.estimator.visit((Product) output);
+		} else {
+			output = op;
+		}
+		return output;
+	}
+}
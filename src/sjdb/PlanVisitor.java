@@ -31,4 +31,9 @@ public interface PlanVisitor {
 	 * @param op
 	 */
 	public void visit(Join op);
+	/**
+	 * Visit a Sort operator.
+	 * @param op Sort operator to be visited
+	 */
+	public void visit(Sort op);
 }
@@ -1,18 +1,60 @@
 package sjdb;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class is used to represent the predicates associated with 
- * joins and select operators. Note that, while a string value is
- * required for predicates of the form attr=value, this values is 
- * only used by the toString() method; a future version of
- * Attribute which uses more expressive synopses may change this.
+ * joins and select operators. The value of a predicate of the form 
+ * attr=value is used by the Estimator when the attribute has a Histogram
+ * or numeric range which makes some values more selective than others.
+ * 
+ * The value of a predicate of the form attr=value may be a parameter of
+ * the query, in which case the predicate records the number of the
+ * parameter so that a plan optimised for one value can be bound to
+ * another.
+ * 
+ * Besides equality, a predicate may compare an attribute with a value 
+ * using one of the other comparisons below, compare it with a range of 
+ * values (attr BETWEEN value AND value) or with a list of values 
+ * (attr IN (value, ..., value)). Predicates of the form attr=attr are
+ * always equalities.
  * 
  * @author nmg
  */
 public class Predicate {
+
+	/**
+	 * The comparisons which a predicate may make between an attribute and
+	 * its values.
+	 */
+	public enum Comparison {
+		EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), BETWEEN(" BETWEEN "), IN(" IN ");
+
+		private String symbol;
+
+		private Comparison(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * Return the symbol of the comparison as written in a query
+		 * @return the symbol
+		 */
+		public String getSymbol() {
+			return this.symbol;
+		}
+	}
+
 	private Attribute leftAttribute;
 	private Attribute rightAttribute;
 	private String rightValue;
+	private List<String> values;
+	private Comparison comparison = Comparison.EQ;
+	private int parameter = -1;
+	private List<Object> terms;
 
 	/**
 	 * Create a predicate of the form attr=attr
@@ -35,13 +77,78 @@ public class Predicate {
 	}
 
 	/**
-	 * Return true if this predicate is of the form attr=value
+	 * Create a predicate of the form attr=value where the value is the
+	 * given parameter of the query
+	 * @param left
+	 * @param value
+	 * @param parameter
+	 */
+	public Predicate(Attribute left, String value, int parameter) {
+		this.leftAttribute = left;
+		this.rightValue = value;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * Create a predicate of the form attr OP value, such as attr<value
+	 * @param left
+	 * @param comparison any comparison other than BETWEEN or IN
+	 * @param value
+	 */
+	public Predicate(Attribute left, Comparison comparison, String value) {
+		if (comparison == Comparison.BETWEEN || comparison == Comparison.IN) {
+			throw new IllegalArgumentException(comparison + " compares an attribute with more than one value");
+		}
+		this.leftAttribute = left;
+		this.comparison = comparison;
+		this.rightValue = value;
+	}
+
+	/**
+	 * Create a predicate of the form attr BETWEEN value AND value, or of the
+	 * form attr IN (value, ..., value)
+	 * @param left
+	 * @param comparison BETWEEN or IN
+	 * @param values the lower and upper bound for BETWEEN, or the list of
+	 *               values for IN
+	 */
+	public Predicate(Attribute left, Comparison comparison, List<String> values) {
+		boolean valid = comparison == Comparison.BETWEEN ? values.size() == 2
+				: comparison == Comparison.IN && !values.isEmpty();
+		if (!valid) {
+			throw new IllegalArgumentException("Cannot compare " + left + comparison.getSymbol() + values);
+		}
+		this.leftAttribute = left;
+		this.comparison = comparison;
+		this.values = Collections.unmodifiableList(new ArrayList<String>(values));
+		this.rightValue = values.get(0);
+	}
+
+	/**
+	 * Return true if this predicate compares an attribute with values, as 
+	 * in attr=value, rather than with another attribute
 	 * @return
 	 */
 	public boolean equalsValue() {
 		return this.rightValue != null;
 	}
 	
+	/**
+	 * Return true if this predicate is of the form attr=attr or attr=value
+	 * @return
+	 */
+	public boolean isEquality() {
+		return this.comparison == Comparison.EQ;
+	}
+	
+	/**
+	 * Return the comparison made by this predicate
+	 * @return comparison
+	 */
+	public Comparison getComparison() {
+		return this.comparison;
+	}
+	
 	/**
 	 * Return ATTR for predicates of the form ATTR=attr or ATTR=value
 	 * @return left attribute
@@ -59,21 +166,133 @@ public class Predicate {
 	}
 	
 	/**
-	 * Return VALUE for predicates of the form attr=VALUE
+	 * Return VALUE for predicates of the form attr=VALUE, or the first of 
+	 * the values for predicates which compare with more than one
 	 * @return right value
 	 */
 	public String getRightValue() {
 		return this.rightValue;
 	}
 	
+	/**
+	 * Return the values an attribute is compared with: both bounds for 
+	 * BETWEEN, the whole list for IN, the single value for any other 
+	 * comparison, or none for predicates of the form attr=attr
+	 * @return values
+	 */
+	public List<String> getValues() {
+		if (this.values != null) {
+			return this.values;
+		} else if (this.rightValue != null) {
+			return Collections.singletonList(this.rightValue);
+		}
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Return true if the value of this predicate is a parameter of the query
+	 * @return
+	 */
+	public boolean isParameter() {
+		return this.parameter >= 0;
+	}
+	
+	/**
+	 * Return the number of the parameter for predicates of the form
+	 * attr=value whose value is a parameter, or -1 otherwise
+	 * @return parameter number
+	 */
+	public int getParameter() {
+		return this.parameter;
+	}
+	
+	/**
+	 * Return the terms of this predicate: its comparison, its attributes,
+	 * its values and its parameter number. Two predicates with equal terms
+	 * select the same tuples, so the terms are part of the signature of an
+	 * operator which applies the predicate.
+	 * @return terms
+	 */
+	public List<Object> getTerms() {
+		List<Object> terms = this.terms;
+		if (terms == null) {
+			terms = Collections.unmodifiableList(Arrays.<Object>asList(this.comparison, this.leftAttribute,
+					this.rightAttribute, getValues(), this.parameter));
+			this.terms = terms;
+		}
+		return terms;
+	}
+	
+	/**
+	 * Return true if a value of the left attribute satisfies this predicate,
+	 * which must compare it with values. Values are ordered as by
+	 * Tuple.compare(), and are otherwise equal only if they are equal
+	 * strings.
+	 * @param value
+	 * @return true if the value satisfies the predicate
+	 */
+	public boolean matches(String value) {
+		List<String> values = getValues();
+		switch (this.comparison) {
+			case EQ:
+				return value.equals(values.get(0));
+			case NE:
+				return !value.equals(values.get(0));
+			case IN:
+				return values.contains(value);
+			case BETWEEN:
+				return Tuple.compare(value, values.get(0)) >= 0 && Tuple.compare(value, values.get(1)) <= 0;
+			case LT:
+				return Tuple.compare(value, values.get(0)) < 0;
+			case LE:
+				return Tuple.compare(value, values.get(0)) <= 0;
+			case GT:
+				return Tuple.compare(value, values.get(0)) > 0;
+			default:
+				return Tuple.compare(value, values.get(0)) >= 0;
+		}
+	}
+	
+	/**
+	 * Return a copy of this predicate with a new value for its parameter
+	 * @param value
+	 * @return the bound predicate
+	 */
+	public Predicate bind(String value) {
+		return new Predicate(this.leftAttribute, value, this.parameter);
+	}
+	
+	/**
+	 * Return a copy of a predicate which compares an attribute with values
+	 * that makes the same comparison on another attribute
+	 * @param attr
+	 * @return the predicate on the other attribute
+	 */
+	public Predicate withAttribute(Attribute attr) {
+		if (this.values != null) {
+			return new Predicate(attr, this.comparison, this.values);
+		} else if (this.comparison != Comparison.EQ) {
+			return new Predicate(attr, this.comparison, this.rightValue);
+		}
+		return new Predicate(attr, this.rightValue, this.parameter);
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
 	public String toString() {
 		if (this.rightValue == null) {
 			return this.leftAttribute.toString() + "=" + this.rightAttribute.toString(); 
+		} else if (this.comparison == Comparison.BETWEEN) {
+			return this.leftAttribute.toString() + " BETWEEN \"" + this.values.get(0) + "\" AND \"" + this.values.get(1) + "\"";
+		} else if (this.comparison == Comparison.IN) {
+			StringBuilder list = new StringBuilder();
+			for (String value : this.values) {
+				list.append(list.length() == 0 ? "\"" : ",\"").append(value).append("\"");
+			}
+			return this.leftAttribute.toString() + " IN (" + list + ")";
 		} else {
-			return this.leftAttribute.toString() + "=\"" + this.rightValue + "\"";
+			return this.leftAttribute.toString() + this.comparison.getSymbol() + "\"" + this.rightValue + "\"";
 		}
 	}
 }
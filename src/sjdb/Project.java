@@ -1,5 +1,6 @@
 package sjdb;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Iterator;
 
@@ -28,6 +29,13 @@ public class Project extends UnaryOperator {
 		return this.attributes;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getDetail()
+	 */
+	protected Object getDetail() {
+		return new ArrayList<Attribute>(this.attributes);
+	}
+	
 	/* (non-Javadoc)
 	 * @see sjdb.UnaryOperator#accept(sjdb.OperatorVisitor)
 	 */
@@ -0,0 +1,73 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transformation rule which pushes a project below the join, product or
+ * select beneath it, by adding projects to the inputs of that operator
+ * which keep only the attributes required by the project or by the
+ * operator's own predicate. The original project stays on top.
+ */
+public class ProjectPushdownRule implements Rule {
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.GroupExpression, sjdb.Memo)
+	 */
+	public void apply(GroupExpression expr, Memo memo) {
+		if (expr.getKind() != GroupExpression.Kind.PROJECT) {
+			return;
+		}
+		List<Attribute> attributes = expr.getAttributes();
+
+		// copy the expressions as inserting may add to the group
+		GroupExpression[] inputs = expr.getInput(0).getExpressions().toArray(new GroupExpression[0]);
+
+		for (GroupExpression input : inputs) {
+			List<Attribute> required = new ArrayList<Attribute>(attributes);
+			Predicate p = input.getPredicate();
+			if (p != null) {
+				required.add(p.getLeftAttribute());
+				if (!p.equalsValue()) {
+					required.add(p.getRightAttribute());
+				}
+			}
+
+			Group below;
+			switch (input.getKind()) {
+				case SELECT:
+					below = memo.insert(GroupExpression.select(project(input.getInput(0), required, memo), p));
+					break;
+				case JOIN:
+					below = memo.insert(GroupExpression.join(project(input.getInput(0), required, memo),
+							project(input.getInput(1), required, memo), p));
+					break;
+				case PRODUCT:
+					below = memo.insert(GroupExpression.product(project(input.getInput(0), required, memo),
+							project(input.getInput(1), required, memo)));
+					break;
+				default:
+					continue;
+			}
+			memo.insert(GroupExpression.project(below, attributes));
+		}
+	}
+
+	/**
+	 * Return a group which outputs only the required attributes of a
+	 * group, or the group itself if it has no other attributes or none of
+	 * the required attributes.
+	 */
+	private static Group project(Group group, List<Attribute> required, Memo memo) {
+		List<Attribute> kept = new ArrayList<Attribute>();
+		for (Attribute attr : group.getAttributes()) {
+			if (required.contains(attr)) {
+				kept.add(attr);
+			}
+		}
+		if (kept.isEmpty()) {
+			return group;
+		}
+		return memo.insert(GroupExpression.project(group, kept));
+	}
+}
@@ -5,6 +5,10 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
@@ -18,13 +22,36 @@ import java.util.regex.Matcher;
  * FROM <relation name>,<relation name>,...,<relation name>
  * WHERE <predicate>,<predicate>,...,<predicate>
  * 
- * where <predicate> is of one of the following two forms:
+ * where <predicate> is of one of the following forms:
  * 
  * <attribute name>="<value>"
  * <attribute name>=<attribute name>
+ * <attribute name><comparison>"<value>"
+ * <attribute name> BETWEEN "<value>" AND "<value>"
+ * <attribute name> IN ("<value>","<value>",...,"<value>")
+ * 
+ * where <comparison> is one of <>, <, <=, > or >=. Commas within the list 
+ * of values of an IN predicate do not separate predicates.
  * 
  * The WHERE line (corresponding to the select operators) is optional and 
- * may be omitted; the other lines are required.
+ * may be omitted; the other lines are required. They may be followed by a
+ * line of the form
+ * 
+ * ORDER BY <attribute name>, ..., <attribute name>
+ * 
+ * giving the order in which the result is required; this is not part of 
+ * the canonical query plan, but is returned by getOrder(). The attributes 
+ * of the ORDER BY line need not be selected: any which are not are added 
+ * to the project of the canonical query plan, after those which are, so 
+ * that its output can be sorted on them, and the attributes of the result 
+ * are returned by getAttributes().
+ * 
+ * If the parser is asked to parameterise the query, the value of each 
+ * predicate of the form <attribute name>="<value>" is lifted into a 
+ * parameter slot, so that the plan optimised for the query can be reused 
+ * for the same query with different values. The parameters are numbered in 
+ * order of their attribute names, so that the numbering does not depend 
+ * on the order of the predicates in the WHERE line.
  * 
  * To form the canonical query, a left-deep tree of cartesian
  * products over scans over the named relations is built, following by a series
@@ -39,8 +66,18 @@ import java.util.regex.Matcher;
  * @author nmg
  */
 public class QueryParser {
+	private static final Pattern VALUE_PREDICATE = Pattern.compile("(\\w+)=\"(\\w+)\"");
+	private static final Pattern COMPARISON_PREDICATE = Pattern.compile("(\\w+)\\s*(<>|<=|>=|<|>)\\s*\"([^\"]*)\"");
+	private static final Pattern BETWEEN_PREDICATE = Pattern.compile("(\\w+)\\s+BETWEEN\\s+\"([^\"]*)\"\\s+AND\\s+\"([^\"]*)\"");
+	private static final Pattern IN_PREDICATE = Pattern.compile("(\\w+)\\s+IN\\s*\\((.*)\\)");
+	private static final Pattern QUOTED_VALUE = Pattern.compile("\"([^\"]*)\"");
+	
 	private BufferedReader reader;
-	private Catalogue catalogue;
+	private CatalogueSnapshot catalogue;
+	private boolean parameterise;
+	private ArrayList<String> parameters;
+	private ArrayList<Attribute> order;
+	private ArrayList<Attribute> attributes;
 
 	/**
 	 * Create a new QueryParser. This class is intended to be used once only;
@@ -51,8 +88,72 @@ public class QueryParser {
 	 * @throws Exception
 	 */
 	public QueryParser(Catalogue catalogue, Reader input) throws Exception {
+		this(catalogue, input, false);
+	}
+	
+	/**
+	 * Create a new QueryParser which optionally lifts the values in the
+	 * query into parameters.
+	 * 
+	 * @param catalogue
+	 * @param input
+	 * @param parameterise
+	 * @throws Exception
+	 */
+	public QueryParser(Catalogue catalogue, Reader input, boolean parameterise) throws Exception {
+		this(catalogue.snapshot(), input, parameterise);
+	}
+	
+	/**
+	 * Create a new QueryParser which reads the relations in the query from
+	 * one version of the catalogue, and optionally lifts the values in the
+	 * query into parameters.
+	 * 
+	 * @param catalogue
+	 * @param input
+	 * @param parameterise
+	 * @throws Exception
+	 */
+	public QueryParser(CatalogueSnapshot catalogue, Reader input, boolean parameterise) throws Exception {
 		this.catalogue = catalogue;
 		this.reader = new BufferedReader(input);
+		this.parameterise = parameterise;
+		this.parameters = new ArrayList<String>();
+		this.order = new ArrayList<Attribute>();
+		this.attributes = new ArrayList<Attribute>();
+	}
+	
+	/**
+	 * Return the attributes the result of the parsed query must be sorted
+	 * on, most significant first. This is empty if the query has no ORDER 
+	 * BY line.
+	 * 
+	 * @return
+	 */
+	public List<Attribute> getOrder() {
+		return this.order;
+	}
+	
+	/**
+	 * Return the attributes of the result of the parsed query, in order. 
+	 * These are the attributes of the SELECT line, which the canonical query 
+	 * plan produces before any attributes it only produces to be sorted on, 
+	 * or an empty list if the query selects every attribute.
+	 * 
+	 * @return
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+	
+	/**
+	 * Return the values of the parameters of the parsed query, indexed by
+	 * parameter number. This is empty unless the query is parameterised.
+	 * 
+	 * @return
+	 */
+	public List<String> getParameters() {
+		return this.parameters;
 	}
 	
 	/**
@@ -67,6 +168,14 @@ public class QueryParser {
 		String projectLine = this.reader.readLine();
 		String productLine = this.reader.readLine();
 		String selectLine = this.reader.readLine();
+		String orderLine = this.reader.readLine();
+		
+		if (selectLine != null && selectLine.startsWith("ORDER BY")) {
+			orderLine = selectLine;
+		}
+		if (orderLine != null && orderLine.startsWith("ORDER BY")) {
+			parseOrder(orderLine);
+		}
 		
 		product = parseProduct(productLine);
 		if (selectLine != null && selectLine.startsWith("WHERE")) {
@@ -79,6 +188,17 @@ public class QueryParser {
 		return project;
 	}
 	
+	/**
+	 * Parse an "ORDER BY ..." line
+	 * @param line
+	 */
+	private void parseOrder(String line) {
+		String[] attrs = line.split("ORDER BY\\s+")[1].split("\\s*,\\s*");
+		for (int i = 0; i < attrs.length; i++) {
+			this.order.add(this.catalogue.resolveAttribute(attrs[i].trim()));
+		}
+	}
+	
 	/**
 	 * Parse a "FROM ..." line 
 	 * @param line
@@ -138,37 +258,135 @@ public class QueryParser {
 	private Operator parseSelect(String line, Operator op) {
 		String[] prds = line.split("WHERE\\s+");
 
-		String[] pred = prds[1].split("\\s*,\\s*");
+		String[] pred = splitPredicates(prds[1]);
+		int[] params = numberParameters(pred);
 		Operator ret = op;
 		
 		for (int i=0; i<pred.length; i++) {
-			ret = buildSelect(pred[i].trim(), ret);
+			ret = buildSelect(pred[i].trim(), params[i], ret);
 		}
 		
 		return ret;
 	}
 	
+	/**
+	 * Split the predicates of a WHERE line at the commas between them,
+	 * ignoring commas within parentheses or quotes.
+	 * @param line
+	 * @return the predicates
+	 */
+	private static String[] splitPredicates(String line) {
+		List<String> pred = new ArrayList<String>();
+		int depth = 0;
+		boolean quoted = false;
+		int start = 0;
+		
+		for (int i=0; i<line.length(); i++) {
+			char c = line.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			} else if (!quoted && c == '(') {
+				depth++;
+			} else if (!quoted && c == ')') {
+				depth--;
+			} else if (!quoted && depth == 0 && c == ',') {
+				pred.add(line.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		pred.add(line.substring(start).trim());
+		
+		return pred.toArray(new String[pred.size()]);
+	}
+	
+	/**
+	 * Number the predicates of the form attr="value" in order of their 
+	 * attribute names, if the query is being parameterised.
+	 * @param pred
+	 * @return the parameter number of each predicate, or -1 
+	 */
+	private int[] numberParameters(String[] pred) {
+		int[] params = new int[pred.length];
+		Arrays.fill(params, -1);
+		if (!this.parameterise) {
+			return params;
+		}
+		
+		final String[] names = new String[pred.length];
+		ArrayList<Integer> values = new ArrayList<Integer>();
+		for (int i=0; i<pred.length; i++) {
+			Matcher m = VALUE_PREDICATE.matcher(pred[i].trim());
+			if (m.matches()) {
+				names[i] = m.group(1);
+				values.add(i);
+			}
+		}
+		Collections.sort(values, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return names[a].compareTo(names[b]);
+			}
+		});
+		
+		for (int i=0; i<values.size(); i++) {
+			params[values.get(i)] = i;
+			this.parameters.add(null);
+		}
+		return params;
+	}
+	
 	/**
 	 * Build a chain of select operators.
 	 * @param pred
+	 * @param param the parameter number of the predicate, or -1
 	 * @param op
 	 * @return
 	 */
-	private Operator buildSelect(String pred, Operator op) {
-		Pattern p = Pattern.compile("(\\w+)=\"(\\w+)\"");
-		Matcher m = p.matcher(pred);
+	private Operator buildSelect(String pred, int param, Operator op) {
+		Matcher m = VALUE_PREDICATE.matcher(pred);
+		Matcher comparison = COMPARISON_PREDICATE.matcher(pred);
+		Matcher between = BETWEEN_PREDICATE.matcher(pred);
+		Matcher in = IN_PREDICATE.matcher(pred);
 		Predicate ret;
 		
-		if (m.matches()) {
-			ret = new Predicate(new Attribute(m.group(1)), m.group(2));
+		if (m.matches() && param >= 0) {
+			ret = new Predicate(this.catalogue.resolveAttribute(m.group(1)), m.group(2), param);
+			this.parameters.set(param, m.group(2));
+		} else if (m.matches()) {
+			ret = new Predicate(this.catalogue.resolveAttribute(m.group(1)), m.group(2));
+		} else if (comparison.matches()) {
+			ret = new Predicate(this.catalogue.resolveAttribute(comparison.group(1)), parseComparison(comparison.group(2)), comparison.group(3));
+		} else if (between.matches()) {
+			ret = new Predicate(this.catalogue.resolveAttribute(between.group(1)), Predicate.Comparison.BETWEEN, 
+					Arrays.asList(between.group(2), between.group(3)));
+		} else if (in.matches()) {
+			List<String> values = new ArrayList<String>();
+			Matcher value = QUOTED_VALUE.matcher(in.group(2));
+			while (value.find()) {
+				values.add(value.group(1));
+			}
+			ret = new Predicate(this.catalogue.resolveAttribute(in.group(1)), Predicate.Comparison.IN, values);
 		} else {
 			String[] atts = pred.split("=");
-			ret = new Predicate(new Attribute(atts[0]), new Attribute(atts[1]));
+			ret = new Predicate(this.catalogue.resolveAttribute(atts[0]), this.catalogue.resolveAttribute(atts[1]));
 		}
 		
 		return new Select(op, ret);
 	}
 	
+	/**
+	 * Return the comparison written with the given symbol
+	 * @param symbol
+	 * @return
+	 */
+	private static Predicate.Comparison parseComparison(String symbol) {
+		for (Predicate.Comparison comparison : Predicate.Comparison.values()) {
+			if (comparison.getSymbol().equals(symbol)) {
+				return comparison;
+			}
+		}
+		throw new IllegalArgumentException("Unknown comparison " + symbol);
+	}
+	
 	/**
 	 * Parse a "SELECT ..." line and build the corresponding project operator.
 	 * @param line
@@ -184,7 +402,15 @@ public class QueryParser {
 			ArrayList<Attribute> attributes = new ArrayList<Attribute>();
 
 			for (int i=0; i<attr.length; i++) {
-				attributes.add(new Attribute(attr[i].trim()));
+				attributes.add(this.catalogue.resolveAttribute(attr[i].trim()));
+			}
+			this.attributes.addAll(attributes);
+			
+			// keep the attributes the result is sorted on until it is sorted
+			for (Attribute attribute : this.order) {
+				if (!attributes.contains(attribute)) {
+					attributes.add(attribute);
+				}
 			}
 
 			return new Project(op, attributes);
@@ -0,0 +1,281 @@
+package sjdb;
+
+import java.util.Random;
+
+/**
+ * A join enumerator for queries with too many relations to enumerate
+ * exhaustively. It searches the space of left-deep join orders using
+ * two-phase optimisation: iterative improvement from several random
+ * starting orders, followed by simulated annealing from the best order
+ * that iterative improvement found.
+ *
+ * A join order is changed by swapping two relations or by moving one
+ * relation to another position. Each order is costed as the total cost of
+ * its plan under the cost model, accumulated one join at a time.
+ *
+ * The search stops when it runs out of either its wall-clock time limit or
+ * its limit on the number of join orders costed, or when the optimisation
+ * budget is exhausted, and returns the best plan found so far, so the time
+ * spent optimising a very wide query is bounded. Each join order costed is
+ * charged to the budget as one plan.
+ */
+public class RandomizedJoinEnumerator implements JoinEnumerator {
+
+	/**
+	 * The default time limit, in milliseconds.
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 1000;
+
+	/**
+	 * The default limit on the number of join orders costed.
+	 */
+	public static final int DEFAULT_ITERATIONS = 20000;
+
+	/**
+	 * The factor by which the temperature is reduced after each stage of
+	 * simulated annealing.
+	 */
+	private static final double COOLING = 0.95;
+
+	private Estimator estimator;
+	private CostModel costModel;
+	private long timeLimit;
+	private int iterations;
+	private long seed;
+	private Random random;
+
+	private JoinGraph graph;
+	private double[] relationCosts;
+	private OptimisationBudget budget;
+	private long deadline;
+	private int costed;
+	private int[] bestOrder;
+	private Operator bestPlan;
+	private double bestCost;
+
+	/**
+	 * Create a new enumerator with the default limits and cost model.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 */
+	public RandomizedJoinEnumerator(Estimator estimator) {
+		this(estimator, new DefaultCostModel(), DEFAULT_TIME_LIMIT, DEFAULT_ITERATIONS, 0);
+	}
+
+	/**
+	 * Create a new enumerator with the default limits.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 * @param costModel Cost model used to cost the candidate plans
+	 */
+	public RandomizedJoinEnumerator(Estimator estimator, CostModel costModel) {
+		this(estimator, costModel, DEFAULT_TIME_LIMIT, DEFAULT_ITERATIONS, 0);
+	}
+
+	/**
+	 * Create a new enumerator.
+	 * @param estimator Estimator used to estimate the candidate plans
+	 * @param costModel Cost model used to cost the candidate plans
+	 * @param timeLimit Time limit of each search, in milliseconds
+	 * @param iterations Limit on the number of join orders costed by each
+	 *                   search
+	 * @param seed Seed for the random moves of each search, so that
+	 *             searches which are not cut short by the time limit are
+	 *             reproducible, however many searches came before them
+	 */
+	public RandomizedJoinEnumerator(Estimator estimator, CostModel costModel, long timeLimit, int iterations,
+			long seed) {
+		this.estimator = estimator;
+		this.costModel = costModel;
+		this.timeLimit = timeLimit;
+		this.iterations = iterations;
+		this.seed = seed;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.JoinEnumerator#enumerate(sjdb.JoinGraph, sjdb.OptimisationBudget)
+	 */
+	public Operator enumerate(JoinGraph graph, OptimisationBudget budget) {
+		this.graph = graph;
+		this.budget = budget;
+		this.random = new Random(this.seed);
+		this.deadline = System.nanoTime() + this.timeLimit * 1000000L;
+		this.costed = 0;
+		this.bestOrder = null;
+
+		int n = graph.size();
+		this.relationCosts = new double[n];
+		for (int i = 0; i < n; i++) {
+			this.relationCosts[i] = this.costModel.getTotalCost(graph.getRelation(i));
+		}
+
+		if (n > 2) {
+			iterativeImprovement(Math.max(4, n));
+			simulatedAnnealing();
+		} else {
+			cost(randomOrder());
+		}
+
+		Operator output = this.bestPlan;
+		this.graph = null;
+		this.relationCosts = null;
+		this.budget = null;
+		this.random = null;
+		this.bestPlan = null;
+		return output;
+	}
+
+	/**
+	 * Run iterative improvement from a number of random starting orders,
+	 * each until it reaches a local minimum.
+	 * @param starts The number of starting orders
+	 */
+	private void iterativeImprovement(int starts) {
+		int n = this.graph.size();
+
+		for (int start = 0; start < starts && !isExhausted(); start++) {
+			int[] order = randomOrder();
+			double cost = cost(order);
+			int failures = 0;
+
+			while (failures < n * n && !isExhausted()) {
+				int[] neighbour = move(order);
+				double neighbourCost = cost(neighbour);
+				if (neighbourCost < cost) {
+					order = neighbour;
+					cost = neighbourCost;
+					failures = 0;
+				} else {
+					failures++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Run simulated annealing from the best order found so far until the
+	 * system is frozen: the temperature is low and the best order has not
+	 * improved for several stages.
+	 */
+	private void simulatedAnnealing() {
+		int n = this.graph.size();
+		int[] order = this.bestOrder;
+		double cost = this.bestCost;
+		double temperature = Math.max(1, 0.1 * cost);
+		int unimproved = 0;
+
+		while ((temperature >= 1 || unimproved < 4) && !isExhausted()) {
+			double stageBest = this.bestCost;
+
+			for (int i = 0; i < 16 * n && !isExhausted(); i++) {
+				int[] neighbour = move(order);
+				double neighbourCost = cost(neighbour);
+				double delta = neighbourCost - cost;
+				if (delta <= 0 || this.random.nextDouble() < Math.exp(-delta / temperature)) {
+					order = neighbour;
+					cost = neighbourCost;
+				}
+			}
+
+			unimproved = this.bestCost < stageBest ? 0 : unimproved + 1;
+			temperature *= COOLING;
+		}
+	}
+
+	/**
+	 * Return true if either the time limit or the limit on the number of
+	 * join orders costed has been reached, or the budget is exhausted. Only
+	 * the last of these truncates the search, as the others are the limits
+	 * of the search itself; it is only asked while the search would
+	 * otherwise go on.
+	 */
+	private boolean isExhausted() {
+		if (this.costed >= this.iterations || System.nanoTime() >= this.deadline) {
+			return true;
+		}
+		if (this.budget.isExhausted()) {
+			this.budget.truncate();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Build a random join order which, where possible, only adds relations
+	 * that are joined by a predicate to the relations before them.
+	 */
+	private int[] randomOrder() {
+		int n = this.graph.size();
+		int[] order = new int[n];
+		long set = 0;
+
+		for (int i = 0; i < n; i++) {
+			long candidates = this.graph.neighbours(set);
+			if (i == 0 || candidates == 0) {
+				candidates = this.graph.all() & ~set;
+			}
+			int pick = this.random.nextInt(Long.bitCount(candidates));
+			for (int k = 0; k < pick; k++) {
+				candidates &= candidates - 1;
+			}
+			order[i] = Long.numberOfTrailingZeros(candidates);
+			set |= 1L << order[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Return a copy of a join order changed by a random move: either two
+	 * relations are swapped, or one relation is moved to another position.
+	 */
+	private int[] move(int[] order) {
+		int[] result = order.clone();
+		int from = this.random.nextInt(order.length);
+		int to = this.random.nextInt(order.length - 1);
+		if (to >= from) {
+			to++;
+		}
+
+		if (this.random.nextBoolean()) {
+			result[from] = order[to];
+			result[to] = order[from];
+		} else if (from < to) {
+			System.arraycopy(order, from + 1, result, from, to - from);
+			result[to] = order[from];
+		} else {
+			System.arraycopy(order, to, result, to + 1, from - to);
+			result[to] = order[from];
+		}
+		return result;
+	}
+
+	/**
+	 * Cost a join order, recording it if it is the best order so far.
+	 * @return the total cost of the plan, or Double.MAX_VALUE if the budget
+	 *         is exhausted
+	 */
+	private double cost(int[] order) {
+		if (!this.budget.charge()) {
+			return Double.MAX_VALUE;
+		}
+
+		Operator plan = this.graph.getRelation(order[0]);
+		long set = 1L << order[0];
+		double cost = this.relationCosts[order[0]];
+
+		for (int i = 1; i < order.length; i++) {
+			long relation = 1L << order[i];
+			Operator right = this.graph.getRelation(order[i]);
+			Operator join = this.graph.join(plan, set, right, relation, this.estimator);
+			cost = this.costModel.getTotalCost(join, plan, cost, right, this.relationCosts[order[i]]);
+			plan = join;
+			set |= relation;
+		}
+
+		this.costed++;
+		if (this.bestOrder == null || cost < this.bestCost) {
+			this.bestOrder = order;
+			this.bestPlan = plan;
+			this.bestCost = cost;
+		}
+		return cost;
+	}
+}
@@ -1,25 +1,51 @@
 package sjdb;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * The Relation class represents an unnamed relation. It consists of a 
- * number of attributes and a size (tuple count).
+ * number of attributes and a size (tuple count). The relation produced by
+ * an operator also has the physical properties (sort order and
+ * partitioning) with which the operator produces it.
+ * 
+ * Attributes are looked up in a relation with many attributes through an
+ * index from attribute to position, which is built when it is first needed
+ * and rebuilt if attributes are added afterwards.
+ * 
+ * The relation produced by an operator may be shared by the Estimator
+ * with every subplan which has the same signature, and a named relation is
+ * frozen when the catalogue publishes it, after which it can no longer be
+ * changed and its list of attributes is unmodifiable.
  * 
  * @author nmg
  */
 public class Relation {
+	/**
+	 * The number of attributes up to which a relation is searched in order
+	 * rather than through its index
+	 */
+	private static final int SCANNED = 8;
+
 	private List<Attribute> attributes;
-	private int size;
+	private long size;
+	private PhysicalProperties properties;
+	private volatile HashMap<Attribute, Integer> positions;
+	private volatile int indexed;
+	private PlanSignature signature;
+	private boolean frozen;
 
 	/**
-	 * Create a new relation with the given tuple count
+	 * Create a new relation with the given tuple count, which is limited
+	 * to the range of cardinalities
 	 */
-	protected Relation(int size) {
+	protected Relation(long size) {
 		this.attributes = new ArrayList<Attribute>();
-		this.size = size;
+		this.size = Cardinality.clamp(size);
+		this.properties = PhysicalProperties.NONE;
 	}
 	
 	/**
@@ -41,7 +67,41 @@ public class Relation {
 	 * @return
 	 */
 	public Attribute getAttribute(Attribute attribute) {
-		return this.attributes.get(this.attributes.indexOf(attribute));
+		return this.attributes.get(indexOf(attribute));
+	}
+	
+	/**
+	 * Return the position of an attribute in this relation
+	 * 
+	 * @param attribute
+	 * @return the position, or -1 if the relation does not contain the
+	 *         attribute
+	 */
+	public int indexOf(Attribute attribute) {
+		if (this.attributes.size() <= SCANNED) {
+			return this.attributes.indexOf(attribute);
+		}
+		HashMap<Attribute, Integer> positions = this.positions;
+		if (positions == null || this.indexed != this.attributes.size()) {
+			positions = new HashMap<Attribute, Integer>();
+			for (int i = this.attributes.size() - 1; i >= 0; i--) {
+				positions.put(this.attributes.get(i), i);
+			}
+			this.positions = positions;
+			this.indexed = this.attributes.size();
+		}
+		Integer position = positions.get(attribute);
+		return position == null ? -1 : position;
+	}
+	
+	/**
+	 * Return true if this relation contains an attribute
+	 * 
+	 * @param attribute
+	 * @return
+	 */
+	public boolean contains(Attribute attribute) {
+		return indexOf(attribute) >= 0;
 	}
 
 	/**
@@ -52,25 +112,123 @@ public class Relation {
 	 * @param attribute the attribute to add
 	 */
 	public void addAttribute(Attribute attribute) {
+		checkUnfrozen();
 		if (attribute.getValueCount() > this.size) {
 			// If the attribute has more distinct values than there are tuples
 			// in this relation, limit the distinct values to the number of
 			// tuples
-			this.attributes.add(new Attribute(attribute.getName(), this.size));
+			this.attributes.add(new Attribute(attribute, this.size));
 		} else {
 			this.attributes.add(attribute);	
 		}
 	}
 	
+	/**
+	 * Replace the attribute at a position of this relation with another
+	 * attribute of the same name, such as a copy with changed statistics
+	 * 
+	 * @param position
+	 * @param attribute
+	 */
+	protected void setAttribute(int position, Attribute attribute) {
+		checkUnfrozen();
+		this.attributes.set(position, attribute);
+	}
+	
 	/**
 	 * Return the tuple count for this relation
 	 * 
 	 * @return the tuples
 	 */
-	public int getTupleCount() {
+	public long getTupleCount() {
 		return size;
 	}
 	
+	/**
+	 * Return the physical properties of this relation
+	 * 
+	 * @return the properties
+	 */
+	public PhysicalProperties getProperties() {
+		return properties;
+	}
+	
+	/**
+	 * Set the physical properties of this relation
+	 * 
+	 * @param properties
+	 */
+	public void setProperties(PhysicalProperties properties) {
+		checkUnfrozen();
+		this.properties = properties;
+	}
+	
+	/**
+	 * Return the signature of the subplans which share this relation as
+	 * their output, or null if it is not shared
+	 * 
+	 * @return the signature
+	 */
+	public PlanSignature getSignature() {
+		return signature;
+	}
+	
+	/**
+	 * Share this relation as the output of the subplans with a signature,
+	 * after which neither its attributes nor its properties can be changed
+	 * 
+	 * @param signature
+	 */
+	protected void share(PlanSignature signature) {
+		freeze();
+		this.signature = signature;
+	}
+	
+	/**
+	 * Prevent any further change to this relation
+	 */
+	protected void freeze() {
+		if (!this.frozen) {
+			this.attributes = Collections.unmodifiableList(this.attributes);
+			this.frozen = true;
+		}
+	}
+	
+	/**
+	 * Throw UnsupportedOperationException if this relation is frozen
+	 */
+	protected void checkUnfrozen() {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("Cannot change a frozen relation");
+		}
+	}
+	
+	/**
+	 * Return the width of the tuples of this relation in bytes, which is 
+	 * the sum of the widths of its attributes
+	 * 
+	 * @return the tuple width
+	 */
+	public int getTupleWidth() {
+		int width = 0;
+		for (Attribute attr : this.attributes) {
+			width += attr.getWidth();
+		}
+		return width;
+	}
+	
+	/**
+	 * Return the number of pages of the given size needed to store this
+	 * relation
+	 * 
+	 * @param pageSize the page size in bytes
+	 * @return the page count
+	 */
+	public long getPageCount(int pageSize) {
+		long bytes = Cardinality.multiply(this.size, getTupleWidth());
+		return (bytes + pageSize - 1) / pageSize;
+	}
+	
 	
 	/**
 	 * Render this relation and its statistics in a form suitable for debugging 
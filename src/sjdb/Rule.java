@@ -0,0 +1,16 @@
+package sjdb;
+
+/**
+ * This is an interface for a transformation rule used by the MemoOptimiser.
+ * A rule matches a pattern rooted at an expression in the memo, and adds
+ * the logically equivalent expressions it derives to the memo; the memo
+ * places them in the same group as the matched expression.
+ */
+public interface Rule {
+	/**
+	 * Apply the rule to an expression, if it matches.
+	 * @param expr Expression to be transformed
+	 * @param memo Memo to add the derived expressions to
+	 */
+	public void apply(GroupExpression expr, Memo memo);
+}
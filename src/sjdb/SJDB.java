@@ -3,6 +3,9 @@
  */
 package sjdb;
 import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author nmg
@@ -11,18 +14,77 @@ import java.io.*;
 public class SJDB {
 
 	/**
-	 * @param args
+	 * The number of optimised plans kept in the plan cache.
+	 */
+	private static final int PLAN_CACHE_SIZE = 256;
+
+	/**
+	 * The time in milliseconds the join enumerator may spend on a query.
+	 */
+	private static final long OPTIMISATION_TIME_LIMIT = 5000;
+
+	/**
+	 * @param args optionally, the join enumerator to be used by the
+	 * optimiser: greedy (the default), dp, pdp (dp in parallel), dpccp or
+	 * random; or memo to use the rule-driven MemoOptimiser instead. This
+	 * may be followed by the names of files containing queries, which are
+	 * run in turn sharing a plan cache; otherwise a single query is read
+	 * from stdin. The catalogue is read from data/cat.bin if it is at
+	 * least as new as data/cat.txt, and parsed from data/cat.txt otherwise.
+	 * If the arguments start with --execute, each optimised plan is also
+	 * executed over the data files in data/, and its tuples printed; with
+	 * --execute=vector, it is executed by the VectorExecutor.
 	 */
 	public static void main(String[] args) throws Exception {
+		PlanExecutor executor = null;
+		if (args.length > 0 && args[0].equals("--execute")) {
+			executor = new Executor("data");
+			args = Arrays.copyOfRange(args, 1, args.length);
+		} else if (args.length > 0 && args[0].equals("--execute=vector")) {
+			executor = new VectorExecutor("data");
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+
 		Inspector inspector = new Inspector();
-		// read serialised catalogue from file and parse
+		// open the binary catalogue, unless it is out of date, or read
+		// serialised catalogue from file and parse in parallel
 		String catFile = "data/cat.txt";
-		Catalogue cat = new Catalogue();
-		CatalogueParser catParser = new CatalogueParser(catFile, cat);
-		catParser.parse();
-		
-		// read stdin, parse, and build canonical query plan
-		QueryParser queryParser = new QueryParser(cat, new InputStreamReader(System.in));
+		File binFile = new File("data/cat.bin");
+		Catalogue cat;
+		if (binFile.exists() && binFile.lastModified() >= new File(catFile).lastModified()) {
+			cat = new Catalogue(new BinaryCatalogue(binFile.getPath()));
+		} else {
+			cat = new Catalogue();
+			try {
+				new ParallelCatalogueLoader(catFile, cat).load();
+			} catch (DatabaseException e) {
+				System.err.println(e.getMessage());
+			}
+		}
+
+		String strategy = args.length > 0 ? args[0] : "greedy";
+		PlanCache cache = new PlanCache(cat, PLAN_CACHE_SIZE);
+
+		if (args.length > 1) {
+			for (int i = 1; i < args.length; i++) {
+				run(cat, new FileReader(args[i]), strategy, cache, inspector, executor);
+			}
+			System.out.println("plan cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+		} else {
+			run(cat, new InputStreamReader(System.in), strategy, cache, inspector, executor);
+		}
+	}
+
+	/**
+	 * Parse, estimate and optimise a single query, and execute it if there
+	 * is an executor.
+	 */
+	private static void run(Catalogue cat, Reader input, String strategy, PlanCache cache,
+			Inspector inspector, PlanExecutor executor) throws Exception {
+		// read the query, parse, and build canonical query plan using the
+		// current version of the catalogue throughout
+		CatalogueSnapshot snapshot = cat.snapshot();
+		QueryParser queryParser = new QueryParser(snapshot, input, true);
 		Operator plan = queryParser.parse();
 				
 		// create estimator visitor and apply it to canonical plan
@@ -31,12 +93,107 @@ public class SJDB {
 		plan.accept(inspector);
 
 		System.out.println("---------------------");
-		// create optimised plan
-		Optimiser opt = new Optimiser(cat);
-		Operator optPlan = opt.optimise(plan);
+		// create optimised plan, unless one is cached, and choose the join
+		// algorithms for the order the query requires
+		Operator optPlan = cache.get(plan, snapshot);
+		if (optPlan == null) {
+			optPlan = optimise(cat, snapshot, plan, queryParser.getOrder(), strategy, cache);
+		}
+		optPlan = new PhysicalPlanner(new DefaultCostModel(snapshot), createEstimator(snapshot)).plan(optPlan,
+				queryParser.getOrder(), queryParser.getAttributes());
 
 		optPlan.accept(est);
 		optPlan.accept(inspector);
+
+		if (executor != null) {
+			System.out.println("---------------------");
+			execute(executor, optPlan);
+		}
+	}
+
+	/**
+	 * Execute a plan, printing the names of its attributes, its tuples and
+	 * the number of tuples.
+	 */
+	private static void execute(PlanExecutor executor, Operator plan) {
+		TupleIterator iterator = executor.build(plan);
+		StringBuilder header = new StringBuilder();
+		for (Attribute attr : iterator.getAttributes()) {
+			header.append(header.length() == 0 ? "" : ",").append(attr.getName());
+		}
+		System.out.println(header);
+		int count = 0;
+		try {
+			iterator.open();
+			Tuple tuple;
+			while ((tuple = iterator.next()) != null) {
+				System.out.println(tuple);
+				count++;
+			}
+			System.out.println("(" + count + " tuples)");
+		} catch (DatabaseException e) {
+			System.err.println(e.getMessage());
+		} finally {
+			iterator.close();
+		}
+	}
+
+	/**
+	 * Optimise a plan whose output is required in the given order using the
+	 * given strategy, and cache it unless the optimiser ran out of time
+	 * before finishing.
+	 */
+	private static Operator optimise(Catalogue cat, CatalogueSnapshot snapshot, Operator plan,
+			List<Attribute> order, String strategy, PlanCache cache) {
+		CostModel costModel = new DefaultCostModel(snapshot);
+		if (strategy.equals("memo")) {
+			Operator optPlan = new MemoOptimiser(costModel, MemoOptimiser.DEFAULT_MAX_EXPRESSIONS).optimise(plan);
+			cache.put(plan, optPlan, snapshot);
+			return optPlan;
+		}
+		Optimiser opt = new Optimiser(cat);
+		opt.setCostModel(costModel);
+		opt.setJoinEnumerator(createJoinEnumerator(strategy, createEstimator(snapshot), costModel));
+		opt.setOrder(order);
+		opt.setBudget(new OptimisationBudget(OPTIMISATION_TIME_LIMIT, 0));
+		Operator optPlan = opt.optimise(plan);
+		if (opt.wasTruncated()) {
+			System.err.println("optimisation truncated after " + OPTIMISATION_TIME_LIMIT + "ms");
+		} else {
+			cache.put(plan, optPlan, snapshot);
+		}
+		return optPlan;
+	}
+
+	/**
+	 * Create an estimator for the page size of a version of the catalogue
+	 * and the memory of the default cost model, so that it gives physical
+	 * joins the properties they have under that cost model.
+	 */
+	private static Estimator createEstimator(CatalogueSnapshot snapshot) {
+		return new Estimator(snapshot.getPageSize(), DefaultCostModel.DEFAULT_MEMORY);
+	}
+
+	/**
+	 * Create the join enumerator with the given name.
+	 * @param name
+	 * @param estimator Estimator used by the enumerator to estimate plans
+	 * @param costModel Cost model used by the enumerator to cost plans
+	 * @return the join enumerator, or null for the greedy join order
+	 */
+	protected static JoinEnumerator createJoinEnumerator(String name, Estimator estimator, CostModel costModel) {
+		if (name.equals("greedy")) {
+			return null;
+		} else if (name.equals("dp")) {
+			return new DPJoinEnumerator(estimator, costModel, null);
+		} else if (name.equals("pdp")) {
+			return new DPJoinEnumerator(estimator, costModel, ForkJoinPool.commonPool());
+		} else if (name.equals("dpccp")) {
+			return new DPccpJoinEnumerator(estimator, costModel);
+		} else if (name.equals("random")) {
+			return new RandomizedJoinEnumerator(estimator, costModel);
+		}
+		throw new IllegalArgumentException("Unknown join enumerator " + name);
 	}
 
 }
@@ -1,8 +1,5 @@
 package sjdb;
 
-import java.util.List;
-import java.util.Iterator;
-
 /**
  * This class implements a Scan operator that feeds a NamedRelation into
  * a query plan.
@@ -20,21 +17,6 @@ public class Scan extends Operator {
 	 */
 	public Scan(NamedRelation relation) {
 		this.relation = relation;
-		this.output = new Relation(relation.getTupleCount());
-		Iterator<Attribute> iter = relation.getAttributes().iterator();
-		
-		while (iter.hasNext()) {
-			this.output.addAttribute(new Attribute(iter.next()));
-		}
-	}
-
-	/* (non-Javadoc)
-	 * @see sjdb.Operator#getInputs()
-	 */
-	@Override
-	public List<Operator> getInputs() {
-		// TODO Auto-generated method stub
-		return null;
 	}
 
 	/**
@@ -45,6 +27,13 @@ public class Scan extends Operator {
 		return this.relation;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getDetail()
+	 */
+	protected Object getDetail() {
+		return this.relation;
+	}
+	
 	/* (non-Javadoc)
 	 * @see java.lang.Object#toString()
 	 */
@@ -22,6 +22,13 @@ public class Select extends UnaryOperator {
 		return this.predicate;
 	}
 	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getDetail()
+	 */
+	protected Object getDetail() {
+		return this.predicate.getTerms();
+	}
+	
 	public void accept(PlanVisitor visitor) {
 		super.accept(visitor);
 		visitor.visit(this);
@@ -0,0 +1,106 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * A transformation rule which pushes a select below the operator beneath
+ * it. A select is pushed into whichever input of a join or product has all
+ * of the attributes of its predicate; a select of the form attr=attr over
+ * a product whose inputs each have one of the attributes turns the product
+ * into a join. Selects are also pushed below other selects which cannot be
+ * pushed any further themselves, and below projects which keep the
+ * attributes of the predicate.
+ */
+public class SelectPushdownRule implements Rule {
+
+	/* (non-Javadoc)
+	 * @see sjdb.Rule#apply(sjdb.GroupExpression, sjdb.Memo)
+	 */
+	public void apply(GroupExpression expr, Memo memo) {
+		if (expr.getKind() != GroupExpression.Kind.SELECT) {
+			return;
+		}
+		Predicate p = expr.getPredicate();
+
+		// copy the expressions as inserting may add to the group
+		GroupExpression[] inputs = expr.getInput(0).getExpressions().toArray(new GroupExpression[0]);
+		boolean stuck = isStuck(inputs);
+
+		for (GroupExpression input : inputs) {
+			switch (input.getKind()) {
+				case SELECT:
+					if (stuck) {
+						Group swapped = memo.insert(GroupExpression.select(input.getInput(0), p));
+						memo.insert(GroupExpression.select(swapped, input.getPredicate()));
+					}
+					break;
+				case PROJECT:
+					if (contains(input.getAttributes(), p)) {
+						Group below = memo.insert(GroupExpression.select(input.getInput(0), p));
+						memo.insert(GroupExpression.project(below, input.getAttributes()));
+					}
+					break;
+				case PRODUCT:
+				case JOIN:
+					pushIntoBinary(input, p, memo);
+					break;
+				default:
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Return true if every expression in a group is a select, meaning that
+	 * the select below cannot be pushed any further itself. Only then is a
+	 * select pushed below another select; otherwise the select below will
+	 * already have been pushed into the operator beneath it, and swapping
+	 * the two would only add a group for every subset of the predicates.
+	 */
+	private static boolean isStuck(GroupExpression[] inputs) {
+		for (GroupExpression input : inputs) {
+			if (input.getKind() != GroupExpression.Kind.SELECT) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Push a select into one of the inputs of a join or product, or turn
+	 * the product into a join.
+	 */
+	private void pushIntoBinary(GroupExpression input, Predicate p, Memo memo) {
+		Group left = input.getInput(0);
+		Group right = input.getInput(1);
+
+		if (contains(left.getAttributes(), p)) {
+			left = memo.insert(GroupExpression.select(left, p));
+		} else if (contains(right.getAttributes(), p)) {
+			right = memo.insert(GroupExpression.select(right, p));
+		} else if (input.getKind() == GroupExpression.Kind.PRODUCT && !p.equalsValue()) {
+			if (left.getAttributes().contains(p.getLeftAttribute())) {
+				memo.insert(GroupExpression.join(left, right, p));
+			} else {
+				memo.insert(GroupExpression.join(left, right, new Predicate(p.getRightAttribute(), p.getLeftAttribute())));
+			}
+			return;
+		} else {
+			return;
+		}
+
+		if (input.getKind() == GroupExpression.Kind.JOIN) {
+			memo.insert(GroupExpression.join(left, right, input.getPredicate()));
+		} else {
+			memo.insert(GroupExpression.product(left, right));
+		}
+	}
+
+	/**
+	 * Return true if all of the attributes of the predicate are in the list.
+	 */
+	private static boolean contains(List<Attribute> attributes, Predicate p) {
+		return attributes.contains(p.getLeftAttribute())
+				&& (p.equalsValue() || attributes.contains(p.getRightAttribute()));
+	}
+}
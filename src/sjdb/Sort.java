@@ -0,0 +1,98 @@
+package sjdb;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class represents a Sort operator, which outputs the tuples of its
+ * input sorted on the given attributes. It is not part of a canonical
+ * query plan, but is added to a physical plan to produce an order that is
+ * required but not produced by the plan below it.
+ */
+public class Sort extends UnaryOperator {
+	private List<Attribute> attributes;
+
+	/**
+	 * Create a new sort operator.
+	 * @param input Child operator
+	 * @param attributes List of attributes to sort on, most significant first
+	 */
+	public Sort(Operator input, List<Attribute> attributes) {
+		super(input);
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Return the list of attributes sorted on by this operator
+	 * @return List of attributes, most significant first
+	 */
+	public List<Attribute> getAttributes() {
+		return this.attributes;
+	}
+	
+	/* (non-Javadoc)
+	 * @see sjdb.Operator#getDetail()
+	 */
+	protected Object getDetail() {
+		return new ArrayList<Attribute>(this.attributes);
+	}
+
+	/**
+	 * Return the number of pages read and written by an external merge sort
+	 * of the given number of pages: every page is read and written once to
+	 * form the initial runs, and once more for each pass merging them. A
+	 * sort which fits in memory does no I/O.
+	 * @param pages Number of pages to be sorted
+	 * @param memory Number of pages of memory available to the sort
+	 * @return the number of pages read and written
+	 */
+	public static long getPageCount(long pages, long memory) {
+		if (pages <= memory) {
+			return 0;
+		}
+		long fanIn = Math.max(2, memory - 1);
+		long runs = (pages + memory - 1) / memory;
+		long passes = 1;
+		while (runs > 1) {
+			runs = (runs + fanIn - 1) / fanIn;
+			passes++;
+		}
+		return Cardinality.multiply(2 * passes, pages);
+	}
+
+	/**
+	 * Return the number of comparisons made by sorting the given number of
+	 * tuples.
+	 * @param tuples Number of tuples to be sorted
+	 * @return the number of comparisons
+	 */
+	public static double getTupleCount(long tuples) {
+		return tuples > 1 ? tuples * (Math.log(tuples) / Math.log(2)) : 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.UnaryOperator#accept(sjdb.PlanVisitor)
+	 */
+	public void accept(PlanVisitor visitor) {
+		super.accept(visitor);
+		visitor.visit(this);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String ret = "SORT [";
+		Iterator<Attribute> iter = this.attributes.iterator();
+
+		ret += iter.next().getName();
+
+		while (iter.hasNext()) {
+			ret += "," + iter.next().getName();
+		}
+		ret += "] (" + getInput().toString() + ")";
+
+		return ret;
+	}
+}
@@ -0,0 +1,69 @@
+package sjdb;
+
+/**
+ * This class represents a sort-merge join, which sorts both of its inputs
+ * on the join attributes and then merges them. An input which does not fit
+ * in memory is sorted with an external merge sort, and an input which is
+ * already sorted on its join attribute is not sorted again. The output is
+ * sorted on the join attributes.
+ */
+public class SortMergeJoin extends PhysicalJoin {
+
+	/**
+	 * Create a new sort-merge join operator.
+	 * @param left Left child operator
+	 * @param right Right child operator
+	 * @param predicate Join predicate
+	 */
+	public SortMergeJoin(Operator left, Operator right, Predicate predicate) {
+		super(left, right, predicate);
+	}
+
+	public String getAlgorithm() {
+		return "MERGE JOIN";
+	}
+
+	public long getPageCount(int pageSize, long memory) {
+		long pages = 0;
+		if (!isLeftSorted()) {
+			pages = Cardinality.add(pages, Sort.getPageCount(getPages(getLeft(), pageSize), memory));
+		}
+		if (!isRightSorted()) {
+			pages = Cardinality.add(pages, Sort.getPageCount(getPages(getRight(), pageSize), memory));
+		}
+		return pages;
+	}
+
+	public double getTupleCount() {
+		double tuples = (double) getLeft().getOutput().getTupleCount() + getRight().getOutput().getTupleCount()
+				+ getOutput().getTupleCount();
+		if (!isLeftSorted()) {
+			tuples += Sort.getTupleCount(getLeft().getOutput().getTupleCount());
+		}
+		if (!isRightSorted()) {
+			tuples += Sort.getTupleCount(getRight().getOutput().getTupleCount());
+		}
+		return tuples;
+	}
+
+	private boolean isLeftSorted() {
+		return getLeft().getOutput().getProperties().isSortedOn(getPredicate().getLeftAttribute());
+	}
+
+	private boolean isRightSorted() {
+		return getRight().getOutput().getProperties().isSortedOn(getPredicate().getRightAttribute());
+	}
+
+	public PhysicalProperties getProperties(int pageSize, long memory) {
+		return PhysicalProperties.sorted(getKey());
+	}
+
+	public long getMemory(int pageSize, long memory) {
+		long pages = Math.max(getPages(getLeft(), pageSize), getPages(getRight(), pageSize));
+		return Math.max(1, Math.min(memory, pages));
+	}
+
+	public PhysicalJoin copy(Operator left, Operator right) {
+		return new SortMergeJoin(left, right, getPredicate());
+	}
+}
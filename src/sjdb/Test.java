@@ -2,9 +2,21 @@ package sjdb;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import sjdb.DatabaseException;
 
 public class Test {
+	/**
+	 * The optimisation strategies whose plans are checked, as named on the
+	 * command line of SJDB
+	 */
+	private static final String[] STRATEGIES = { "greedy", "dp", "pdp", "dpccp", "random", "memo" };
+
 	private Catalogue catalogue;
 	
 	public Test() {
@@ -23,6 +35,303 @@ public class Test {
 		Operator planopt = optimiser.optimise(plan);
 		planopt.accept(estimator);
 		planopt.accept(inspector);
+
+		int failures = checkResults("data") + checkCosts();
+		if (failures > 0) {
+			System.out.println(failures + " checks failed");
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run queries over the catalogue and data files in a directory, and
+	 * check that every optimisation strategy, join algorithm and executor
+	 * gives the expected result.
+	 * @param directory
+	 * @return the number of checks which failed
+	 */
+	public static int checkResults(String directory) throws Exception {
+		Catalogue catalogue = new Catalogue();
+		new CatalogueParser(directory + "/cat.txt", catalogue).parse();
+		catalogue.createIndex("Department", "deptid");
+		catalogue.createIndex("Project", "dept");
+		PlanExecutor[] executors = { new Executor(directory), new VectorExecutor(directory) };
+		int failures = 0;
+
+		// range, inequality and IN predicates
+		failures += check(catalogue, executors, "SELECT persname, age\nFROM Person\nWHERE age>\"63\", age<=\"64\", persid<\"200\"",
+				"Underwood,64", "Reed2,64", "Owen4,64", "Lewis6,64");
+		failures += check(catalogue, executors, 
+				"SELECT persname\nFROM Person\nWHERE age BETWEEN \"20\" AND \"21\", persid<\"100\"",
+				"Hall", "Jones1", "Evans2", "Green3");
+		failures += check(catalogue, executors, "SELECT projname\nFROM Project\nWHERE dept<>\"1\", projid<=\"8\"",
+				"Project2", "Project3", "Project4", "Project5", "Project7", "Project8");
+		failures += check(catalogue, executors, "SELECT deptname\nFROM Department\nWHERE deptid IN (\"2\", \"4\", \"9\")",
+				"Sales", "Finance");
+		failures += check(catalogue, executors, "SELECT projname, deptname\nFROM Project, Department\n"
+				+ "WHERE dept=deptid, deptname IN (\"Sales\", \"Support\"), projid>\"30\"",
+				"Project32,Sales", "Project35,Support", "Project2,Sales", "Project5,Support");
+
+		// joins
+		failures += check(catalogue, executors, "SELECT deptname, persname\nFROM Department, Person\nWHERE manager=persid",
+				"Research,Smith", "Sales,Quinn1", "Marketing,Green", "Finance,Zimmer5", "Support,Hall13");
+		failures += check(catalogue, executors, "SELECT projname, persname\nFROM Project, Department, Person\n"
+				+ "WHERE dept=deptid, manager=persid, projid<=\"5\"",
+				"Project1,Smith", "Project2,Quinn1", "Project3,Green", "Project4,Zimmer5", "Project5,Hall13");
+
+		// sorted, including on attributes which are not selected
+		failures += check(catalogue, executors, 
+				"SELECT persname, age\nFROM Person\nWHERE age>=\"63\", persid<=\"150\"\nORDER BY age, persid",
+				"Price1,63", "Moore3,63", "Jones5,63", "Underwood,64", "Reed2,64", "Owen4,64");
+		failures += check(catalogue, executors, "SELECT projname\nFROM Project\nWHERE projid<=\"10\"\nORDER BY dept, projid",
+				"Project1", "Project6", "Project2", "Project7", "Project3", "Project8", "Project4", "Project9",
+				"Project5", "Project10");
+		failures += check(catalogue, executors,
+				"SELECT projname\nFROM Project, Department\nWHERE dept=deptid, projid<=\"10\"\nORDER BY deptname, projid",
+				"Project4", "Project9", "Project3", "Project8", "Project1", "Project6", "Project2", "Project7",
+				"Project5", "Project10");
+		failures += check(catalogue, executors, "SELECT projname, deptname\nFROM Project, Department\n"
+				+ "WHERE dept=deptid, projid BETWEEN \"11\" AND \"15\"\nORDER BY deptname",
+				"Project14,Finance", "Project13,Marketing", "Project11,Research", "Project12,Sales", 
+				"Project15,Support");
+
+		// each join algorithm, with the tuples of each key grouped on either
+		// side, and a select and project between the index and the join
+		Attribute dept = new Attribute("dept");
+		Attribute deptid = new Attribute("deptid");
+		Operator projects = new Select(new Scan(catalogue.getRelation("Project")), 
+				new Predicate(new Attribute("projid"), Predicate.Comparison.LE, "10"));
+		Operator departments = new Project(new Select(new Scan(catalogue.getRelation("Department")), 
+				new Predicate(new Attribute("deptname"), Predicate.Comparison.NE, "Sales")),
+				Arrays.asList(deptid, new Attribute("deptname")));
+		failures += checkJoins(executors, projects, departments, new Predicate(dept, deptid),
+				"Project1,Research", "Project3,Marketing", "Project4,Finance", "Project5,Support",
+				"Project6,Research", "Project8,Marketing", "Project9,Finance", "Project10,Support");
+		failures += checkJoins(executors, departments, new Scan(catalogue.getRelation("Project")),
+				new Predicate(deptid, dept), 
+				"Project1,Research", "Project3,Marketing", "Project4,Finance", "Project5,Support",
+				"Project6,Research", "Project8,Marketing", "Project9,Finance", "Project10,Support",
+				"Project11,Research", "Project13,Marketing", "Project14,Finance", "Project15,Support",
+				"Project16,Research", "Project18,Marketing", "Project19,Finance", "Project20,Support",
+				"Project21,Research", "Project23,Marketing", "Project24,Finance", "Project25,Support",
+				"Project26,Research", "Project28,Marketing", "Project29,Finance", "Project30,Support",
+				"Project31,Research", "Project33,Marketing", "Project34,Finance", "Project35,Support",
+				"Project1,Research", "Project3,Marketing", "Project4,Finance", "Project5,Support");
+
+		return failures;
+	}
+
+	/**
+	 * Optimise a query with each strategy, execute the plans with each
+	 * executor, and check that each gives the expected tuples: in the same
+	 * order, if the query has an ORDER BY line, or in any order if not. The
+	 * costs of the plans are checked as by checkCosts().
+	 * @return the number of results which were not as expected
+	 */
+	private static int check(Catalogue catalogue, PlanExecutor[] executors, String query, String... expected)
+			throws Exception {
+		CostModel costModel = new DefaultCostModel(catalogue);
+		Map<String, Operator> plans = new LinkedHashMap<String, Operator>();
+		int failures = 0;
+
+		List<Attribute> order = null;
+		for (String strategy : STRATEGIES) {
+			QueryParser parser = new QueryParser(catalogue, new StringReader(query));
+			Operator plan = parser.parse();
+			order = parser.getOrder();
+			Operator optimised = optimise(catalogue, costModel, plan, order, strategy);
+			plans.put(strategy, optimised);
+			optimised = new PhysicalPlanner(costModel).plan(optimised, order, parser.getAttributes());
+			failures += check(executors, strategy + ": " + query.replace('\n', ' '), optimised, 
+					query.contains("ORDER BY"), expected);
+		}
+		return failures + checkCosts(query, costModel, plans, order);
+	}
+
+	/**
+	 * Estimate a canonical plan and optimise it with a strategy, for its
+	 * output in the given order.
+	 * @return the optimised plan
+	 */
+	private static Operator optimise(Catalogue catalogue, CostModel costModel, Operator plan,
+			List<Attribute> order, String strategy) {
+		plan.accept(new Estimator());
+		if (strategy.equals("memo")) {
+			return new MemoOptimiser(costModel, MemoOptimiser.DEFAULT_MAX_EXPRESSIONS).optimise(plan);
+		}
+		Optimiser optimiser = new Optimiser(catalogue);
+		optimiser.setCostModel(costModel);
+		optimiser.setJoinEnumerator(SJDB.createJoinEnumerator(strategy,
+				new Estimator(catalogue.getPageSize(), DefaultCostModel.DEFAULT_MEMORY), costModel));
+		optimiser.setOrder(order);
+		return optimiser.optimise(plan);
+	}
+
+	/**
+	 * Optimise queries over chains of generated relations, joined in a
+	 * cycle by a weak predicate, with each strategy, and check their costs
+	 * as by checkCosts().
+	 * @return the number of checks which failed
+	 */
+	public static int checkCosts() throws Exception {
+		int failures = 0;
+		for (int n = 3; n <= 8; n++) {
+			Random random = new Random(n);
+			Catalogue catalogue = new Catalogue();
+			StringBuilder from = new StringBuilder();
+			StringBuilder where = new StringBuilder();
+			for (int i = 0; i < n; i++) {
+				long size = 1000 + random.nextInt(20000);
+				catalogue.createRelation("R" + i, size);
+				catalogue.createAttribute("R" + i, "a" + i, size);
+				catalogue.createAttribute("R" + i, "b" + i, Math.max(1, size / (1 + random.nextInt(5))));
+				catalogue.createAttribute("R" + i, "c" + i, 10);
+				from.append(i == 0 ? "" : ", ").append("R" + i);
+				if (i > 0) {
+					where.append(i == 1 ? "" : ", ").append("b" + i + "=a" + (i - 1));
+				}
+			}
+			String query = "SELECT *\nFROM " + from + "\nWHERE " + where + ", c0=c2, c1=\"5\"";
+
+			CostModel costModel = new DefaultCostModel(catalogue);
+			Map<String, Operator> plans = new LinkedHashMap<String, Operator>();
+			List<Attribute> order = new ArrayList<Attribute>();
+			for (String strategy : STRATEGIES) {
+				Operator plan = new QueryParser(catalogue, new StringReader(query)).parse();
+				plans.put(strategy, optimise(catalogue, costModel, plan, order, strategy));
+			}
+			failures += checkCosts(query, costModel, plans, order);
+		}
+		return failures;
+	}
+
+	/**
+	 * Check that the plans found by dynamic programming cost no more than
+	 * the greedy plan: the best left-deep plan, if the greedy plan is
+	 * left-deep, and the best bushy plan in any case. Each plan is costed
+	 * as its physical plan for the order the query requires, as the
+	 * enumerators choose between plans by the orders they produce.
+	 * @param plans The plan found by each strategy
+	 * @param order The order the query requires
+	 * @return the number of checks which failed
+	 */
+	private static int checkCosts(String query, CostModel costModel, Map<String, Operator> plans,
+			List<Attribute> order) {
+		double greedy = getPhysicalCost(costModel, plans.get("greedy"), order);
+		List<String> optimal = new ArrayList<String>();
+		optimal.add("dpccp");
+		if (isLeftDeep(plans.get("greedy"))) {
+			optimal.add("dp");
+			optimal.add("pdp");
+		}
+		int failures = 0;
+		for (String strategy : optimal) {
+			double cost = getPhysicalCost(costModel, plans.get(strategy), order);
+			if (cost > greedy * (1 + 1e-9)) {
+				System.out.println("FAILED " + strategy + ": " + query.replace('\n', ' ') 
+						+ "\n  plan: " + plans.get(strategy) + " costs " + cost
+						+ "\n  greedy plan: " + plans.get("greedy") + " costs " + greedy);
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Return the total cost of the physical plan for a plan whose output is
+	 * required in the given order.
+	 */
+	private static double getPhysicalCost(CostModel costModel, Operator plan, List<Attribute> order) {
+		return costModel.getTotalCost(new PhysicalPlanner(costModel).plan(plan, order));
+	}
+
+	/**
+	 * Return true if the right input of every join and product in a plan
+	 * joins no relations.
+	 */
+	private static boolean isLeftDeep(Operator plan) {
+		if (plan instanceof Scan) {
+			return true;
+		}
+		if (plan instanceof BinaryOperator && getJoinCount(((BinaryOperator) plan).getRight()) > 0) {
+			return false;
+		}
+		for (Operator input : plan.getInputs()) {
+			if (!isLeftDeep(input)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return the number of joins and products in a plan.
+	 */
+	private static int getJoinCount(Operator plan) {
+		if (plan instanceof Scan) {
+			return 0;
+		}
+		int count = plan instanceof BinaryOperator ? 1 : 0;
+		for (Operator input : plan.getInputs()) {
+			count += getJoinCount(input);
+		}
+		return count;
+	}
+
+	/**
+	 * Join two plans with each join algorithm which can join them, project
+	 * the names of the projects and departments, and check that each
+	 * executor gives the expected tuples, in any order.
+	 * @return the number of results which were not as expected
+	 */
+	private static int checkJoins(PlanExecutor[] executors, Operator left, Operator right, Predicate predicate,
+			String... expected) {
+		List<PhysicalJoin> joins = PhysicalJoin.getAlternatives(left, right, predicate);
+		int failures = 0;
+		if (joins.size() < 4) {
+			System.out.println("FAILED " + predicate + ": no index join of " + left + " and " + right);
+			failures++;
+		}
+		for (PhysicalJoin join : joins) {
+			Operator plan = new Project(join, Arrays.asList(new Attribute("projname"), new Attribute("deptname")));
+			plan.accept(new Estimator());
+			failures += check(executors, join.getAlgorithm() + " [" + predicate + "]", plan, false, expected);
+		}
+		return failures;
+	}
+
+	/**
+	 * Execute a plan with each executor, and check that each gives the
+	 * expected tuples, in the same order if the result is ordered.
+	 * @return the number of results which were not as expected
+	 */
+	private static int check(PlanExecutor[] executors, String name, Operator plan, boolean ordered, 
+			String... expected) {
+		List<String> expectedTuples = new ArrayList<String>(Arrays.asList(expected));
+		if (!ordered) {
+			Collections.sort(expectedTuples);
+		}
+		int failures = 0;
+		for (PlanExecutor executor : executors) {
+			List<String> tuples = new ArrayList<String>();
+			try {
+				for (Tuple tuple : executor.execute(plan)) {
+					tuples.add(tuple.toString());
+				}
+			} catch (DatabaseException e) {
+				tuples.add(e.getMessage());
+			}
+			if (!ordered) {
+				Collections.sort(tuples);
+			}
+			if (!tuples.equals(expectedTuples)) {
+				System.out.println("FAILED " + name + "\n  plan: " + plan
+						+ "\n  " + executor.getClass().getSimpleName() + " gave " + tuples
+						+ "\n  expected " + expectedTuples);
+				failures++;
+			}
+		}
+		return failures;
 	}
 	
 	public static Catalogue createCatalogue() {
@@ -0,0 +1,104 @@
+package sjdb;
+
+/**
+ * This class represents a tuple produced by the Executor: one value for
+ * each attribute of the relation it belongs to, in the order of its
+ * attributes. Values are strings, as in the predicates of queries; they are
+ * compared as numbers when both are numbers, and as strings otherwise.
+ */
+public final class Tuple {
+	private final String[] values;
+
+	/**
+	 * Create a new tuple.
+	 * @param values The values of the tuple, which are not copied
+	 */
+	public Tuple(String[] values) {
+		this.values = values;
+	}
+
+	/**
+	 * Return the number of values in this tuple
+	 * @return the number of values
+	 */
+	public int size() {
+		return this.values.length;
+	}
+
+	/**
+	 * Return the value at a position in this tuple
+	 * @param position
+	 * @return the value
+	 */
+	public String get(int position) {
+		return this.values[position];
+	}
+
+	/**
+	 * Return the tuple made of the values of this tuple followed by those of
+	 * another
+	 * @param other
+	 * @return the joined tuple
+	 */
+	public Tuple concat(Tuple other) {
+		String[] values = new String[this.values.length + other.values.length];
+		System.arraycopy(this.values, 0, values, 0, this.values.length);
+		System.arraycopy(other.values, 0, values, this.values.length, other.values.length);
+		return new Tuple(values);
+	}
+
+	/**
+	 * Return the tuple made of the values at some positions of this tuple
+	 * @param positions
+	 * @return the projected tuple
+	 */
+	public Tuple project(int[] positions) {
+		String[] values = new String[positions.length];
+		for (int i = 0; i < positions.length; i++) {
+			values[i] = this.values[positions[i]];
+		}
+		return new Tuple(values);
+	}
+
+	/**
+	 * Compare two values: numerically if both are numbers, and as strings
+	 * otherwise or if they are equal as numbers, so that values which
+	 * compare equal are equal strings.
+	 * @param a
+	 * @param b
+	 * @return a negative number, zero or a positive number as a is less
+	 *         than, equal to or greater than b
+	 */
+	public static int compare(String a, String b) {
+		if (a.equals(b)) {
+			return 0;
+		}
+		double x = parseValue(a);
+		double y = parseValue(b);
+		if (!Double.isNaN(x) && !Double.isNaN(y) && x != y) {
+			return x < y ? -1 : 1;
+		}
+		return a.compareTo(b);
+	}
+
+	/**
+	 * Return the numeric value of a value, or NaN if it is not a number.
+	 */
+	private static double parseValue(String value) {
+		if (value.isEmpty() || "+-.0123456789".indexOf(value.charAt(0)) < 0) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return String.join(",", this.values);
+	}
+}
@@ -0,0 +1,31 @@
+package sjdb;
+
+import java.util.List;
+
+/**
+ * This interface is implemented by the iterators which execute the
+ * operators of a query plan. An iterator is opened, asked for each of its
+ * tuples in turn, and closed; an iterator opens and closes the iterators
+ * of its inputs itself.
+ */
+public interface TupleIterator {
+	/**
+	 * Return the attributes of the tuples produced by this iterator, in the
+	 * order of their values.
+	 * @return Attributes
+	 */
+	public List<Attribute> getAttributes();
+	/**
+	 * Prepare to produce the first tuple.
+	 */
+	public void open() throws DatabaseException;
+	/**
+	 * Return the next tuple.
+	 * @return Tuple, or null if there are no more
+	 */
+	public Tuple next() throws DatabaseException;
+	/**
+	 * Release the resources held by this iterator and its inputs.
+	 */
+	public void close();
+}
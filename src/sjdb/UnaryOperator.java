@@ -12,9 +12,7 @@ public abstract class UnaryOperator extends Operator {
 	 * 
 	 */
 	public UnaryOperator(Operator input) {
-		super();	
-		this.inputs.add(input);
-		this.output = null;
+		super(input);
 	}
 
 	/**
@@ -22,7 +20,7 @@ public abstract class UnaryOperator extends Operator {
 	 * @return Child operator
 	 */
 	public Operator getInput() {
-		return this.inputs.get(0);
+		return getInputs().get(0);
 	}
 
 	/* (non-Javadoc)
@@ -0,0 +1,794 @@
+package sjdb;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class executes query plans a batch of tuples at a time. It visits a
+ * plan to build a tree of iterators, as the Executor does, but each
+ * iterator produces a ColumnBatch of up to ColumnBatch.CAPACITY tuples
+ * when asked, held as a column of values for each attribute, so that each
+ * operator runs a tight loop over arrays rather than a call for each tuple.
+ *
+ * Every value is given an integer code by a dictionary shared by all of the
+ * relations which the executor has read, so that values may be compared
+ * for equality and joined by comparing their codes. A select on a value
+ * with any other comparison evaluates its predicate once for each distinct
+ * code, and a sort orders the distinct codes of its attributes once before
+ * sorting by them. Tuples are only decoded into strings when they leave the
+ * plan.
+ *
+ * The tuples of each named relation are read through an Executor when the
+ * relation is first scanned, and are kept in memory, encoded, for as long
+ * as this executor is used. A product, a sort-merge join and any other join
+ * read the whole of their right inputs into memory; a sort-merge join sorts
+ * its left input and then joins it as any other join does, so that its
+ * output is in the order of its left key.
+ */
+public class VectorExecutor implements PlanVisitor, PlanExecutor {
+
+	private Executor source;
+	private Map<String, Integer> codes;
+	private List<String> values;
+	private Map<String, ColumnBuffer> tables;
+	private Deque<BatchIterator> iterators;
+
+	/**
+	 * Create an executor which reads relations from the data files in a
+	 * directory.
+	 * @param directory
+	 */
+	public VectorExecutor(String directory) {
+		this(new Executor(directory));
+	}
+
+	/**
+	 * Create an executor which reads relations by scanning them with an
+	 * Executor.
+	 * @param source
+	 */
+	public VectorExecutor(Executor source) {
+		this.source = source;
+		this.codes = new HashMap<String, Integer>();
+		this.values = new ArrayList<String>();
+		this.tables = new HashMap<String, ColumnBuffer>();
+		this.iterators = new ArrayDeque<BatchIterator>();
+	}
+
+	/**
+	 * Build the iterator over the batches of the output of a plan. The
+	 * iterator has not been opened.
+	 * @param plan
+	 * @return the iterator
+	 */
+	public BatchIterator buildBatches(Operator plan) {
+		this.iterators.clear();
+		plan.accept(this);
+		return this.iterators.pop();
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanExecutor#build(sjdb.Operator)
+	 */
+	public TupleIterator build(Operator plan) {
+		return new DecodeIterator(buildBatches(plan));
+	}
+
+	/**
+	 * Execute a plan and return the number of tuples in its output, without
+	 * decoding them.
+	 * @param plan
+	 * @return the number of tuples
+	 */
+	public long count(Operator plan) throws DatabaseException {
+		BatchIterator iterator = buildBatches(plan);
+		long count = 0;
+		iterator.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = iterator.next()) != null) {
+				count += batch.getCount();
+			}
+		} finally {
+			iterator.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Return the code of a value, giving it a new one if it has none.
+	 * @param value
+	 * @return the code
+	 */
+	public int encode(String value) {
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.values.size();
+			this.codes.put(value, code);
+			this.values.add(value);
+		}
+		return code;
+	}
+
+	/**
+	 * Return the value with a code.
+	 * @param code
+	 * @return the value
+	 */
+	public String decode(int code) {
+		return this.values.get(code);
+	}
+
+	/**
+	 * Return the code of a value, or -1 if no tuple read so far has it.
+	 */
+	private int lookup(String value) {
+		Integer code = this.codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Return the encoded tuples of a named relation, reading them if they
+	 * have not been read.
+	 */
+	private ColumnBuffer load(NamedRelation relation) throws DatabaseException {
+		ColumnBuffer table = this.tables.get(relation.getName());
+		if (table == null) {
+			TupleIterator iterator = this.source.scan(relation);
+			table = new ColumnBuffer(relation.getAttributes().size());
+			int[] row = new int[table.getWidth()];
+			iterator.open();
+			try {
+				Tuple tuple;
+				while ((tuple = iterator.next()) != null) {
+					for (int i = 0; i < row.length; i++) {
+						row[i] = encode(tuple.get(i));
+					}
+					table.append(row);
+				}
+			} finally {
+				iterator.close();
+			}
+			this.tables.put(relation.getName(), table);
+		}
+		return table;
+	}
+
+	/**
+	 * Open an iterator, read all of its batches, and close it.
+	 */
+	private static ColumnBuffer materialise(BatchIterator iterator) throws DatabaseException {
+		ColumnBuffer buffer = new ColumnBuffer(iterator.getAttributes().size());
+		iterator.open();
+		try {
+			ColumnBatch batch;
+			while ((batch = iterator.next()) != null) {
+				buffer.append(batch);
+			}
+		} finally {
+			iterator.close();
+		}
+		return buffer;
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Scan)
+	 */
+	public void visit(Scan op) {
+		this.iterators.push(new ScanBatches((NamedRelation) op.getRelation()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Project)
+	 */
+	public void visit(Project op) {
+		this.iterators.push(new ProjectBatches(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Select)
+	 */
+	public void visit(Select op) {
+		this.iterators.push(new SelectBatches(this.iterators.pop(), op.getPredicate()));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Product)
+	 */
+	public void visit(Product op) {
+		BatchIterator right = this.iterators.pop();
+		BatchIterator left = this.iterators.pop();
+		this.iterators.push(new JoinBatches(left, right, null));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Join)
+	 */
+	public void visit(Join op) {
+		BatchIterator right = this.iterators.pop();
+		BatchIterator left = this.iterators.pop();
+		Predicate predicate = op.getPredicate();
+		if (op instanceof SortMergeJoin) {
+			Attribute key = predicate.getLeftAttribute();
+			if (!left.getAttributes().contains(key)) {
+				key = predicate.getRightAttribute();
+			}
+			List<Attribute> order = new ArrayList<Attribute>();
+			order.add(key);
+			left = new SortBatches(left, order);
+		}
+		this.iterators.push(new JoinBatches(left, right, predicate));
+	}
+
+	/* (non-Javadoc)
+	 * @see sjdb.PlanVisitor#visit(sjdb.Sort)
+	 */
+	public void visit(Sort op) {
+		this.iterators.push(new SortBatches(this.iterators.pop(), op.getAttributes()));
+	}
+
+	/**
+	 * Find the position of an attribute of the batches of an iterator.
+	 */
+	private static int position(BatchIterator iterator, Attribute attribute) throws DatabaseException {
+		int position = iterator.getAttributes().indexOf(attribute);
+		if (position < 0) {
+			throw new DatabaseException("Attribute " + attribute + " not found in " + iterator.getAttributes());
+		}
+		return position;
+	}
+
+	/**
+	 * A comparison of two ints.
+	 */
+	private interface IntComparator {
+		int compare(int a, int b);
+	}
+
+	/**
+	 * Sort the first entries of an array, keeping equal entries in order.
+	 */
+	private static void sort(int[] a, int length, IntComparator comparator) {
+		int[] b = new int[length];
+		int[] from = a, to = b;
+		for (int width = 1; width < length; width *= 2) {
+			for (int low = 0; low < length; low += 2 * width) {
+				int middle = Math.min(low + width, length);
+				int high = Math.min(low + 2 * width, length);
+				int i = low, j = middle, k = low;
+				while (i < middle && j < high) {
+					to[k++] = comparator.compare(from[j], from[i]) < 0 ? from[j++] : from[i++];
+				}
+				while (i < middle) {
+					to[k++] = from[i++];
+				}
+				while (j < high) {
+					to[k++] = from[j++];
+				}
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		if (from != a) {
+			System.arraycopy(from, 0, a, 0, length);
+		}
+	}
+
+	/**
+	 * A growable set of columns of encoded tuples held in memory.
+	 */
+	private static final class ColumnBuffer {
+		private int[][] columns;
+		private int rows;
+
+		ColumnBuffer(int width) {
+			this.columns = new int[width][ColumnBatch.CAPACITY];
+		}
+
+		int getWidth() {
+			return this.columns.length;
+		}
+
+		int[] getColumn(int position) {
+			return this.columns[position];
+		}
+
+		int getRows() {
+			return this.rows;
+		}
+
+		private void reserve(int rows) {
+			int capacity = this.columns.length == 0 ? rows : this.columns[0].length;
+			if (rows > capacity) {
+				capacity = Math.max(rows, capacity + (capacity >> 1));
+				for (int i = 0; i < this.columns.length; i++) {
+					this.columns[i] = Arrays.copyOf(this.columns[i], capacity);
+				}
+			}
+		}
+
+		void append(int[] row) {
+			reserve(this.rows + 1);
+			for (int i = 0; i < row.length; i++) {
+				this.columns[i][this.rows] = row[i];
+			}
+			this.rows++;
+		}
+
+		void append(ColumnBatch batch) {
+			int count = batch.getCount();
+			int[] selection = batch.getSelection();
+			reserve(this.rows + count);
+			for (int i = 0; i < this.columns.length; i++) {
+				int[] from = batch.getColumn(i);
+				int[] to = this.columns[i];
+				if (selection == null) {
+					System.arraycopy(from, 0, to, this.rows, count);
+				} else {
+					for (int k = 0; k < count; k++) {
+						to[this.rows + k] = from[selection[k]];
+					}
+				}
+			}
+			this.rows += count;
+		}
+	}
+
+	/**
+	 * An iterator over the tuples of its input, decoded, which is the root
+	 * of the iterators built for a plan.
+	 */
+	private class DecodeIterator implements TupleIterator {
+		private BatchIterator input;
+		private ColumnBatch batch;
+		private int next;
+
+		DecodeIterator(BatchIterator input) {
+			this.input = input;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.input.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			this.input.open();
+			this.batch = null;
+		}
+
+		public Tuple next() throws DatabaseException {
+			while (this.batch == null || this.next == this.batch.getCount()) {
+				this.batch = this.input.next();
+				this.next = 0;
+				if (this.batch == null) {
+					return null;
+				}
+			}
+			int[] selection = this.batch.getSelection();
+			int row = selection == null ? this.next : selection[this.next];
+			this.next++;
+			String[] values = new String[this.batch.getWidth()];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = decode(this.batch.getColumn(i)[row]);
+			}
+			return new Tuple(values);
+		}
+
+		public void close() {
+			this.input.close();
+			this.batch = null;
+		}
+	}
+
+	/**
+	 * An iterator over the tuples of a named relation, in slices of its
+	 * encoded columns.
+	 */
+	private class ScanBatches implements BatchIterator {
+		private NamedRelation relation;
+		private ColumnBuffer table;
+		private ColumnBatch batch;
+		private int next;
+
+		ScanBatches(NamedRelation relation) {
+			this.relation = relation;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.relation.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			this.table = load(this.relation);
+			this.batch = new ColumnBatch(this.table.getWidth());
+			this.next = 0;
+		}
+
+		public ColumnBatch next() {
+			int size = Math.min(ColumnBatch.CAPACITY, this.table.getRows() - this.next);
+			if (size <= 0) {
+				return null;
+			}
+			for (int i = 0; i < this.table.getWidth(); i++) {
+				System.arraycopy(this.table.getColumn(i), this.next, this.batch.getColumn(i), 0, size);
+			}
+			this.batch.setSize(size);
+			this.next += size;
+			return this.batch;
+		}
+
+		public void close() {
+			this.table = null;
+			this.batch = null;
+		}
+	}
+
+	/**
+	 * An iterator over the batches of its input with the rows which do not
+	 * satisfy a predicate removed from their selection vectors.
+	 */
+	private class SelectBatches implements BatchIterator {
+		private BatchIterator input;
+		private Predicate predicate;
+		private int left, right, code;
+		private byte[] results;
+
+		SelectBatches(BatchIterator input, Predicate predicate) {
+			this.input = input;
+			this.predicate = predicate;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.input.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			this.left = position(this.input, this.predicate.getLeftAttribute());
+			this.right = this.predicate.equalsValue() ? -1 : position(this.input, this.predicate.getRightAttribute());
+			this.input.open();
+			// the input is open, so the values of its relations have codes
+			this.code = -1;
+			if (this.right < 0 && this.predicate.getComparison() == Predicate.Comparison.EQ) {
+				this.code = lookup(this.predicate.getRightValue());
+			}
+			this.results = new byte[0];
+		}
+
+		public ColumnBatch next() throws DatabaseException {
+			ColumnBatch batch;
+			while ((batch = this.input.next()) != null) {
+				filter(batch);
+				if (batch.getCount() > 0) {
+					return batch;
+				}
+			}
+			return null;
+		}
+
+		private void filter(ColumnBatch batch) {
+			int[] values = batch.getColumn(this.left);
+			int[] others = this.right < 0 ? null : batch.getColumn(this.right);
+			int[] selection = batch.getSelection();
+			int[] selected = batch.getSelectionBuffer();
+			int count = batch.getCount();
+			int n = 0;
+			for (int k = 0; k < count; k++) {
+				int row = selection == null ? k : selection[k];
+				if (others != null ? values[row] == others[row] : matches(values[row])) {
+					selected[n++] = row;
+				}
+			}
+			batch.select(n);
+		}
+
+		/**
+		 * Return true if a value satisfies the predicate, which compares it
+		 * with values, evaluating the predicate once for each code.
+		 */
+		private boolean matches(int value) {
+			if (this.predicate.getComparison() == Predicate.Comparison.EQ) {
+				return value == this.code;
+			}
+			if (value >= this.results.length) {
+				this.results = Arrays.copyOf(this.results, Math.max(value + 1, VectorExecutor.this.values.size()));
+			}
+			if (this.results[value] == 0) {
+				this.results[value] = (byte) (this.predicate.matches(decode(value)) ? 1 : 2);
+			}
+			return this.results[value] == 1;
+		}
+
+		public void close() {
+			this.input.close();
+			this.results = null;
+		}
+	}
+
+	/**
+	 * An iterator over the batches of its input with only some of their
+	 * columns, which are shared rather than copied.
+	 */
+	private class ProjectBatches implements BatchIterator {
+		private BatchIterator input;
+		private List<Attribute> attributes;
+		private int[] positions;
+		private ColumnBatch batch;
+
+		ProjectBatches(BatchIterator input, List<Attribute> attributes) {
+			this.input = input;
+			this.attributes = attributes;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.attributes;
+		}
+
+		public void open() throws DatabaseException {
+			this.positions = new int[this.attributes.size()];
+			for (int i = 0; i < this.positions.length; i++) {
+				this.positions[i] = position(this.input, this.attributes.get(i));
+			}
+			this.batch = new ColumnBatch(this.positions.length);
+			this.input.open();
+		}
+
+		public ColumnBatch next() throws DatabaseException {
+			ColumnBatch input = this.input.next();
+			if (input == null) {
+				return null;
+			}
+			for (int i = 0; i < this.positions.length; i++) {
+				this.batch.setColumn(i, input.getColumn(this.positions[i]));
+			}
+			this.batch.share(input);
+			return this.batch;
+		}
+
+		public void close() {
+			this.input.close();
+			this.batch = null;
+		}
+	}
+
+	/**
+	 * An iterator over the tuples of its input in order, which reads them
+	 * all into memory and sorts their positions.
+	 */
+	private class SortBatches implements BatchIterator {
+		private BatchIterator input;
+		private List<Attribute> attributes;
+		private ColumnBuffer buffer;
+		private int[] order;
+		private ColumnBatch batch;
+		private int next;
+
+		SortBatches(BatchIterator input, List<Attribute> attributes) {
+			this.input = input;
+			this.attributes = attributes;
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.input.getAttributes();
+		}
+
+		public void open() throws DatabaseException {
+			int[] positions = new int[this.attributes.size()];
+			for (int i = 0; i < positions.length; i++) {
+				positions[i] = position(this.input, this.attributes.get(i));
+			}
+			this.buffer = materialise(this.input);
+			final int[][] keys = new int[positions.length][];
+			final int[][] ranks = new int[positions.length][];
+			for (int i = 0; i < positions.length; i++) {
+				keys[i] = this.buffer.getColumn(positions[i]);
+				ranks[i] = rank(keys[i], this.buffer.getRows());
+			}
+			this.order = new int[this.buffer.getRows()];
+			for (int i = 0; i < this.order.length; i++) {
+				this.order[i] = i;
+			}
+			sort(this.order, this.order.length, new IntComparator() {
+				public int compare(int a, int b) {
+					for (int i = 0; i < keys.length; i++) {
+						int cmp = Integer.compare(ranks[i][keys[i][a]], ranks[i][keys[i][b]]);
+						if (cmp != 0) {
+							return cmp;
+						}
+					}
+					return 0;
+				}
+			});
+			this.batch = new ColumnBatch(this.buffer.getWidth());
+			this.next = 0;
+		}
+
+		/**
+		 * Return an array giving the rank in order of each distinct code in
+		 * a column, indexed by code. Codes whose values compare as equal
+		 * have the same rank.
+		 */
+		private int[] rank(int[] column, int rows) {
+			int[] ranks = new int[VectorExecutor.this.values.size()];
+			int[] distinct = new int[Math.min(rows, ranks.length)];
+			int n = 0;
+			for (int i = 0; i < rows; i++) {
+				if (ranks[column[i]] == 0) {
+					ranks[column[i]] = 1;
+					distinct[n++] = column[i];
+				}
+			}
+			sort(distinct, n, new IntComparator() {
+				public int compare(int a, int b) {
+					return Tuple.compare(decode(a), decode(b));
+				}
+			});
+			int rank = 0;
+			for (int i = 0; i < n; i++) {
+				if (i > 0 && Tuple.compare(decode(distinct[i - 1]), decode(distinct[i])) != 0) {
+					rank = i;
+				}
+				ranks[distinct[i]] = rank;
+			}
+			return ranks;
+		}
+
+		public ColumnBatch next() {
+			int size = Math.min(ColumnBatch.CAPACITY, this.order.length - this.next);
+			if (size <= 0) {
+				return null;
+			}
+			for (int i = 0; i < this.buffer.getWidth(); i++) {
+				int[] from = this.buffer.getColumn(i);
+				int[] to = this.batch.getColumn(i);
+				for (int k = 0; k < size; k++) {
+					to[k] = from[this.order[this.next + k]];
+				}
+			}
+			this.batch.setSize(size);
+			this.next += size;
+			return this.batch;
+		}
+
+		public void close() {
+			this.buffer = null;
+			this.order = null;
+			this.batch = null;
+		}
+	}
+
+	/**
+	 * An iterator which joins the tuples of its left input with those of
+	 * its right input which have the same value for the predicate, or with
+	 * every tuple of its right input if there is no predicate. The right
+	 * input is read into memory and, for a join, indexed by a table with an
+	 * entry for each code, which chains together the rows with that code in
+	 * order. The output has the values of the left tuple followed by those
+	 * of the right, and is in the order of the left input.
+	 */
+	private class JoinBatches implements BatchIterator {
+		private BatchIterator left, right;
+		private Predicate predicate;
+		private int leftKey, rightKey;
+		private List<Attribute> attributes;
+		private ColumnBuffer build;
+		private int[] heads, chain;
+		private ColumnBatch probe, batch;
+		private int[] leftRows, rightRows;
+		private int next, row, match;
+
+		JoinBatches(BatchIterator left, BatchIterator right, Predicate predicate) {
+			this.left = left;
+			this.right = right;
+			this.predicate = predicate;
+			this.attributes = new ArrayList<Attribute>(left.getAttributes());
+			this.attributes.addAll(right.getAttributes());
+		}
+
+		public List<Attribute> getAttributes() {
+			return this.attributes;
+		}
+
+		public void open() throws DatabaseException {
+			if (this.predicate != null) {
+				Attribute a = this.predicate.getLeftAttribute();
+				Attribute b = this.predicate.getRightAttribute();
+				if (this.left.getAttributes().contains(a)) {
+					this.leftKey = position(this.left, a);
+					this.rightKey = position(this.right, b);
+				} else {
+					this.leftKey = position(this.left, b);
+					this.rightKey = position(this.right, a);
+				}
+			}
+			this.build = materialise(this.right);
+			if (this.predicate != null) {
+				int[] keys = this.build.getColumn(this.rightKey);
+				this.heads = new int[VectorExecutor.this.values.size()];
+				this.chain = new int[this.build.getRows()];
+				Arrays.fill(this.heads, -1);
+				for (int i = this.chain.length - 1; i >= 0; i--) {
+					this.chain[i] = this.heads[keys[i]];
+					this.heads[keys[i]] = i;
+				}
+			}
+			this.left.open();
+			this.batch = new ColumnBatch(this.attributes.size());
+			this.leftRows = new int[ColumnBatch.CAPACITY];
+			this.rightRows = new int[ColumnBatch.CAPACITY];
+			this.probe = null;
+			this.match = -1;
+		}
+
+		public ColumnBatch next() throws DatabaseException {
+			int n = 0;
+			while (n < ColumnBatch.CAPACITY) {
+				if (this.match >= 0) {
+					this.leftRows[n] = this.row;
+					this.rightRows[n] = this.match;
+					n++;
+					this.match = this.predicate == null
+							? (this.match + 1 < this.build.getRows() ? this.match + 1 : -1)
+							: this.chain[this.match];
+				} else if (this.probe != null && this.next < this.probe.getCount()) {
+					int[] selection = this.probe.getSelection();
+					this.row = selection == null ? this.next : selection[this.next];
+					this.next++;
+					if (this.predicate == null) {
+						this.match = this.build.getRows() > 0 ? 0 : -1;
+					} else {
+						int code = this.probe.getColumn(this.leftKey)[this.row];
+						this.match = code < this.heads.length ? this.heads[code] : -1;
+					}
+				} else if (n > 0) {
+					// the rows found must be gathered before the probe batch is replaced
+					break;
+				} else {
+					this.probe = this.left.next();
+					this.next = 0;
+					if (this.probe == null) {
+						return null;
+					}
+				}
+			}
+			gather(n);
+			return this.batch;
+		}
+
+		/**
+		 * Copy the values of the pairs of rows found into the output batch.
+		 */
+		private void gather(int n) {
+			int width = this.probe.getWidth();
+			for (int i = 0; i < width; i++) {
+				int[] from = this.probe.getColumn(i);
+				int[] to = this.batch.getColumn(i);
+				for (int k = 0; k < n; k++) {
+					to[k] = from[this.leftRows[k]];
+				}
+			}
+			for (int i = 0; i < this.build.getWidth(); i++) {
+				int[] from = this.build.getColumn(i);
+				int[] to = this.batch.getColumn(width + i);
+				for (int k = 0; k < n; k++) {
+					to[k] = from[this.rightRows[k]];
+				}
+			}
+			this.batch.setSize(n);
+		}
+
+		public void close() {
+			this.left.close();
+			this.right.close();
+			this.build = null;
+			this.heads = null;
+			this.chain = null;
+			this.probe = null;
+		}
+	}
+}